@@ -0,0 +1,105 @@
+package benchmarks;
+
+import dao.DaoFactory;
+import dao.h2.H2DaoFactory;
+import dao.h2.H2MigrationRunner;
+import dao.pool.ConnectionPool;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import services.DataGenerator;
+import services.HashGenerator;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Embedded in-memory H2 database with the application schema, filled by the DataGenerator with users, tweets,
+ * likes and subscriptions. The scale is set with JMH parameters, e.g. -p users=10000 -p tweetsPerUser=50,
+ * the counts per user are averages. The content is generated with the fixed seed, so every run works
+ * with the same database.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    @Param("1000")
+    public int users;
+
+    @Param("20")
+    public int tweetsPerUser;
+
+    @Param("20")
+    public int likesPerUser;
+
+    // Every subscription adds tweetsPerUser rows to Timelines, which is the slowest part of the setup
+    @Param("10")
+    public int subscriptionsPerUser;
+
+    // Every run works with the same generated content
+    private static final long SEED = 42;
+
+    private static final int POOL_SIZE = 16;
+
+    private JdbcDataSource dataSource;
+    private ConnectionPool connectionPool;
+    private DaoFactory daoFactory;
+
+    // Generated users get sequential ids: firstUserId .. firstUserId + users - 1
+    private long firstUserId;
+    private long maxMessageId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:benchmark" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new H2MigrationRunner(dataSource).migrate();
+        DataGenerator generator = new DataGenerator(dataSource, Runtime.getRuntime().availableProcessors(), SEED);
+        generator.generate(users, tweetsPerUser, subscriptionsPerUser, likesPerUser, new HashGenerator().getHash("pass"));
+        firstUserId = generator.getFirstUserId();
+        maxMessageId = generator.getLastMessageId();
+        connectionPool = new ConnectionPool(dataSource, POOL_SIZE, 5000, 0, 50);
+        daoFactory = new H2DaoFactory(connectionPool);
+        daoFactory.getTimelineDao().rebuildTimelines();
+        daoFactory.getMessageDao().rebuildSearchIndex();
+        daoFactory.getMessageDao().rebuildRecentMessages();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        daoFactory.close();
+        connectionPool.close();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    public DaoFactory getDaoFactory() {
+        return daoFactory;
+    }
+
+    public long getFirstUserId() {
+        return firstUserId;
+    }
+
+    /**
+     * Random generated user
+     * @return user id
+     */
+    public long randomUserId() {
+        return firstUserId + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    /**
+     * Random message from the whole database
+     * @return message id
+     */
+    public long randomMessageId() {
+        return 1 + ThreadLocalRandom.current().nextLong(maxMessageId);
+    }
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import model.Like;
+import model.LikeStatus;
+import model.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single row DAO operations on random users and messages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+
+    // Toggles the like of a random user for a random message, so the number of likes stays about the same
+    @Benchmark
+    public LikeStatus updateLike(BenchmarkDatabase database) {
+        return database.getDaoFactory().getLikeDao().updateLike(new Like(0, database.randomUserId(), database.randomMessageId()));
+    }
+
+    @Benchmark
+    public List<Subscription> getUserSubscriptions(BenchmarkDatabase database) {
+        return database.getDaoFactory().getSubscriptionDao().getUserSubscriptions(database.randomUserId());
+    }
+}
@@ -0,0 +1,108 @@
+package benchmarks;
+
+import dao.MessageDao;
+import model.Tweet;
+import model.TweetCursor;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feed queries of H2MessageDao: the first page of every feed and a page deep in the feed,
+ * after deepOffset tweets have been shown. All feeds are read for the same generated user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeedBenchmark {
+
+    private static final int PAGE = 20;
+
+    @Param("200")
+    public int deepOffset;
+
+    private MessageDao messageDao;
+    private User user;
+
+    private TweetCursor userCursor;
+    private TweetCursor subscriptionCursor;
+    private TweetCursor instrumentCursor;
+    private TweetCursor countryCursor;
+
+    @Setup
+    public void setUp(BenchmarkDatabase database) {
+        messageDao = database.getDaoFactory().getMessageDao();
+        user = database.getDaoFactory().getUserDao().readUserById(database.getFirstUserId());
+        long userId = user.getUserId();
+        userCursor = deepCursor(messageDao.getUserMessages(user, deepOffset, TweetCursor.first()));
+        subscriptionCursor = deepCursor(messageDao.getSubscriptionMessages(userId, deepOffset, TweetCursor.first()));
+        instrumentCursor = deepCursor(messageDao.getInstrumentMessages(userId, deepOffset, TweetCursor.first()));
+        countryCursor = deepCursor(messageDao.getCountryMessages(userId, deepOffset, TweetCursor.first()));
+    }
+
+    @Benchmark
+    public List<Tweet> userFeedShallow() {
+        return messageDao.getUserMessages(user, PAGE, TweetCursor.first());
+    }
+
+    @Benchmark
+    public List<Tweet> userFeedDeep() {
+        return messageDao.getUserMessages(user, PAGE, userCursor);
+    }
+
+    @Benchmark
+    public List<Tweet> subscriptionFeedShallow() {
+        return messageDao.getSubscriptionMessages(user.getUserId(), PAGE, TweetCursor.first());
+    }
+
+    @Benchmark
+    public List<Tweet> subscriptionFeedDeep() {
+        return messageDao.getSubscriptionMessages(user.getUserId(), PAGE, subscriptionCursor);
+    }
+
+    @Benchmark
+    public List<Tweet> instrumentFeedShallow() {
+        return messageDao.getInstrumentMessages(user.getUserId(), PAGE, TweetCursor.first());
+    }
+
+    @Benchmark
+    public List<Tweet> instrumentFeedDeep() {
+        return messageDao.getInstrumentMessages(user.getUserId(), PAGE, instrumentCursor);
+    }
+
+    @Benchmark
+    public List<Tweet> countryFeedShallow() {
+        return messageDao.getCountryMessages(user.getUserId(), PAGE, TweetCursor.first());
+    }
+
+    @Benchmark
+    public List<Tweet> countryFeedDeep() {
+        return messageDao.getCountryMessages(user.getUserId(), PAGE, countryCursor);
+    }
+
+    /**
+     * Cursor after the last of the already shown tweets. If the feed is shorter than deepOffset,
+     * the deep page starts in the middle of the feed.
+     * @param shown tweets shown so far
+     * @return cursor for the next page
+     */
+    private TweetCursor deepCursor(List<Tweet> shown) {
+        int count = shown.size() < deepOffset ? shown.size() / 2 : shown.size();
+        return count == 0 ? TweetCursor.first() : new TweetCursor(shown.get(count - 1));
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.HashGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password hashing cost for the configured number of PBKDF2 iterations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    @Param("10000")
+    public int iterations;
+
+    private HashGenerator hashGenerator;
+
+    @Setup
+    public void setUp() throws Exception {
+        hashGenerator = new HashGenerator(iterations);
+    }
+
+    @Benchmark
+    public String getHash() {
+        return hashGenerator.getHash("password");
+    }
+}
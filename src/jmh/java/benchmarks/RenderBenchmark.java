@@ -0,0 +1,110 @@
+package benchmarks;
+
+import model.Subscription;
+import model.Tweet;
+import model.TweetCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.JsonFeedWriter;
+import services.LongHashSet;
+import services.ProcessTweets;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Html rendering of a feed page by ProcessTweets and JSON rendering by JsonFeedWriter,
+ * without the database and the network.
+ * Tweets are taken from the subscription feed of a generated user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    // 20 is one page, bigger values are like the reload of several pages at once
+    @Param({"20", "200"})
+    public int tweetCount;
+
+    private List<Tweet> tweets;
+    private LongHashSet subscriptions;
+    private ResourceBundle bundle;
+    private DateTimeFormatter formatter;
+
+    @Setup
+    public void setUp(BenchmarkDatabase database) {
+        long userId = database.getFirstUserId();
+        tweets = database.getDaoFactory().getMessageDao().getSubscriptionMessages(userId, tweetCount, TweetCursor.first());
+        subscriptions = new LongHashSet();
+        for (Subscription subscription : database.getDaoFactory().getSubscriptionDao().getUserSubscriptions(userId)) {
+            subscriptions.add(subscription.getSubscriptedUserId());
+        }
+        bundle = ResourceBundle.getBundle("main", Locale.ENGLISH);
+        formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withLocale(Locale.ENGLISH);
+    }
+
+    @Benchmark
+    public long process() {
+        CountingWriter writer = new CountingWriter();
+        ProcessTweets renderer = new ProcessTweets(new PrintWriter(writer), subscriptions, bundle, formatter);
+        tweets.forEach(renderer);
+        renderer.finish();
+        return writer.count;
+    }
+
+    @Benchmark
+    public long json() {
+        CountingWriter writer = new CountingWriter();
+        JsonFeedWriter renderer = new JsonFeedWriter(writer, subscriptions, formatter);
+        tweets.forEach(renderer);
+        renderer.finish();
+        return writer.count;
+    }
+
+    /**
+     * Writer, which only counts the characters, so the benchmark doesn't measure the buffer growth
+     */
+    private static class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
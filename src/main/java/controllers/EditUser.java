@@ -4,6 +4,7 @@ import dao.DaoFactory;
 import model.Countries;
 import model.User;
 import services.AddNewInstruments;
+import services.FeedVersion;
 import services.HashGenerator;
 import services.Validator;
 
@@ -26,6 +27,7 @@ import java.util.ResourceBundle;
 public class EditUser extends HttpServlet {
 
     private DaoFactory daoFactory;
+    private FeedVersion feedVersion;
     private HashGenerator hashGenerator;
 
     /**
@@ -36,6 +38,7 @@ public class EditUser extends HttpServlet {
     public void init() throws ServletException {
         ServletContext context = getServletContext();
         daoFactory = (DaoFactory) context.getAttribute("daoFactory");
+        feedVersion = (FeedVersion) context.getAttribute("feedVersion");
         hashGenerator = (HashGenerator) context.getAttribute("hashGenerator");
     }
 
@@ -69,20 +72,26 @@ public class EditUser extends HttpServlet {
                 user.setCountry(country);
                 user.setFirstName(firstName);
                 user.setLastName(lastName);
-                user.setUserId(daoFactory.getUserDao().updateUser(user));
-
-                // If login has been used before validation and creating
-                if (user.getUserId() == 0) {
-                    request.setAttribute("loginExists", bundle.getString("loginExists"));
-                    request.getRequestDispatcher("/profile.jsp").forward(request, response);
-                    return;
-                }
 
+                // The profile and the instruments are updated in one transaction
                 try {
-                    AddNewInstruments.addNewInstruments(instrument, daoFactory, session, user);
+                    daoFactory.inTransaction(factory -> {
+                        user.setUserId(factory.getUserDao().updateUser(user));
+                        if (user.getUserId() != 0) {
+                            AddNewInstruments.addNewInstruments(instrument, factory, session, user);
+                        }
+                        return null;
+                    });
+                    feedVersion.changed(FeedVersion.PROFILES);
                 } catch (SQLException e) {
-                    request.setAttribute("invalidInstrument", bundle.getString("invalidInstrument"));
-                    request.getRequestDispatcher("/WEB-INF/profile.jsp").forward(request, response);
+                    // If login has been used before validation and updating, the profile hasn't been updated at all
+                    if (user.getUserId() == 0) {
+                        request.setAttribute("loginExists", bundle.getString("loginExists"));
+                        request.getRequestDispatcher("/profile.jsp").forward(request, response);
+                    } else {
+                        request.setAttribute("invalidInstrument", bundle.getString("invalidInstrument"));
+                        request.getRequestDispatcher("/WEB-INF/profile.jsp").forward(request, response);
+                    }
                     return;
                 }
             }
@@ -1,10 +1,12 @@
 package controllers;
 
-import dao.DaoFactory;
-import model.Subscription;
-import model.Tweet;
+import dao.async.AsyncDaoFactory;
+import model.Instrument;
+import model.TweetCursor;
 import model.User;
-import services.ProcessTweets;
+import services.AsyncFeed;
+import services.FeedVersion;
+import services.LongHashSet;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -13,7 +15,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.io.Writer;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Locale;
@@ -21,21 +22,23 @@ import java.util.ResourceBundle;
 
 /**
  * Servlet requests all tweets from users, who have the same instruments as the current user
- * and returns them as a part of a web page.
+ * and returns them as a part of a web page or as JSON.
  */
-@WebServlet("/GetInstrumentTweets")
+@WebServlet(value = "/GetInstrumentTweets", asyncSupported = true)
 public class GetInstrumentTweets extends HttpServlet {
 
-    private DaoFactory daoFactory;
+    private AsyncDaoFactory asyncDaoFactory;
+    private FeedVersion feedVersion;
 
     /**
-     * Method gets the common Dao Factory from servlet context.
+     * Method gets the common asynchronous Dao Factory and the feed version from servlet context.
      *
      * @throws ServletException - standard Servlet exception
      */
     @Override
     public void init() throws ServletException {
-        daoFactory = (DaoFactory) getServletContext().getAttribute("daoFactory");
+        asyncDaoFactory = (AsyncDaoFactory) getServletContext().getAttribute("asyncDaoFactory");
+        feedVersion = (FeedVersion) getServletContext().getAttribute("feedVersion");
     }
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -45,35 +48,37 @@ public class GetInstrumentTweets extends HttpServlet {
 
         // Do something only if the user logged in
         if (user != null) {
-            response.setContentType("text/html; charset=UTF-8");
-            try (Writer out = response.getWriter()) {
+            LongHashSet subscriptions = (LongHashSet) session.getAttribute("Subscriptions");
 
-                @SuppressWarnings("unchecked")
-                List<Subscription> subscriptions = (List<Subscription>) session.getAttribute("Subscriptions");
+            // Pagination: the next page starts right after the last shown tweet,
+            // a reload asks for all pages shown so far, starting from the newest tweet
+            boolean reload = AsyncFeed.isReload(request);
+            int limit = AsyncFeed.getLimit(request);
+            TweetCursor cursor = reload ? TweetCursor.first() : TweetCursor.valueOf(request.getParameter("cursor"));
+            if (limit == 0 || cursor == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+
+            Locale locale = (Locale) session.getAttribute("locale");
+            ResourceBundle bundle = ResourceBundle.getBundle("main", locale);
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withLocale(locale);
 
-                // Pagination
-                String pageCountString = request.getParameter("pageCount");
-                String resetLimit = request.getParameter("resetLimit");
-                int limit = 20;
-                int offset = 0;
-                if (pageCountString != null && !pageCountString.isEmpty()) {
-                    int pageCount = Integer.parseInt(pageCountString);
-                    offset = pageCount * limit;
-                }
-                if (resetLimit != null) {
-                    limit = offset;
-                    offset = 0;
-                }
+            @SuppressWarnings("unchecked")
+            List<Instrument> instruments = (List<Instrument>) session.getAttribute("Instruments");
 
-                Locale locale = (Locale) session.getAttribute("locale");
-                ResourceBundle bundle = ResourceBundle.getBundle("main", locale);
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withLocale(locale);
+            // Answers 304 without any query, if the client already has this page and nothing has changed since then
+            if (feedVersion != null && feedVersion.notModified(request, response,
+                    FeedVersion.instrumentScopes(user, instruments),
+                    "GetInstrumentTweets", user.getUserId(), limit, cursor.toString(), locale, AsyncFeed.isJson(request))) {
+                return;
+            }
 
-                // Sends the query to the database, generates html and sends it to response
-                if (daoFactory != null) {
-                    List<Tweet> tweets = daoFactory.getMessageDao().getInstrumentMessages(user.getUserId(), limit, offset);
-                    out.write(ProcessTweets.process(tweets, subscriptions, bundle, formatter));
-                }
+            // Reads the page on a DAO thread and writes it to the response after the connection is released,
+            // the container thread is released meanwhile
+            if (asyncDaoFactory != null) {
+                AsyncFeed.render(request, response, subscriptions, bundle, formatter,
+                        handler -> asyncDaoFactory.getMessageDao().getInstrumentMessages(user.getUserId(), limit, cursor, handler));
             }
         }
     }
@@ -0,0 +1,70 @@
+package controllers;
+
+import model.Trend;
+import model.User;
+import services.TrendingHashtags;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Servlet returns the trending hashtags of the last hour as JSON, globally and in the country of the current user:
+ * {"global":[{"hashtag":"jazz","count":12}, ...],"country":[...]}.
+ */
+@WebServlet("/GetTrends")
+public class GetTrends extends HttpServlet {
+
+    private TrendingHashtags trendingHashtags;
+
+    /**
+     * Method gets the trending hashtags from servlet context.
+     *
+     * @throws ServletException - standard Servlet exception
+     */
+    @Override
+    public void init() throws ServletException {
+        trendingHashtags = (TrendingHashtags) getServletContext().getAttribute("trendingHashtags");
+    }
+
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+        User user = (User) request.getSession().getAttribute("User");
+        if (user != null && trendingHashtags != null) {
+            response.setContentType("application/json; charset=UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            try (Writer out = response.getWriter()) {
+                out.write("{\"global\":");
+                writeTrends(out, trendingHashtags.getTrends(null));
+                out.write(",\"country\":");
+                writeTrends(out, trendingHashtags.getTrends(user.getCountry()));
+                out.write('}');
+            }
+        }
+    }
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        doPost(request, response);
+    }
+
+    /**
+     * Service method, which writes the trends as JSON array. Hashtags contain only letters, digits and underscores,
+     * so they need no escaping.
+     * @param out response writer
+     * @param trends trends to write
+     * @throws IOException if the writer fails
+     */
+    private void writeTrends(Writer out, List<Trend> trends) throws IOException {
+        out.write('[');
+        for (int i = 0; i < trends.size(); i++) {
+            Trend trend = trends.get(i);
+            out.write((i == 0 ? "" : ",") + "{\"hashtag\":\"" + trend.getHashtag() + "\",\"count\":" + trend.getCount() + "}");
+        }
+        out.write(']');
+    }
+}
@@ -2,7 +2,9 @@ package controllers;
 
 import dao.DaoFactory;
 import model.Like;
+import model.LikeStatus;
 import model.User;
+import services.FeedVersion;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -11,6 +13,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.Writer;
 
 /**
  * Servlet that handles the pressed Like and sends the data to the database
@@ -19,15 +22,17 @@ import java.io.IOException;
 public class LikePressed extends HttpServlet {
 
     private DaoFactory daoFactory;
+    private FeedVersion feedVersion;
 
     /**
-     * Method gets the common Dao Factory from servlet context.
+     * Method gets the common Dao Factory and the feed version from servlet context.
      *
      * @throws ServletException - standard Servlet exception
      */
     @Override
     public void init() throws ServletException {
         daoFactory = (DaoFactory) getServletContext().getAttribute("daoFactory");
+        feedVersion = (FeedVersion) getServletContext().getAttribute("feedVersion");
     }
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -36,8 +41,18 @@ public class LikePressed extends HttpServlet {
         User user = (User) session.getAttribute("User");
         String messageId = request.getParameter("messageId");
 
+        // Answers with the new state of the message, so the page doesn't have to be reloaded
         if (user != null && !messageId.isEmpty()) {
-            daoFactory.getLikeDao().updateLike(new Like(0, user.getUserId(), Long.parseLong(messageId)));
+            LikeStatus status = daoFactory.getLikeDao().updateLike(new Like(0, user.getUserId(), Long.parseLong(messageId)));
+            if (status == null) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+            feedVersion.changed(FeedVersion.LIKES);
+            response.setContentType("application/json; charset=UTF-8");
+            try (Writer out = response.getWriter()) {
+                out.write("{\"liked\":" + status.isLiked() + ",\"likeCount\":" + status.getLikeCount() + "}");
+            }
         }
     }
 
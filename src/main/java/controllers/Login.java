@@ -7,6 +7,7 @@ import model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import services.HashGenerator;
+import services.LongHashSet;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -16,6 +17,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
@@ -62,10 +64,39 @@ public class Login extends HttpServlet {
             if (login.length() > 0 && login.length() <= 15) {
                 if (password.length() > 0 && password.length() <= 256) {
                     User user = daoFactory.getUserDao().readUserByLogin(login);
+
+                    // Blank user means the database can't be read, the password can't be checked
+                    if (user != null && user.getUserId() == 0) {
+                        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                        return;
+                    }
                     if (user != null) {
-                        if (user.getPassword().equals(hashGenerator.getHash(password))) {
-                            List<Instrument> instruments = daoFactory.getInstrumentDao().getUserInstruments(user.getUserId());
-                            List<Subscription> subscriptions = daoFactory.getSubscriptionDao().getUserSubscriptions(user.getUserId());
+                        if (hashGenerator.verify(password, user.getPassword())) {
+
+                            // Old or weak password hashes are replaced while the password is known
+                            boolean upgradeHash = hashGenerator.needsUpgrade(user.getPassword());
+                            if (upgradeHash) {
+                                user.setPassword(hashGenerator.getHash(password));
+                            }
+                            List<Instrument> instruments;
+                            LongHashSet subscriptions = new LongHashSet();
+
+                            // The rest of the user's data is read with one connection
+                            try {
+                                instruments = daoFactory.inTransaction(factory -> {
+                                    if (upgradeHash) {
+                                        factory.getUserDao().updateUser(user);
+                                    }
+                                    // One table for all subscriptions, not one per subscription
+                                    subscriptions.addAll(factory.getSubscriptionDao().getUserSubscriptions(user.getUserId())
+                                            .stream().mapToLong(Subscription::getSubscriptedUserId).toArray());
+                                    return factory.getInstrumentDao().getUserInstruments(user.getUserId());
+                                });
+                            } catch (SQLException e) {
+                                log.warn(e.getMessage());
+                                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                                return;
+                            }
                             session.setAttribute("User", user);
                             session.setAttribute("Instruments", instruments);
                             session.setAttribute("Subscriptions", subscriptions);
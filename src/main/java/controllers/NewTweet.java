@@ -1,8 +1,12 @@
 package controllers;
 
 import dao.DaoFactory;
+import model.Instrument;
 import model.Message;
 import model.User;
+import services.FeedVersion;
+import services.TrendingHashtags;
+import services.TweetEvents;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -11,7 +15,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Servlet gets new tweet data from the request and sends it to the database. Responce contains the auto-generated
@@ -21,15 +27,22 @@ import java.time.LocalDateTime;
 public class NewTweet extends HttpServlet {
 
     private DaoFactory daoFactory;
+    private FeedVersion feedVersion;
+    private TweetEvents tweetEvents;
+    private TrendingHashtags trendingHashtags;
 
     /**
-     * Method gets the common Dao Factory from servlet context.
+     * Method gets the common Dao Factory, the feed version, the event streams
+     * and the trending hashtags from servlet context.
      *
      * @throws ServletException - standard Servlet exception
      */
     @Override
     public void init() throws ServletException {
         daoFactory = (DaoFactory) getServletContext().getAttribute("daoFactory");
+        feedVersion = (FeedVersion) getServletContext().getAttribute("feedVersion");
+        tweetEvents = (TweetEvents) getServletContext().getAttribute("tweetEvents");
+        trendingHashtags = (TrendingHashtags) getServletContext().getAttribute("trendingHashtags");
     }
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -41,7 +54,36 @@ public class NewTweet extends HttpServlet {
             String tweetText = request.getParameter("tweetText");
             if (tweetText != null && !tweetText.isEmpty()) {
                 Message message = new Message(user.getUserId(), 0, LocalDateTime.now(), tweetText.trim());
-                long result = daoFactory.getMessageDao().createMessage(message);
+
+                // The tweet and its copies in the subscription feeds of all subscribers are created
+                // in one transaction, so a failed fan-out doesn't leave the tweet hidden from the subscribers
+                long result;
+                try {
+                    result = daoFactory.inTransaction(factory -> {
+                        long messageId = factory.getMessageDao().createMessage(message);
+                        if (messageId > 0) {
+                            message.setMessageId(messageId);
+                            factory.getTimelineDao().fanOutMessage(message);
+                        }
+                        return messageId;
+                    });
+                } catch (SQLException e) {
+                    result = 0;
+                }
+                if (result > 0) {
+                    // Only the feeds, where the tweet can be seen, are changed
+                    @SuppressWarnings("unchecked")
+                    List<Instrument> instruments = (List<Instrument>) session.getAttribute("Instruments");
+                    feedVersion.tweeted(user, instruments);
+
+                    // Subscribers with the open main page reload their feeds
+                    if (tweetEvents != null) {
+                        tweetEvents.publish(user.getUserId(), result);
+                    }
+                    if (trendingHashtags != null) {
+                        trendingHashtags.addTweet(user.getCountry(), message.getMessageText());
+                    }
+                }
                 response.getWriter().write(Long.toString(result));
             }
         }
@@ -3,12 +3,12 @@ package controllers;
 import dao.DaoFactory;
 import model.Countries;
 import model.Instrument;
-import model.Subscription;
 import model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import services.AddNewInstruments;
 import services.HashGenerator;
+import services.LongHashSet;
 import services.Validator;
 
 import javax.servlet.ServletContext;
@@ -72,28 +72,32 @@ public class RegisterUser extends HttpServlet {
             user.setCountry(country);
             user.setFirstName(firstName);
             user.setLastName(lastName);
-            user.setUserId(daoFactory.getUserDao().createUser(user));
 
-            // If login has been used before validation and creating
-            if (user.getUserId() == 0) {
-                request.setAttribute("loginExists", bundle.getString("loginExists"));
+            // The user and his instruments are created in one transaction, so invalid instruments
+            // don't leave the user registered without them
+            try {
+                daoFactory.inTransaction(factory -> {
+                    user.setUserId(factory.getUserDao().createUser(user));
+                    if (user.getUserId() != 0 && !instrument.isEmpty()) {
+                        AddNewInstruments.addNewInstruments(instrument, factory, session, user);
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                // If login has been used before validation and creating, the user hasn't been created at all
+                if (user.getUserId() == 0) {
+                    request.setAttribute("loginExists", bundle.getString("loginExists"));
+                } else {
+                    request.setAttribute("invalidInstrument", bundle.getString("invalidInstrument"));
+                }
+                user.setUserId(0);
                 request.getRequestDispatcher("/register.jsp").forward(request, response);
                 return;
             }
-
-            // Adding instruments to the user and creating new ones if needed, then add them to the session attribute
-            if (!instrument.isEmpty()) {
-                try {
-                    AddNewInstruments.addNewInstruments(instrument, daoFactory, session, user);
-                } catch (SQLException e) {
-                    request.setAttribute("invalidInstrument", bundle.getString("invalidInstrument"));
-                    request.getRequestDispatcher("/register.jsp").forward(request, response);
-                    return;
-                }
-            } else {
+            if (instrument.isEmpty()) {
                 session.setAttribute("Instruments", new ArrayList<Instrument>());
             }
-            session.setAttribute("Subscriptions", new ArrayList<Subscription>());
+            session.setAttribute("Subscriptions", new LongHashSet());
             session.setAttribute("User", user);
             log.info("User registered: " + user.getLogin());
             request.getRequestDispatcher("/WEB-INF/main.jsp").forward(request, response);
@@ -0,0 +1,86 @@
+package controllers;
+
+import dao.async.AsyncDaoFactory;
+import model.TweetCursor;
+import model.User;
+import services.AsyncFeed;
+import services.FeedVersion;
+import services.LongHashSet;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Servlet searches the newest tweets containing all words of the query
+ * and returns them as a part of a web page or as JSON.
+ */
+@WebServlet(value = "/SearchTweets", asyncSupported = true)
+public class SearchTweets extends HttpServlet {
+
+    private AsyncDaoFactory asyncDaoFactory;
+    private FeedVersion feedVersion;
+
+    /**
+     * Method gets the common asynchronous Dao Factory and the feed version from servlet context.
+     *
+     * @throws ServletException - standard Servlet exception
+     */
+    @Override
+    public void init() throws ServletException {
+        asyncDaoFactory = (AsyncDaoFactory) getServletContext().getAttribute("asyncDaoFactory");
+        feedVersion = (FeedVersion) getServletContext().getAttribute("feedVersion");
+    }
+
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+        HttpSession session = request.getSession();
+        User user = (User) session.getAttribute("User");
+
+        // Do something only if the user is logged in
+        if (user != null) {
+
+            LongHashSet subscriptions = (LongHashSet) session.getAttribute("Subscriptions");
+            String query = request.getParameter("query");
+            String words = query == null ? "" : query.trim();
+
+            // Pagination: the next page starts right after the last shown tweet,
+            // a reload asks for all pages shown so far, starting from the newest tweet
+            boolean reload = AsyncFeed.isReload(request);
+            int limit = AsyncFeed.getLimit(request);
+            TweetCursor cursor = reload ? TweetCursor.first() : TweetCursor.valueOf(request.getParameter("cursor"));
+            if (limit == 0 || cursor == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+
+            Locale locale = (Locale) session.getAttribute("locale");
+            ResourceBundle bundle = ResourceBundle.getBundle("main", locale);
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withLocale(locale);
+
+            // Answers 304 without any query, if the client already has this page and nothing has changed since then
+            if (feedVersion != null && feedVersion.notModified(request, response,
+                    FeedVersion.scopes(user, FeedVersion.TWEETS),
+                    "SearchTweets", words, user.getUserId(), limit, cursor.toString(), locale, AsyncFeed.isJson(request))) {
+                return;
+            }
+
+            // Looks the words up in the search index and reads the found tweets on a DAO thread
+            if (asyncDaoFactory != null) {
+                AsyncFeed.render(request, response, subscriptions, bundle, formatter,
+                        handler -> asyncDaoFactory.getMessageDao().searchMessages(words, limit, cursor, handler));
+            }
+        }
+    }
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        doPost(request, response);
+    }
+}
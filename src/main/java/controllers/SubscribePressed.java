@@ -5,6 +5,9 @@ import model.Subscription;
 import model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import services.FeedVersion;
+import services.LongHashSet;
+import services.TweetEvents;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -13,7 +16,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Servlet handles the pressed Subscribe link and sends the data to the database
@@ -22,16 +24,20 @@ import java.util.List;
 public class SubscribePressed extends HttpServlet {
 
     private DaoFactory daoFactory;
+    private FeedVersion feedVersion;
+    private TweetEvents tweetEvents;
     private static final Logger log = LoggerFactory.getLogger(Login.class);
 
     /**
-     * Method gets the common Dao Factory from servlet context.
+     * Method gets the common Dao Factory, the feed version and the event streams from servlet context.
      *
      * @throws ServletException - standard Servlet exception
      */
     @Override
     public void init() throws ServletException {
         daoFactory = (DaoFactory) getServletContext().getAttribute("daoFactory");
+        feedVersion = (FeedVersion) getServletContext().getAttribute("feedVersion");
+        tweetEvents = (TweetEvents) getServletContext().getAttribute("tweetEvents");
     }
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -39,16 +45,22 @@ public class SubscribePressed extends HttpServlet {
         HttpSession session = request.getSession();
         User user = (User) session.getAttribute("User");
 
-        @SuppressWarnings("unchecked")
-        List<Subscription> subscriptions = (List<Subscription>) session.getAttribute("Subscriptions");
+        LongHashSet subscriptions = (LongHashSet) session.getAttribute("Subscriptions");
         String subscribedUserId = request.getParameter("userId");
 
         // Proceed only if the user is authorized and user id to subscribe is correct
         if (user != null && !subscribedUserId.isEmpty()) {
             try {
                 Subscription subscription = new Subscription(0, user.getUserId(), Long.parseLong(subscribedUserId));
-                subscription.setSubscriptionId(daoFactory.getSubscriptionDao().createSubscription(subscription));
-                subscriptions.add(subscription);
+
+                // The feeds follow only the subscription, which is in the database
+                if (daoFactory.getSubscriptionDao().createSubscription(subscription) > 0) {
+                    subscriptions.add(subscription.getSubscriptedUserId());
+                    feedVersion.changed(FeedVersion.subscriber(user.getUserId()));
+                    if (tweetEvents != null) {
+                        tweetEvents.subscribed(user.getUserId(), subscription.getSubscriptedUserId());
+                    }
+                }
             } catch (NumberFormatException e) {
                 log.warn("Incorrect user id for subscription.");
             }
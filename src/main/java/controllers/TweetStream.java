@@ -0,0 +1,59 @@
+package controllers;
+
+import model.User;
+import services.LongHashSet;
+import services.TweetEvents;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+/**
+ * Servlet opens the Server-Sent Events stream of the current user. The stream gets an event about every new tweet
+ * of the user and of the users, he is subscribed to, so the main page reloads the feed only when it has changed.
+ * The request stays open without holding a container thread.
+ */
+@WebServlet(value = "/TweetStream", asyncSupported = true)
+public class TweetStream extends HttpServlet {
+
+    private TweetEvents tweetEvents;
+
+    /**
+     * Method gets the event streams from servlet context.
+     *
+     * @throws ServletException - standard Servlet exception
+     */
+    @Override
+    public void init() throws ServletException {
+        tweetEvents = (TweetEvents) getServletContext().getAttribute("tweetEvents");
+    }
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+        HttpSession session = request.getSession();
+        User user = (User) session.getAttribute("User");
+
+        // 204 tells the browser to stop reconnecting
+        if (user == null || tweetEvents == null) {
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            return;
+        }
+
+        // Event streams are never compressed and never cached
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        AsyncContext context = request.startAsync();
+        context.setTimeout(0);
+        if (!tweetEvents.open(context, user.getUserId(), (LongHashSet) session.getAttribute("Subscriptions"))) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            context.complete();
+        }
+    }
+}
@@ -3,6 +3,9 @@ package controllers;
 import dao.DaoFactory;
 import model.Subscription;
 import model.User;
+import services.FeedVersion;
+import services.LongHashSet;
+import services.TweetEvents;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -11,7 +14,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Servlet handles the pressed Unsubscribe link and sends the data to the database
@@ -20,15 +22,19 @@ import java.util.List;
 public class UnsubscribePressed extends HttpServlet {
 
     private DaoFactory daoFactory;
+    private FeedVersion feedVersion;
+    private TweetEvents tweetEvents;
 
     /**
-     * Method gets the common Dao Factory from servlet context.
+     * Method gets the common Dao Factory, the feed version and the event streams from servlet context.
      *
      * @throws ServletException - standard Servlet exception
      */
     @Override
     public void init() throws ServletException {
         daoFactory = (DaoFactory) getServletContext().getAttribute("daoFactory");
+        feedVersion = (FeedVersion) getServletContext().getAttribute("feedVersion");
+        tweetEvents = (TweetEvents) getServletContext().getAttribute("tweetEvents");
     }
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -36,20 +42,17 @@ public class UnsubscribePressed extends HttpServlet {
         HttpSession session = request.getSession();
         User user = (User) session.getAttribute("User");
 
-        @SuppressWarnings("unchecked")
-        List<Subscription> subscriptions = (List<Subscription>) session.getAttribute("Subscriptions");
+        LongHashSet subscriptions = (LongHashSet) session.getAttribute("Subscriptions");
         String subscribedUserId = request.getParameter("userId");
 
         // Proceed only if the user is authorized and user id to unsubscribe is correct
         if (user != null && !subscribedUserId.isEmpty()) {
             long subscribedUserIdLong = Long.parseLong(subscribedUserId);
             daoFactory.getSubscriptionDao().deleteSubscription(new Subscription(0, user.getUserId(), subscribedUserIdLong));
-            for (Subscription subscription: subscriptions) {
-                if (subscription.getUserId() == user.getUserId()
-                        && subscription.getSubscriptedUserId() == subscribedUserIdLong) {
-                    subscriptions.remove(subscription);
-                    break;
-                }
+            subscriptions.remove(subscribedUserIdLong);
+            feedVersion.changed(FeedVersion.subscriber(user.getUserId()));
+            if (tweetEvents != null) {
+                tweetEvents.unsubscribed(user.getUserId(), subscribedUserIdLong);
             }
         }
     }
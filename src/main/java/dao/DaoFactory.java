@@ -1,5 +1,7 @@
 package dao;
 
+import java.sql.SQLException;
+
 /**
  * Interface which defines getters for all DAO instances of this project's model
  */
@@ -35,4 +37,24 @@ public interface DaoFactory extends AutoCloseable {
      */
     LikeDao getLikeDao();
 
+    /**
+     * DAO for maintaining precomputed subscription feeds
+     * @return TimelineDao
+     */
+    TimelineDao getTimelineDao();
+
+    /**
+     * Executes several DAO calls with one connection and in one transaction.
+     * All DAOs of this factory called by the work on the current thread use the same connection,
+     * the transaction is committed when the work returns and rolled back when it throws an exception.
+     * Transactions of single DAO methods become savepoints within this transaction.
+     * A failed statement rolls the work back too, even if the DAO method has only logged it and returned.
+     * Nested calls join the outer transaction, their failures roll back only the nested work.
+     * @param work DAO calls to execute
+     * @param <T> type of the result
+     * @return result of the work
+     * @throws SQLException if the work, any of its statements or the transaction fails
+     */
+    <T> T inTransaction(UnitOfWork<T> work) throws SQLException;
+
 }
@@ -52,4 +52,11 @@ public interface InstrumentDao {
      * @throws SQLException if the arguments are incorrect
      */
     int setInstrumentsToUser(long userId, String[] instruments) throws SQLException;
+
+    /**
+     * Recalculates the instruments labels of all users, needed after the instruments
+     * have been changed bypassing this DAO
+     * @return number of updated users
+     */
+    int rebuildInstrumentsLabels();
 }
@@ -1,7 +1,9 @@
 package dao;
 
 import model.Like;
+import model.LikeStatus;
 import java.sql.SQLException;
+import java.util.Collection;
 
 /**
  * Interface which defines all necessary methods for operations with Like objects
@@ -26,8 +28,17 @@ public interface LikeDao {
     /**
      * Method adds new like if it is not exists, or deletes it if it is exists.
      * @param like Like to update
+     * @return new state of the message for the user or null if the like couldn't be updated
      */
-    void updateLike(Like like);
+    LikeStatus updateLike(Like like);
+
+    /**
+     * Reads whether the user likes the message and its like count with one query
+     * @param like user and message
+     * @return current state of the message for the user
+     * @throws SQLException if there's no such message
+     */
+    LikeStatus getLikeStatus(Like like) throws SQLException;
 
     /**
      * Deletes the record for the Like with specified id
@@ -42,4 +53,19 @@ public interface LikeDao {
      */
     int getLikeCount(long messageId);
 
+    /**
+     * Recalculates the like counters of the liked messages and of the messages with a positive counter
+     * from the Likes table
+     * @return number of messages with fixed counters
+     */
+    int reconcileLikeCounts();
+
+    /**
+     * Saves many likes at once: adds the first collection, deletes the second one
+     * and recalculates the like counters of all affected messages.
+     * @param added likes to add, existing likes are skipped
+     * @param removed likes to delete
+     * @throws SQLException if the likes can't be saved, nothing is changed then
+     */
+    void saveLikes(Collection<Like> added, Collection<Like> removed) throws SQLException;
 }
@@ -2,9 +2,11 @@ package dao;
 
 import model.Message;
 import model.Tweet;
+import model.TweetCursor;
 import model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface which defines all necessary methods for operations with Message and Tweet objects
@@ -21,39 +23,106 @@ public interface MessageDao {
     /**
      * Gets all tweets by the specified user ordered by date, newest first.
      * @param user User
-     * @param instruments instruments string to be added to tweet
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
-    List<Tweet> getUserMessages(User user, String instruments, int limit, int offset);
+    List<Tweet> getUserMessages(User user, int limit, TweetCursor cursor);
 
     /**
      * Get tweets from users, who are in the subscription list of the specified User,
      * ordered by date, newest first.
      * @param userId User's id
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
-    List<Tweet> getSubscriptionMessages(long userId, int limit, int offset);
+    List<Tweet> getSubscriptionMessages(long userId, int limit, TweetCursor cursor);
 
     /**
      * Gets tweets from users, who have the same instruments, ordered by date, newest first.
      * @param userId User's id
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
-    List<Tweet> getInstrumentMessages(long userId, int limit, int offset);
+    List<Tweet> getInstrumentMessages(long userId, int limit, TweetCursor cursor);
 
     /**
      * Gets tweets from the same country as User, ordered by date, newest first.
      * @param userId User's id
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
-    List<Tweet> getCountryMessages(long userId, int limit, int offset);
+    List<Tweet> getCountryMessages(long userId, int limit, TweetCursor cursor);
 
+    /**
+     * Streams all tweets by the specified user to the handler while they are read from the database,
+     * ordered by date, newest first.
+     * @param user User
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    void getUserMessages(User user, int limit, TweetCursor cursor, Consumer<Tweet> handler);
+
+    /**
+     * Streams tweets from users, who are in the subscription list of the specified User, to the handler
+     * while they are read from the database, ordered by date, newest first.
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    void getSubscriptionMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler);
+
+    /**
+     * Streams tweets from users, who have the same instruments, to the handler
+     * while they are read from the database, ordered by date, newest first.
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    void getInstrumentMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler);
+
+    /**
+     * Streams tweets from the same country as User to the handler
+     * while they are read from the database, ordered by date, newest first.
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    void getCountryMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler);
+
+    /**
+     * Finds the newest tweets containing all words of the query, ordered by id, newest first.
+     * @param query words separated by spaces, a word ending with "*" is a prefix
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only tweets with smaller ids are returned
+     * @return ArrayList of Tweets
+     */
+    List<Tweet> searchMessages(String query, int limit, TweetCursor cursor);
+
+    /**
+     * Streams the newest tweets containing all words of the query to the handler, ordered by id, newest first.
+     * @param query words separated by spaces, a word ending with "*" is a prefix
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only tweets with smaller ids are returned
+     * @param handler receives every tweet
+     */
+    void searchMessages(String query, int limit, TweetCursor cursor, Consumer<Tweet> handler);
+
+    /**
+     * Rebuilds the search index from all messages, for example after messages have been inserted bypassing the DAO
+     */
+    void rebuildSearchIndex();
+
+    /**
+     * Reloads the recent messages of every country and every instrument,
+     * which serve the first pages of the country and instrument feeds
+     */
+    void rebuildRecentMessages();
 }
@@ -1,20 +1,38 @@
 package dao;
 
 import model.Subscription;
+import java.util.Collection;
 import java.util.List;
 
 /**
- * Interface which defines all necessary methods for operations with Subscription objects
+ * Interface which defines all necessary methods for operations with Subscription objects.
+ * Every change of the subscriptions updates the timeline of the subscriber in the same transaction.
  */
 public interface SubscriptionDao {
 
     /**
-     * Creates single subscription.
+     * Creates single subscription, if it doesn't exist yet.
      * @param subscription Subscription object
-     * @return id of the created subscription
+     * @return id of the new or existing subscription
      */
     long createSubscription(Subscription subscription);
 
+    /**
+     * Subscribes the user to many other users at once. Existing subscriptions are kept.
+     * @param userId id of the subscriber
+     * @param subscriptedUserIds ids of the users to subscribe to
+     * @return number of created subscriptions
+     */
+    int createSubscriptions(long userId, Collection<Long> subscriptedUserIds);
+
+    /**
+     * Unsubscribes the user from many other users at once.
+     * @param userId id of the subscriber
+     * @param subscriptedUserIds ids of the users to unsubscribe from
+     * @return number of deleted subscriptions
+     */
+    int deleteSubscriptions(long userId, Collection<Long> subscriptedUserIds);
+
     /**
      * Delete the specified Subscription from the database.
      * @param subscription Subscription to delete
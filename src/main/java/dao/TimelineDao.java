@@ -0,0 +1,38 @@
+package dao;
+
+import model.Message;
+
+/**
+ * Interface which defines all necessary methods for maintaining precomputed subscription feeds (timelines).
+ * Every user has his own timeline with ids of all messages from the users he is subscribed to.
+ */
+public interface TimelineDao {
+
+    /**
+     * Appends a new message to the timelines of all subscribers of its author.
+     * Messages of very popular authors are not copied, they are read directly from the messages.
+     * @param message created message with its id
+     * @return number of timelines the message has been added to
+     */
+    int fanOutMessage(Message message);
+
+    /**
+     * Adds all messages of the author to the timeline of the new subscriber.
+     * SubscriptionDao does it on subscribe, this method repairs a single timeline.
+     * @param userId id of the subscriber
+     * @param authorId id of the subscribed user
+     */
+    void addAuthorMessages(long userId, long authorId);
+
+    /**
+     * Removes all messages of the author from the timeline of the former subscriber
+     * @param userId id of the subscriber
+     * @param authorId id of the unsubscribed user
+     */
+    void removeAuthorMessages(long userId, long authorId);
+
+    /**
+     * Rebuilds all timelines from the messages and subscriptions
+     */
+    void rebuildTimelines();
+}
@@ -0,0 +1,20 @@
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * Several DAO calls, which have to be executed in one transaction.
+ * See {@link DaoFactory#inTransaction(UnitOfWork)}.
+ * @param <T> type of the result
+ */
+@FunctionalInterface
+public interface UnitOfWork<T> {
+
+    /**
+     * Executes the DAO calls
+     * @param daoFactory DaoFactory, whose DAOs share one connection and transaction
+     * @return any result of the work
+     * @throws SQLException if the work fails, the transaction is rolled back
+     */
+    T execute(DaoFactory daoFactory) throws SQLException;
+}
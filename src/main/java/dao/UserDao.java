@@ -27,7 +27,7 @@ public interface UserDao {
      * Gets User with the specified login from the database.
      *
      * @param login User's login
-     * @return User object
+     * @return User object, null if there's no such user or blank User if the database can't be read
      */
     User readUserByLogin(String login);
 
@@ -0,0 +1,119 @@
+package dao.async;
+
+import dao.DaoFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous variants of MessageDao, LikeDao and SubscriptionDao of any DaoFactory.
+ * Every call is executed on a bounded pool of DAO threads and returns a CompletableFuture,
+ * so servlets can release the container thread while the database works.
+ * The number of DAO threads should match the connection pool, more threads would only wait for connections.
+ * When all threads are busy and the queue is full, the futures fail with RejectedExecutionException.
+ */
+public class AsyncDaoFactory implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncDaoFactory.class);
+
+    private final ExecutorService executor;
+    private final AsyncMessageDao messageDao;
+    private final AsyncLikeDao likeDao;
+    private final AsyncSubscriptionDao subscriptionDao;
+
+    /**
+     * Creates the DAO threads and asynchronous DAOs for the specified factory
+     * @param daoFactory DaoFactory to call
+     * @param threads number of DAO threads
+     * @param queueSize number of calls, which can wait for a free thread
+     */
+    public AsyncDaoFactory(DaoFactory daoFactory, int threads, int queueSize) {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "dao-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        messageDao = new AsyncMessageDao(daoFactory.getMessageDao(), this);
+        likeDao = new AsyncLikeDao(daoFactory.getLikeDao(), this);
+        subscriptionDao = new AsyncSubscriptionDao(daoFactory.getSubscriptionDao(), this);
+    }
+
+    /**
+     * Asynchronous MessageDao
+     * @return AsyncMessageDao
+     */
+    public AsyncMessageDao getMessageDao() {
+        return messageDao;
+    }
+
+    /**
+     * Asynchronous LikeDao
+     * @return AsyncLikeDao
+     */
+    public AsyncLikeDao getLikeDao() {
+        return likeDao;
+    }
+
+    /**
+     * Asynchronous SubscriptionDao
+     * @return AsyncSubscriptionDao
+     */
+    public AsyncSubscriptionDao getSubscriptionDao() {
+        return subscriptionDao;
+    }
+
+    /**
+     * Waits for the started calls and stops the DAO threads.
+     * If the waiting thread is interrupted, the calls are left running and the interrupt status is kept.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("DAO calls are still running on shutdown");
+            }
+        } catch (InterruptedException e) {
+            log.warn("DAO calls are still running on interrupted shutdown");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Service method, which executes the DAO call on a DAO thread
+     * @param call DAO call
+     * @param <T> type of the result
+     * @return future with the result, failed if the call throws or can't be started
+     */
+    <T> CompletableFuture<T> supply(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Service method, which executes the DAO call without result on a DAO thread
+     * @param call DAO call
+     * @return future, which completes after the call
+     */
+    CompletableFuture<Void> run(Runnable call) {
+        return supply(() -> {
+            call.run();
+            return null;
+        });
+    }
+}
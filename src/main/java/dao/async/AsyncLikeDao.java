@@ -0,0 +1,57 @@
+package dao.async;
+
+import dao.LikeDao;
+import model.Like;
+import model.LikeStatus;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * LikeDao methods, which are executed on the DAO threads
+ */
+public class AsyncLikeDao {
+
+    private final LikeDao likeDao;
+    private final AsyncDaoFactory factory;
+
+    AsyncLikeDao(LikeDao likeDao, AsyncDaoFactory factory) {
+        this.likeDao = likeDao;
+        this.factory = factory;
+    }
+
+    /**
+     * See {@link LikeDao#createLike(Like)}
+     * @param like Like object to add
+     * @return future with the id of the new like
+     */
+    public CompletableFuture<Long> createLike(Like like) {
+        return factory.supply(() -> likeDao.createLike(like));
+    }
+
+    /**
+     * See {@link LikeDao#updateLike(Like)}
+     * @param like Like to update
+     * @return future with the new state of the message for the user
+     */
+    public CompletableFuture<LikeStatus> updateLike(Like like) {
+        return factory.supply(() -> likeDao.updateLike(like));
+    }
+
+    /**
+     * See {@link LikeDao#deleteLike(long)}
+     * @param likeId Like id to delete
+     * @return future, which completes after the deletion
+     */
+    public CompletableFuture<Void> deleteLike(long likeId) {
+        return factory.run(() -> likeDao.deleteLike(likeId));
+    }
+
+    /**
+     * See {@link LikeDao#getLikeCount(long)}
+     * @param messageId message id
+     * @return future with the number of likes
+     */
+    public CompletableFuture<Integer> getLikeCount(long messageId) {
+        return factory.supply(() -> likeDao.getLikeCount(messageId));
+    }
+}
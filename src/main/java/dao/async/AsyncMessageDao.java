@@ -0,0 +1,139 @@
+package dao.async;
+
+import dao.MessageDao;
+import model.Message;
+import model.Tweet;
+import model.TweetCursor;
+import model.User;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * MessageDao methods, which are executed on the DAO threads.
+ * Streaming variants call the handler on the DAO thread.
+ */
+public class AsyncMessageDao {
+
+    private final MessageDao messageDao;
+    private final AsyncDaoFactory factory;
+
+    AsyncMessageDao(MessageDao messageDao, AsyncDaoFactory factory) {
+        this.messageDao = messageDao;
+        this.factory = factory;
+    }
+
+    /**
+     * See {@link MessageDao#createMessage(Message)}
+     * @param message message to create
+     * @return future with the id of the new message
+     */
+    public CompletableFuture<Long> createMessage(Message message) {
+        return factory.supply(() -> messageDao.createMessage(message));
+    }
+
+    /**
+     * See {@link MessageDao#getUserMessages(User, int, TweetCursor)}
+     * @param user User
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @return future with the tweets
+     */
+    public CompletableFuture<List<Tweet>> getUserMessages(User user, int limit, TweetCursor cursor) {
+        return factory.supply(() -> messageDao.getUserMessages(user, limit, cursor));
+    }
+
+    /**
+     * See {@link MessageDao#getSubscriptionMessages(long, int, TweetCursor)}
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @return future with the tweets
+     */
+    public CompletableFuture<List<Tweet>> getSubscriptionMessages(long userId, int limit, TweetCursor cursor) {
+        return factory.supply(() -> messageDao.getSubscriptionMessages(userId, limit, cursor));
+    }
+
+    /**
+     * See {@link MessageDao#getInstrumentMessages(long, int, TweetCursor)}
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @return future with the tweets
+     */
+    public CompletableFuture<List<Tweet>> getInstrumentMessages(long userId, int limit, TweetCursor cursor) {
+        return factory.supply(() -> messageDao.getInstrumentMessages(userId, limit, cursor));
+    }
+
+    /**
+     * See {@link MessageDao#getCountryMessages(long, int, TweetCursor)}
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @return future with the tweets
+     */
+    public CompletableFuture<List<Tweet>> getCountryMessages(long userId, int limit, TweetCursor cursor) {
+        return factory.supply(() -> messageDao.getCountryMessages(userId, limit, cursor));
+    }
+
+    /**
+     * See {@link MessageDao#getUserMessages(User, int, TweetCursor, Consumer)}
+     * @param user User
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @param handler receives every tweet on the DAO thread
+     * @return future, which completes after the last tweet
+     */
+    public CompletableFuture<Void> getUserMessages(User user, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        return factory.run(() -> messageDao.getUserMessages(user, limit, cursor, handler));
+    }
+
+    /**
+     * See {@link MessageDao#getSubscriptionMessages(long, int, TweetCursor, Consumer)}
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @param handler receives every tweet on the DAO thread
+     * @return future, which completes after the last tweet
+     */
+    public CompletableFuture<Void> getSubscriptionMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        return factory.run(() -> messageDao.getSubscriptionMessages(userId, limit, cursor, handler));
+    }
+
+    /**
+     * See {@link MessageDao#getInstrumentMessages(long, int, TweetCursor, Consumer)}
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @param handler receives every tweet on the DAO thread
+     * @return future, which completes after the last tweet
+     */
+    public CompletableFuture<Void> getInstrumentMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        return factory.run(() -> messageDao.getInstrumentMessages(userId, limit, cursor, handler));
+    }
+
+    /**
+     * See {@link MessageDao#getCountryMessages(long, int, TweetCursor, Consumer)}
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @param handler receives every tweet on the DAO thread
+     * @return future, which completes after the last tweet
+     */
+    public CompletableFuture<Void> getCountryMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        return factory.run(() -> messageDao.getCountryMessages(userId, limit, cursor, handler));
+    }
+
+    /**
+     * See {@link MessageDao#searchMessages(String, int, TweetCursor, Consumer)}
+     * @param query words separated by spaces
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet
+     * @param handler receives every tweet on the DAO thread
+     * @return future, which completes after the last tweet
+     */
+    public CompletableFuture<Void> searchMessages(String query, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        return factory.run(() -> messageDao.searchMessages(query, limit, cursor, handler));
+    }
+}
@@ -0,0 +1,69 @@
+package dao.async;
+
+import dao.SubscriptionDao;
+import model.Subscription;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SubscriptionDao methods, which are executed on the DAO threads
+ */
+public class AsyncSubscriptionDao {
+
+    private final SubscriptionDao subscriptionDao;
+    private final AsyncDaoFactory factory;
+
+    AsyncSubscriptionDao(SubscriptionDao subscriptionDao, AsyncDaoFactory factory) {
+        this.subscriptionDao = subscriptionDao;
+        this.factory = factory;
+    }
+
+    /**
+     * See {@link SubscriptionDao#createSubscription(Subscription)}
+     * @param subscription Subscription to create
+     * @return future with the id of the subscription
+     */
+    public CompletableFuture<Long> createSubscription(Subscription subscription) {
+        return factory.supply(() -> subscriptionDao.createSubscription(subscription));
+    }
+
+    /**
+     * See {@link SubscriptionDao#createSubscriptions(long, Collection)}
+     * @param userId subscriber's id
+     * @param subscriptedUserIds ids of the users to subscribe to
+     * @return future with the number of processed subscriptions
+     */
+    public CompletableFuture<Integer> createSubscriptions(long userId, Collection<Long> subscriptedUserIds) {
+        return factory.supply(() -> subscriptionDao.createSubscriptions(userId, subscriptedUserIds));
+    }
+
+    /**
+     * See {@link SubscriptionDao#deleteSubscriptions(long, Collection)}
+     * @param userId subscriber's id
+     * @param subscriptedUserIds ids of the users to unsubscribe from
+     * @return future with the number of deleted subscriptions
+     */
+    public CompletableFuture<Integer> deleteSubscriptions(long userId, Collection<Long> subscriptedUserIds) {
+        return factory.supply(() -> subscriptionDao.deleteSubscriptions(userId, subscriptedUserIds));
+    }
+
+    /**
+     * See {@link SubscriptionDao#deleteSubscription(Subscription)}
+     * @param subscription Subscription to delete
+     * @return future, which completes after the deletion
+     */
+    public CompletableFuture<Void> deleteSubscription(Subscription subscription) {
+        return factory.run(() -> subscriptionDao.deleteSubscription(subscription));
+    }
+
+    /**
+     * See {@link SubscriptionDao#getUserSubscriptions(long)}
+     * @param userId user id
+     * @return future with the subscriptions of the user
+     */
+    public CompletableFuture<List<Subscription>> getUserSubscriptions(long userId) {
+        return factory.supply(() -> subscriptionDao.getUserSubscriptions(userId));
+    }
+}
@@ -0,0 +1,59 @@
+package dao.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Units of work of the current thread for the caches of one CachingDaoFactory.
+ * Inside a unit of work the caches are bypassed, because the reads may see uncommitted data.
+ * Invalidations made inside are repeated when the unit of work ends, so the old values,
+ * which other threads have cached before the commit, are dropped too.
+ */
+class CacheScope {
+
+    // Invalidations of the current unit of work, null outside of it
+    private final ThreadLocal<List<Runnable>> invalidations = new ThreadLocal<>();
+
+    /**
+     * Checks if the current thread executes a unit of work
+     * @return true if the caches must not be read or filled
+     */
+    boolean isBypassed() {
+        return invalidations.get() != null;
+    }
+
+    /**
+     * Runs the invalidation now and once more at the end of the current unit of work, if there is one
+     * @param invalidation removes the changed entries from the caches
+     */
+    void invalidate(Runnable invalidation) {
+        invalidation.run();
+        List<Runnable> pending = invalidations.get();
+        if (pending != null) {
+            pending.add(invalidation);
+        }
+    }
+
+    /**
+     * Starts the unit of work of the current thread
+     * @return false if the thread is already in a unit of work, which is continued
+     */
+    boolean begin() {
+        if (isBypassed()) {
+            return false;
+        }
+        invalidations.set(new ArrayList<>());
+        return true;
+    }
+
+    /**
+     * Ends the unit of work of the current thread after its commit or rollback and repeats its invalidations
+     */
+    void end() {
+        List<Runnable> pending = invalidations.get();
+        invalidations.remove();
+        for (Runnable invalidation : pending) {
+            invalidation.run();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dao.cache;
+
+import dao.*;
+
+import java.sql.SQLException;
+
+/**
+ * DaoFactory decorator, which adds read-through caches to UserDao and InstrumentDao of any other DaoFactory.
+ * All other DAOs are returned as is.
+ */
+public class CachingDaoFactory implements DaoFactory {
+
+    private final DaoFactory daoFactory;
+    private final CacheScope scope = new CacheScope();
+    private final CachingUserDao userDao;
+    private final CachingInstrumentDao instrumentDao;
+
+    /**
+     * Constructor, which wraps the DAOs of the specified factory with caches.
+     * @param daoFactory DaoFactory to cache
+     * @param maxSize maximal number of entries in every cache
+     * @param ttlMillis time to live of every cached entry in milliseconds
+     */
+    public CachingDaoFactory(DaoFactory daoFactory, int maxSize, long ttlMillis) {
+        this.daoFactory = daoFactory;
+        userDao = new CachingUserDao(daoFactory.getUserDao(), scope, maxSize, ttlMillis);
+        instrumentDao = new CachingInstrumentDao(daoFactory.getInstrumentDao(), scope, maxSize, ttlMillis);
+    }
+
+    /**
+     * Method returns cached UserDao
+     * @return caching UserDao
+     */
+    @Override
+    public UserDao getUserDao() {
+        return userDao;
+    }
+
+    /**
+     * Method returns cached InstrumentDao
+     * @return caching InstrumentDao
+     */
+    @Override
+    public InstrumentDao getInstrumentDao() {
+        return instrumentDao;
+    }
+
+    /**
+     * Method returns MessageDao of the wrapped factory
+     * @return MessageDao
+     */
+    @Override
+    public MessageDao getMessageDao() {
+        return daoFactory.getMessageDao();
+    }
+
+    /**
+     * Method returns SubscriptionDao of the wrapped factory
+     * @return SubscriptionDao
+     */
+    @Override
+    public SubscriptionDao getSubscriptionDao() {
+        return daoFactory.getSubscriptionDao();
+    }
+
+    /**
+     * Method returns LikeDao of the wrapped factory
+     * @return LikeDao
+     */
+    @Override
+    public LikeDao getLikeDao() {
+        return daoFactory.getLikeDao();
+    }
+
+    /**
+     * Method returns TimelineDao of the wrapped factory
+     * @return TimelineDao
+     */
+    @Override
+    public TimelineDao getTimelineDao() {
+        return daoFactory.getTimelineDao();
+    }
+
+    /**
+     * Executes the work in the transaction of the wrapped factory, the work gets the DAOs of this factory.
+     * The caches are neither read nor filled by the work, so uncommitted data is never published to other threads,
+     * and the entries changed by the work are invalidated once more after the commit or rollback.
+     * @param work DAO calls to execute
+     * @param <T> type of the result
+     * @return result of the work
+     * @throws SQLException if the work or the transaction fails
+     */
+    @Override
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        if (!scope.begin()) {
+            return daoFactory.inTransaction(factory -> work.execute(this));
+        }
+        try {
+            return daoFactory.inTransaction(factory -> work.execute(this));
+        } finally {
+            scope.end();
+        }
+    }
+
+    /**
+     * Hit and miss statistics of all caches
+     * @return statistics as String
+     */
+    public String getStatistics() {
+        return userDao.getStatistics() + "; " + instrumentDao.getStatistics();
+    }
+
+    /**
+     * Closes the wrapped factory
+     */
+    @Override
+    public void close() throws Exception {
+        daoFactory.close();
+    }
+}
@@ -0,0 +1,160 @@
+package dao.cache;
+
+import dao.InstrumentDao;
+import model.Instrument;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-through cache for any InstrumentDao. Caches the list of all instruments, instruments of every user
+ * and single instruments by id. Writes invalidate the affected lists, and the reads, which have started before,
+ * don't cache what they have read. Blank instruments and empty lists, which are read on a miss or an error,
+ * are not cached, and units of work read the wrapped DAO directly, see CacheScope.
+ */
+public class CachingInstrumentDao implements InstrumentDao {
+
+    // Key for the list of all instruments
+    private static final long ALL_INSTRUMENTS = 0;
+
+    private final InstrumentDao instrumentDao;
+    private final CacheScope scope;
+    private final LruCache<Long, Instrument> instruments;
+    private final LruCache<Long, List<Instrument>> allInstruments;
+    private final LruCache<Long, List<Instrument>> userInstruments;
+
+    /**
+     * Creates the cache for the specified InstrumentDao
+     * @param instrumentDao InstrumentDao to cache
+     * @param scope units of work, which bypass the cache
+     * @param maxSize maximal number of cached instruments and users
+     * @param ttlMillis time to live of every cached entry in milliseconds
+     */
+    CachingInstrumentDao(InstrumentDao instrumentDao, CacheScope scope, int maxSize, long ttlMillis) {
+        this.instrumentDao = instrumentDao;
+        this.scope = scope;
+        instruments = new LruCache<>("instruments", maxSize, ttlMillis);
+        allInstruments = new LruCache<>("allInstruments", 1, ttlMillis);
+        userInstruments = new LruCache<>("userInstruments", maxSize, ttlMillis);
+    }
+
+    /**
+     * Creates one or more instruments from the list and invalidates the list of all instruments
+     * @param instruments - list of Instruments to create
+     * @return - number of created instruments
+     */
+    @Override
+    public long createInstruments(List<Instrument> instruments) {
+        long result = instrumentDao.createInstruments(instruments);
+        scope.invalidate(allInstruments::clear);
+        return result;
+    }
+
+    /**
+     * Read one Instrument from the cache or from DB by the specified id
+     * @param instrumentId - id of the instrument to read
+     * @return - Instrument object with the specified id
+     */
+    @Override
+    public Instrument readInstrument(long instrumentId) {
+        if (scope.isBypassed()) {
+            return instrumentDao.readInstrument(instrumentId);
+        }
+        Instrument instrument = instruments.get(instrumentId);
+        if (instrument == null) {
+            long stamp = instruments.getStamp();
+            instrument = instrumentDao.readInstrument(instrumentId);
+            if (instrument.getInstrumentId() != 0) {
+                instruments.put(instrumentId, instrument, stamp);
+            }
+        }
+        return instrument;
+    }
+
+    /**
+     * Clear all instruments for the specified user and invalidates his cached instruments
+     * @param userId - user id
+     */
+    @Override
+    public void deleteAllUserInstruments(long userId) {
+        instrumentDao.deleteAllUserInstruments(userId);
+        scope.invalidate(() -> userInstruments.remove(userId));
+    }
+
+    /**
+     * Reads all instruments of the specified user from the cache or from DB
+     * @param userId - user id
+     * @return - ArrayList of Instruments
+     */
+    @Override
+    public List<Instrument> getUserInstruments(long userId) {
+        if (scope.isBypassed()) {
+            return instrumentDao.getUserInstruments(userId);
+        }
+        List<Instrument> result = userInstruments.get(userId);
+        if (result == null) {
+            long stamp = userInstruments.getStamp();
+            result = instrumentDao.getUserInstruments(userId);
+            if (!result.isEmpty()) {
+                userInstruments.put(userId, new ArrayList<>(result), stamp);
+            }
+            return result;
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Reads all instruments registered in the database, or from the cache
+     * @return - ArrayList of all Instruments
+     */
+    @Override
+    public List<Instrument> getAllInstruments() {
+        if (scope.isBypassed()) {
+            return instrumentDao.getAllInstruments();
+        }
+        List<Instrument> result = allInstruments.get(ALL_INSTRUMENTS);
+        if (result == null) {
+            long stamp = allInstruments.getStamp();
+            result = instrumentDao.getAllInstruments();
+            if (!result.isEmpty()) {
+                allInstruments.put(ALL_INSTRUMENTS, new ArrayList<>(result), stamp);
+            }
+            return result;
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Assigns one or more instruments to the specified user and invalidates his cached instruments
+     * @param userId - user id
+     * @param instruments - array of the instruments' names
+     * @return number of instruments that has been added
+     * @throws SQLException if the arguments are incorrect
+     */
+    @Override
+    public int setInstrumentsToUser(long userId, String[] instruments) throws SQLException {
+        try {
+            return instrumentDao.setInstrumentsToUser(userId, instruments);
+        } finally {
+            scope.invalidate(() -> userInstruments.remove(userId));
+        }
+    }
+
+    /**
+     * Recalculates the instruments labels of all users in the wrapped DAO
+     * @return number of updated users
+     */
+    @Override
+    public int rebuildInstrumentsLabels() {
+        return instrumentDao.rebuildInstrumentsLabels();
+    }
+
+    /**
+     * Statistics of the instrument caches
+     * @return statistics as String
+     */
+    String getStatistics() {
+        return instruments + "; " + allInstruments + "; " + userInstruments;
+    }
+}
@@ -0,0 +1,141 @@
+package dao.cache;
+
+import dao.UserDao;
+import model.User;
+
+/**
+ * Read-through cache for any UserDao. Users are cached by id and by login, including the logins
+ * that are not used yet, so the checks of new logins don't hit the database.
+ * Every write invalidates all cached entries of the user, and the reads, which have started before it,
+ * don't cache what they have read. Blank users, which are read on a miss or an error, are not cached,
+ * and units of work read the wrapped DAO directly, see CacheScope.
+ * Cached users are copied on every read and write, so the callers can't change the cached data.
+ */
+public class CachingUserDao implements UserDao {
+
+    // Marks the logins, which don't belong to any user
+    private static final User NOT_FOUND = new User();
+
+    private final UserDao userDao;
+    private final CacheScope scope;
+    private final LruCache<Long, User> usersById;
+    private final LruCache<String, User> usersByLogin;
+
+    /**
+     * Creates the cache for the specified UserDao
+     * @param userDao UserDao to cache
+     * @param scope units of work, which bypass the cache
+     * @param maxSize maximal number of cached users
+     * @param ttlMillis time to live of every cached user in milliseconds
+     */
+    CachingUserDao(UserDao userDao, CacheScope scope, int maxSize, long ttlMillis) {
+        this.userDao = userDao;
+        this.scope = scope;
+        usersById = new LruCache<>("usersById", maxSize, ttlMillis);
+        usersByLogin = new LruCache<>("usersByLogin", maxSize, ttlMillis);
+    }
+
+    /**
+     * Creates new User in the database and invalidates the cached "free" login
+     *
+     * @param user User to create
+     * @return new user's id or 0 if login has been used
+     */
+    @Override
+    public long createUser(User user) {
+        long userId = userDao.createUser(user);
+        scope.invalidate(() -> {
+            usersByLogin.remove(user.getLogin());
+            usersById.remove(userId);
+        });
+        return userId;
+    }
+
+    /**
+     * Gets the User with the specified id from the cache or from the database.
+     *
+     * @param userId - user id
+     * @return User object
+     */
+    @Override
+    public User readUserById(long userId) {
+        if (scope.isBypassed()) {
+            return userDao.readUserById(userId);
+        }
+        User user = usersById.get(userId);
+        if (user == null) {
+            long stamp = usersById.getStamp();
+            user = userDao.readUserById(userId);
+            if (user.getUserId() != 0) {
+                usersById.put(userId, copy(user), stamp);
+            }
+            return user;
+        }
+        return copy(user);
+    }
+
+    /**
+     * Gets User with the specified login from the cache or from the database.
+     *
+     * A free login is cached, a blank user read on an error is not.
+     *
+     * @param login User's login
+     * @return User object, null if there's no such user or blank User if the database can't be read
+     */
+    @Override
+    public User readUserByLogin(String login) {
+        if (scope.isBypassed()) {
+            return userDao.readUserByLogin(login);
+        }
+        User user = usersByLogin.get(login);
+        if (user == null) {
+            long stamp = usersByLogin.getStamp();
+            user = userDao.readUserByLogin(login);
+            if (user == null) {
+                usersByLogin.put(login, NOT_FOUND, stamp);
+            } else if (user.getUserId() != 0) {
+                usersByLogin.put(login, copy(user), stamp);
+            }
+            return user;
+        }
+        return user == NOT_FOUND ? null : copy(user);
+    }
+
+    /**
+     * Updates the specified User in the database and invalidates all cached entries of this user,
+     * including the old login
+     *
+     * @param user User to update
+     * @return user id or 0 if login has been used
+     */
+    @Override
+    public long updateUser(User user) {
+        long result = userDao.updateUser(user);
+        long userId = user.getUserId();
+        String login = user.getLogin();
+        scope.invalidate(() -> {
+            usersById.remove(userId);
+            usersByLogin.removeIf(cached -> cached != NOT_FOUND && cached.getUserId() == userId);
+            usersByLogin.remove(login);
+        });
+        return result;
+    }
+
+    /**
+     * Statistics of the user caches
+     * @return statistics as String
+     */
+    String getStatistics() {
+        return usersById + "; " + usersByLogin;
+    }
+
+    /**
+     * Service method, which makes a copy of the user
+     * @param user User to copy
+     * @return new User with the same data
+     */
+    private static User copy(User user) {
+        return new User(user.getUserId(), user.getLogin(), user.getPassword(),
+                user.getFirstName(), user.getLastName(), user.getCountry());
+    }
+}
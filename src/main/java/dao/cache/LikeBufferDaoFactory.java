@@ -0,0 +1,107 @@
+package dao.cache;
+
+import dao.*;
+
+import java.sql.SQLException;
+
+/**
+ * DaoFactory decorator, which puts the write-behind buffer in front of the LikeDao of any other DaoFactory.
+ * MessageDao is wrapped to show the buffered likes, all other DAOs are returned as is.
+ */
+public class LikeBufferDaoFactory implements DaoFactory {
+
+    private final DaoFactory daoFactory;
+    private final WriteBehindLikeDao likeDao;
+    private final LikeBufferMessageDao messageDao;
+
+    /**
+     * Constructor, which wraps the LikeDao of the specified factory with the buffer.
+     * @param daoFactory DaoFactory to wrap
+     * @param batchSize number of buffered likes, which triggers the flush
+     * @param flushMillis maximal time in milliseconds before the buffered likes are written
+     */
+    public LikeBufferDaoFactory(DaoFactory daoFactory, int batchSize, long flushMillis) {
+        this.daoFactory = daoFactory;
+        likeDao = new WriteBehindLikeDao(daoFactory.getLikeDao(), batchSize, flushMillis);
+        messageDao = new LikeBufferMessageDao(daoFactory.getMessageDao(), likeDao);
+    }
+
+    /**
+     * Method returns UserDao of the wrapped factory
+     * @return UserDao
+     */
+    @Override
+    public UserDao getUserDao() {
+        return daoFactory.getUserDao();
+    }
+
+    /**
+     * Method returns InstrumentDao of the wrapped factory
+     * @return InstrumentDao
+     */
+    @Override
+    public InstrumentDao getInstrumentDao() {
+        return daoFactory.getInstrumentDao();
+    }
+
+    /**
+     * Method returns MessageDao, which shows the buffered likes
+     * @return MessageDao
+     */
+    @Override
+    public MessageDao getMessageDao() {
+        return messageDao;
+    }
+
+    /**
+     * Method returns SubscriptionDao of the wrapped factory
+     * @return SubscriptionDao
+     */
+    @Override
+    public SubscriptionDao getSubscriptionDao() {
+        return daoFactory.getSubscriptionDao();
+    }
+
+    /**
+     * Method returns buffered LikeDao
+     * @return write-behind LikeDao
+     */
+    @Override
+    public LikeDao getLikeDao() {
+        return likeDao;
+    }
+
+    /**
+     * Method returns TimelineDao of the wrapped factory
+     * @return TimelineDao
+     */
+    @Override
+    public TimelineDao getTimelineDao() {
+        return daoFactory.getTimelineDao();
+    }
+
+    /**
+     * Executes the work in the transaction of the wrapped factory, the work gets the DAOs of this factory.
+     * Likes pressed within the work are buffered as usual and written later in their own transaction.
+     * @param work DAO calls to execute
+     * @param <T> type of the result
+     * @return result of the work
+     * @throws SQLException if the work or the transaction fails
+     */
+    @Override
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        return daoFactory.inTransaction(factory -> work.execute(this));
+    }
+
+    /**
+     * Writes the buffered likes and closes the wrapped factory
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            likeDao.close();
+        } finally {
+            daoFactory.close();
+        }
+    }
+}
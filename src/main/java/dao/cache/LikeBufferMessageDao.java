@@ -0,0 +1,118 @@
+package dao.cache;
+
+import dao.MessageDao;
+import model.Message;
+import model.Tweet;
+import model.TweetCursor;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * MessageDao decorator, which adds the likes from the write-behind buffer to the like counters of all read tweets,
+ * so the feeds show the likes, which are not written to the database yet.
+ */
+public class LikeBufferMessageDao implements MessageDao {
+
+    private final MessageDao messageDao;
+    private final WriteBehindLikeDao likeDao;
+
+    /**
+     * Creates the decorator for the specified MessageDao
+     * @param messageDao MessageDao to read tweets from
+     * @param likeDao buffer with the pending likes
+     */
+    LikeBufferMessageDao(MessageDao messageDao, WriteBehindLikeDao likeDao) {
+        this.messageDao = messageDao;
+        this.likeDao = likeDao;
+    }
+
+    @Override
+    public long createMessage(Message message) {
+        return messageDao.createMessage(message);
+    }
+
+    @Override
+    public List<Tweet> getUserMessages(User user, int limit, TweetCursor cursor) {
+        List<Tweet> tweets = new ArrayList<>();
+        getUserMessages(user, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    @Override
+    public List<Tweet> getSubscriptionMessages(long userId, int limit, TweetCursor cursor) {
+        List<Tweet> tweets = new ArrayList<>();
+        getSubscriptionMessages(userId, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    @Override
+    public List<Tweet> getInstrumentMessages(long userId, int limit, TweetCursor cursor) {
+        List<Tweet> tweets = new ArrayList<>();
+        getInstrumentMessages(userId, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    @Override
+    public List<Tweet> getCountryMessages(long userId, int limit, TweetCursor cursor) {
+        List<Tweet> tweets = new ArrayList<>();
+        getCountryMessages(userId, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    @Override
+    public List<Tweet> searchMessages(String query, int limit, TweetCursor cursor) {
+        List<Tweet> tweets = new ArrayList<>();
+        searchMessages(query, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    @Override
+    public void getUserMessages(User user, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        messageDao.getUserMessages(user, limit, cursor, withPendingLikes(handler));
+    }
+
+    @Override
+    public void getSubscriptionMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        messageDao.getSubscriptionMessages(userId, limit, cursor, withPendingLikes(handler));
+    }
+
+    @Override
+    public void getInstrumentMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        messageDao.getInstrumentMessages(userId, limit, cursor, withPendingLikes(handler));
+    }
+
+    @Override
+    public void getCountryMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        messageDao.getCountryMessages(userId, limit, cursor, withPendingLikes(handler));
+    }
+
+    @Override
+    public void searchMessages(String query, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        messageDao.searchMessages(query, limit, cursor, withPendingLikes(handler));
+    }
+
+    @Override
+    public void rebuildSearchIndex() {
+        messageDao.rebuildSearchIndex();
+    }
+
+    @Override
+    public void rebuildRecentMessages() {
+        messageDao.rebuildRecentMessages();
+    }
+
+    /**
+     * Service method, which corrects the like counter of every tweet before it is passed to the handler
+     * @param handler handler of the tweets
+     * @return new handler
+     */
+    private Consumer<Tweet> withPendingLikes(Consumer<Tweet> handler) {
+        return tweet -> {
+            tweet.setLikes(tweet.getLikes() + likeDao.getPendingLikes(tweet.getMessageId()));
+            handler.accept(tweet);
+        };
+    }
+}
@@ -0,0 +1,177 @@
+package dao.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Simple thread-safe cache with bounded size, least-recently-used eviction and time-to-live for every entry.
+ * Counts hits, misses and evictions, so the size and TTL can be adjusted to the real load.
+ * Values read through are put with the stamp taken before the read, so a read, which has started
+ * before an invalidation, can't put the value it has read before the change.
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public class LruCache<K, V> {
+
+    private final String name;
+    private final long ttlMillis;
+    private final Map<K, CacheEntry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Number of removals, values read before the last removal may be stale
+    private long invalidations;
+
+    /**
+     * Creates an empty cache
+     * @param name name of the cache for statistics
+     * @param maxSize maximal number of entries, the least recently used entries are evicted first
+     * @param ttlMillis time to live of every entry in milliseconds
+     */
+    public LruCache(String name, int maxSize, long ttlMillis) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value
+     * @param key key
+     * @return cached value or null if there is no such value or it has expired
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Puts the value into the cache
+     * @param key key
+     * @param value value, not null
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Stamp to take before the value is read from the source, see put(key, value, stamp)
+     * @return current number of removals
+     */
+    public synchronized long getStamp() {
+        return invalidations;
+    }
+
+    /**
+     * Puts the value read from the source, unless any value has been removed since the read has started
+     * @param key key
+     * @param value value, not null
+     * @param stamp stamp taken before the read
+     * @return true if the value has been put
+     */
+    public synchronized boolean put(K key, V value, long stamp) {
+        if (stamp != invalidations) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Removes the value with the specified key
+     * @param key key
+     */
+    public synchronized void remove(K key) {
+        invalidations++;
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all values, which match the predicate
+     * @param predicate condition for the values to remove
+     */
+    public synchronized void removeIf(Predicate<V> predicate) {
+        invalidations++;
+        Iterator<CacheEntry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (predicate.test(iterator.next().value)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all values
+     */
+    public synchronized void clear() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Share of the requests served from the cache
+     * @return hit ratio from 0 to 1
+     */
+    public double getHitRatio() {
+        long requests = hits.get() + misses.get();
+        return requests == 0 ? 0 : (double) hits.get() / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: size=%d, hits=%d, misses=%d, evictions=%d, hit ratio=%.2f",
+                name, size(), getHits(), getMisses(), getEvictions(), getHitRatio());
+    }
+
+    /**
+     * Cached value with its expiration time
+     * @param <V> type of the value
+     */
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package dao.cache;
+
+import dao.LikeDao;
+import model.Like;
+import model.LikeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Write-behind buffer for any LikeDao. Pressed likes are kept in memory and written to the database
+ * in batches, when the buffer is full or the flush period has passed. Repeated clicks of the same user
+ * on the same message are coalesced, so a like and an unlike cancel each other out without touching the database.
+ * Like counts and like states are read from the database with one query and corrected with the buffered changes.
+ * The flush swaps the buffer for an empty one and writes the old one without holding the lock, so only the clicks
+ * on the messages of the batch being written wait for it. A failed batch is merged back into the buffer.
+ * Pending likes are written on close.
+ */
+public class WriteBehindLikeDao implements LikeDao, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindLikeDao.class);
+
+    private final LikeDao likeDao;
+    private final int batchSize;
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // New like states, which differ from the database, by user and message
+    private Map<LikeKey, Boolean> pending = new HashMap<>();
+
+    // Buffered changes of the like counters by message id
+    private Map<Long, Integer> counters = new HashMap<>();
+
+    // Messages of the batch, which is being written, their database values are unknown till the end of the flush
+    private final Set<Long> flushingMessages = new HashSet<>();
+    private boolean flushing;
+
+    // Number of started flushes, shows that the database values read before may be outdated
+    private long flushes;
+
+    /**
+     * Creates the buffer for the specified LikeDao and starts the periodic flushing
+     * @param likeDao LikeDao to write to
+     * @param batchSize number of buffered likes, which triggers the flush
+     * @param flushMillis maximal time in milliseconds before the buffered likes are written
+     */
+    WriteBehindLikeDao(LikeDao likeDao, int batchSize, long flushMillis) {
+        this.likeDao = likeDao;
+        this.batchSize = batchSize;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes all buffered likes and creates one like in the database
+     * @param like Like object to add
+     * @return generated id for new Like
+     */
+    @Override
+    public long createLike(Like like) {
+        flush();
+        return likeDao.createLike(like);
+    }
+
+    /**
+     * Writes all buffered likes and gets the id of the like for specified message and user
+     * @param like Like to get the id
+     * @return Like id
+     * @throws SQLException if there's no such Like
+     */
+    @Override
+    public long getLikeId(Like like) throws SQLException {
+        flush();
+        return likeDao.getLikeId(like);
+    }
+
+    /**
+     * Method adds new like if it is not exists, or deletes it if it is exists.
+     * Only the buffer is changed, the database is updated later.
+     * @param like Like to update
+     * @return new state of the message for the user or null if the like couldn't be read
+     */
+    @Override
+    public LikeStatus updateLike(Like like) {
+        LikeKey key = new LikeKey(like.getUserId(), like.getMessageId());
+        LikeStatus status = null;
+        try {
+            status = readThrough(like.getMessageId(), () -> likeDao.getLikeStatus(like), database -> {
+                Boolean buffered = pending.get(key);
+                boolean liked = !(buffered == null ? database.isLiked() : buffered);
+                if (liked == database.isLiked()) {
+                    pending.remove(key);
+                } else {
+                    pending.put(key, liked);
+                }
+                counters.merge(like.getMessageId(), liked ? 1 : -1, WriteBehindLikeDao::sum);
+                return new LikeStatus(liked, database.getLikeCount() + getPendingLikes(like.getMessageId()));
+            });
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+        if (getPendingCount() >= batchSize) {
+            requestFlush();
+        }
+        return status;
+    }
+
+    /**
+     * Reads whether the user likes the message and its like count, including the buffered likes
+     * @param like user and message
+     * @return current state of the message for the user
+     * @throws SQLException if there's no such message
+     */
+    @Override
+    public LikeStatus getLikeStatus(Like like) throws SQLException {
+        LikeKey key = new LikeKey(like.getUserId(), like.getMessageId());
+        return readThrough(like.getMessageId(), () -> likeDao.getLikeStatus(like), database -> {
+            Boolean buffered = pending.get(key);
+            return new LikeStatus(buffered == null ? database.isLiked() : buffered,
+                    database.getLikeCount() + getPendingLikes(like.getMessageId()));
+        });
+    }
+
+    /**
+     * Writes all buffered likes and deletes the record for the Like with specified id
+     * @param likeId Like id to delete
+     */
+    @Override
+    public void deleteLike(long likeId) {
+        flush();
+        likeDao.deleteLike(likeId);
+    }
+
+    /**
+     * Method returns the total number of likes for the specified message, including the buffered likes
+     * @param messageId message id
+     * @return number of likes
+     */
+    @Override
+    public int getLikeCount(long messageId) {
+        try {
+            return readThrough(messageId, () -> likeDao.getLikeCount(messageId), count -> count + getPendingLikes(messageId));
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Writes all buffered likes and recalculates the like counters of all messages from the Likes table
+     * @return number of messages with fixed counters
+     */
+    @Override
+    public int reconcileLikeCounts() {
+        flush();
+        return likeDao.reconcileLikeCounts();
+    }
+
+    /**
+     * Writes all buffered likes and then the specified ones
+     * @param added likes to add, existing likes are skipped
+     * @param removed likes to delete
+     * @throws SQLException if the likes can't be saved
+     */
+    @Override
+    public void saveLikes(Collection<Like> added, Collection<Like> removed) throws SQLException {
+        flush();
+        likeDao.saveLikes(added, removed);
+    }
+
+    /**
+     * Buffered change of the like counter of the message
+     * @param messageId message id
+     * @return number of likes to add to the value from the database
+     */
+    synchronized int getPendingLikes(long messageId) {
+        Integer count = counters.get(messageId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Writes all buffered likes to the database with one batch. The buffer is locked only to swap it,
+     * so the clicks on other messages are buffered while the batch is written.
+     * If the batch fails, its likes are merged back into the buffer till the next flush.
+     */
+    public void flush() {
+        Map<LikeKey, Boolean> batch;
+        Map<Long, Integer> batchCounters;
+        synchronized (this) {
+            // One batch at a time, so the likes of a failed batch can't overtake the newer ones
+            awaitUninterruptibly(() -> flushing);
+            if (pending.isEmpty()) {
+                counters.clear();
+                return;
+            }
+            batch = pending;
+            batchCounters = counters;
+            pending = new HashMap<>();
+            counters = new HashMap<>();
+            for (LikeKey key : batch.keySet()) {
+                flushingMessages.add(key.messageId);
+            }
+            flushing = true;
+            flushes++;
+        }
+        List<Like> added = new ArrayList<>();
+        List<Like> removed = new ArrayList<>();
+        for (Map.Entry<LikeKey, Boolean> entry : batch.entrySet()) {
+            Like like = new Like(0, entry.getKey().userId, entry.getKey().messageId);
+            if (entry.getValue()) {
+                added.add(like);
+            } else {
+                removed.add(like);
+            }
+        }
+        boolean saved = false;
+        try {
+            likeDao.saveLikes(added, removed);
+            saved = true;
+        } catch (SQLException e) {
+            log.warn("Likes are not saved: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                // The clicks on the messages of the batch have waited, so the buffer has no newer states of them
+                if (!saved) {
+                    pending.putAll(batch);
+                    batchCounters.forEach((messageId, count) -> counters.merge(messageId, count, WriteBehindLikeDao::sum));
+                }
+                flushingMessages.clear();
+                flushing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic flushing and writes all buffered likes.
+     * If the thread is interrupted while the last periodic flush runs, the interrupt status is kept.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                log.warn(pending.size() + " likes are lost on shutdown");
+            }
+        }
+    }
+
+    private synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Service method, which reads the database value of the message, when it is not being flushed,
+     * and corrects it with the buffer under the lock. The value is read again,
+     * if a flush has started meanwhile and may have changed it.
+     * @param messageId message id
+     * @param read database query
+     * @param correct correction with the buffered likes, which is executed under the lock
+     * @param <R> type of the database value
+     * @param <T> type of the result
+     * @return corrected value
+     * @throws SQLException if the database value can't be read
+     */
+    private <R, T> T readThrough(long messageId, DatabaseRead<R> read, Function<R, T> correct) throws SQLException {
+        while (true) {
+            long flushesBefore;
+            synchronized (this) {
+                awaitUninterruptibly(() -> flushingMessages.contains(messageId));
+                flushesBefore = flushes;
+            }
+            R value = read.read();
+            synchronized (this) {
+                if (flushesBefore == flushes) {
+                    return correct.apply(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Service method, which waits for the end of the flush while the condition holds. Must be called under the lock.
+     * @param condition condition to wait for
+     */
+    private void awaitUninterruptibly(BooleanSupplier condition) {
+        boolean interrupted = false;
+        while (condition.getAsBoolean()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Merges the counter changes, the counters, which have returned to the database value, are removed
+    private static Integer sum(int a, int b) {
+        return a + b == 0 ? null : a + b;
+    }
+
+    /**
+     * Service method, which starts the flush in background, if it is not started yet.
+     * After close the likes are written at once.
+     */
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushRequested.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Query of a database value, which is corrected with the buffer
+     * @param <R> type of the value
+     */
+    @FunctionalInterface
+    private interface DatabaseRead<R> {
+        R read() throws SQLException;
+    }
+
+    /**
+     * Key of the buffered like: user and message
+     */
+    private static class LikeKey {
+        private final long userId;
+        private final long messageId;
+
+        private LikeKey(long userId, long messageId) {
+            this.userId = userId;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LikeKey)) {
+                return false;
+            }
+            LikeKey other = (LikeKey) o;
+            return userId == other.userId && messageId == other.messageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(userId) * 31 + Long.hashCode(messageId);
+        }
+    }
+}
@@ -3,28 +3,37 @@ package dao.h2;
 import dao.*;
 
 import javax.sql.DataSource;
+import java.sql.SQLException;
 
 /**
  * DaoFactory implementation for H2 database
  */
 public class H2DaoFactory implements DaoFactory {
 
+    private final TransactionalDataSource transactionalDataSource;
     private final UserDao userDao;
     private final InstrumentDao instrumentDao;
-    private final MessageDao messageDao;
+    private final H2MessageDao messageDao;
     private final SubscriptionDao subscriptionDao;
     private final LikeDao likeDao;
+    private final H2TimelineDao timelineDao;
+    private final InstrumentIndex instrumentIndex = new InstrumentIndex(H2MessageDao.RECENT_MESSAGES);
 
     /**
      * Constructor, which creates all specified DAOs using the DataSource from the argument.
+     * The DataSource is wrapped, so the DAOs can share one connection within a unit of work.
+     * Message and instrument DAOs share the index of the recent messages of every instrument,
+     * the user DAO invalidates the country feeds of the message DAO.
      * @param dataSource any DataSource to work with
      */
     public H2DaoFactory(DataSource dataSource) {
-        userDao = new H2UserDao(dataSource);
-        instrumentDao = new H2InstrumentDao(dataSource);
-        messageDao = new H2MessageDao(dataSource);
-        subscriptionDao = new H2SubscriptionDao(dataSource);
-        likeDao = new H2LikeDao(dataSource);
+        transactionalDataSource = new TransactionalDataSource(dataSource);
+        messageDao = new H2MessageDao(transactionalDataSource, instrumentIndex);
+        userDao = new H2UserDao(transactionalDataSource, messageDao);
+        instrumentDao = new H2InstrumentDao(transactionalDataSource, instrumentIndex);
+        timelineDao = new H2TimelineDao(transactionalDataSource);
+        subscriptionDao = new H2SubscriptionDao(transactionalDataSource, timelineDao);
+        likeDao = new H2LikeDao(transactionalDataSource);
     }
 
     /**
@@ -72,6 +81,28 @@ public class H2DaoFactory implements DaoFactory {
         return likeDao;
     }
 
+    /**
+     * Method returns TimelineDao instance for H2 database
+     * @return H2 TimelineDao
+     */
+    @Override
+    public TimelineDao getTimelineDao() {
+        return timelineDao;
+    }
+
+    /**
+     * Executes the work with one connection bound to the current thread and in one transaction.
+     * The in-memory indexes are updated only after the transaction is committed.
+     * @param work DAO calls to execute
+     * @param <T> type of the result
+     * @return result of the work
+     * @throws SQLException if the work or the transaction fails
+     */
+    @Override
+    public <T> T inTransaction(UnitOfWork<T> work) throws SQLException {
+        return transactionalDataSource.inTransaction(work, this);
+    }
+
     /**
      * Empty realisation
      */
@@ -2,6 +2,7 @@ package dao.h2;
 
 import dao.InstrumentDao;
 import model.Instrument;
+import model.TweetCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,15 +12,18 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * InstrumentDao implementation for the H2 database.
+ * Changes of the users' instruments are also applied to the index of the recent messages of every instrument.
  */
 @SuppressWarnings("unchecked")
 public class H2InstrumentDao implements InstrumentDao {
 
     private DataSource dataSource;
+    private final InstrumentIndex instrumentIndex;
     private static final Logger log = LoggerFactory.getLogger(H2InstrumentDao.class);
 
     // SQL queries for all necessary operations:
@@ -35,18 +39,34 @@ public class H2InstrumentDao implements InstrumentDao {
                     "ON i.instrument_id = u.instrument_id " +
                     "WHERE u.user_id = ?";
 
+    private static final String GET_USER_INSTRUMENT_IDS_SQL =
+            "SELECT instrument_id FROM Users_Instruments WHERE user_id = ?;";
+
     private static final String DELETE_ALL_USER_INSTRUMENTS = "DELETE FROM Users_Instruments WHERE user_id = ?;";
 
     private static final String SET_INSTRUMENTS_TO_USER_SQL =
             "INSERT INTO Users_Instruments (user_id, instrument_id) " +
                     "VALUES (?, (SELECT instrument_id FROM Instruments WHERE instrument_name = ?))";
 
+    // Users.instruments keeps the instruments of every user as a ready label for feeds
+    private static final String UPDATE_INSTRUMENTS_LABEL_SQL =
+            "UPDATE Users SET instruments = COALESCE((SELECT GROUP_CONCAT(i.instrument_name SEPARATOR ', ') " +
+                    "FROM Instruments AS i INNER JOIN Users_Instruments AS ui ON i.instrument_id = ui.instrument_id " +
+                    "WHERE ui.user_id = Users.user_id), '') WHERE user_id = ?;";
+
+    private static final String REBUILD_INSTRUMENTS_LABELS_SQL =
+            "UPDATE Users SET instruments = COALESCE((SELECT GROUP_CONCAT(i.instrument_name SEPARATOR ', ') " +
+                    "FROM Instruments AS i INNER JOIN Users_Instruments AS ui ON i.instrument_id = ui.instrument_id " +
+                    "WHERE ui.user_id = Users.user_id), '');";
+
     /**
      * Simple constructor of the InstrumentDao implementation for the H2 database.
      * @param dataSource any DataSource
+     * @param instrumentIndex index of the recent messages of every instrument
      */
-    H2InstrumentDao(DataSource dataSource) {
+    H2InstrumentDao(DataSource dataSource, InstrumentIndex instrumentIndex) {
         this.dataSource = dataSource;
+        this.instrumentIndex = instrumentIndex;
     }
 
     /**
@@ -141,7 +161,7 @@ public class H2InstrumentDao implements InstrumentDao {
     }
 
     /**
-     * Assigns one or more instruments to the specified user
+     * Assigns one or more instruments to the specified user and refreshes his instruments label
      * @param userId - user id
      * @param instruments - array of the instruments' names
      * @return number of instruments that has been added
@@ -149,30 +169,124 @@ public class H2InstrumentDao implements InstrumentDao {
      */
     @Override
     public int setInstrumentsToUser(long userId, String[] instruments) throws SQLException {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(SET_INSTRUMENTS_TO_USER_SQL)) {
-            deleteAllUserInstruments(userId);
-            for (String instrumentName : instruments) {
-                statement.setLong(1, userId);
-                statement.setString(2, instrumentName);
-                statement.addBatch();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(SET_INSTRUMENTS_TO_USER_SQL)) {
+                long[] oldInstrumentIds = getUserInstrumentIds(connection, userId);
+                deleteUserInstruments(connection, userId);
+                for (String instrumentName : instruments) {
+                    statement.setLong(1, userId);
+                    statement.setString(2, instrumentName);
+                    statement.addBatch();
+                }
+                int result = statement.executeBatch().length;
+                updateInstrumentsLabel(connection, userId);
+                long[] newInstrumentIds = getUserInstrumentIds(connection, userId);
+                List<TweetCursor> messages = H2MessageDao.getRecentUserMessages(connection, userId, H2MessageDao.RECENT_MESSAGES);
+                connection.commit();
+
+                // The index shows the new instruments only after the unit of work is committed
+                TransactionalDataSource.afterCommit(dataSource,
+                        () -> instrumentIndex.updateAuthor(userId, oldInstrumentIds, newInstrumentIds, messages));
+                return result;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
-            return statement.executeBatch().length;
         }
     }
 
     /**
-     * Clear all instruments for the specified user
+     * Clear all instruments for the specified user and his instruments label
      * @param userId - user id
      */
     @Override
     public void deleteAllUserInstruments(long userId) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long[] oldInstrumentIds = getUserInstrumentIds(connection, userId);
+                deleteUserInstruments(connection, userId);
+                updateInstrumentsLabel(connection, userId);
+                connection.commit();
+                TransactionalDataSource.afterCommit(dataSource,
+                        () -> instrumentIndex.updateAuthor(userId, oldInstrumentIds, new long[0], Collections.emptyList()));
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Recalculates the instruments labels of all users, needed after the instruments
+     * have been changed bypassing this DAO
+     * @return number of updated users
+     */
+    @Override
+    public int rebuildInstrumentsLabels() {
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(DELETE_ALL_USER_INSTRUMENTS)) {
-            statement.setLong(1, userId);
-            statement.executeUpdate();
+             PreparedStatement statement = connection.prepareStatement(REBUILD_INSTRUMENTS_LABELS_SQL)) {
+            return statement.executeUpdate();
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
+        return 0;
+    }
+
+    /**
+     * Service method, which reads the ids of the user's instruments within the given connection
+     * @param connection connection to use
+     * @param userId user id
+     * @return ids of the instruments
+     * @throws SQLException if something goes wrong
+     */
+    static long[] getUserInstrumentIds(Connection connection, long userId) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(GET_USER_INSTRUMENT_IDS_SQL)) {
+            statement.setLong(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                }
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Service method, which deletes all instruments of the user within the given connection
+     * @param connection connection with open transaction
+     * @param userId user id
+     * @throws SQLException if something goes wrong
+     */
+    private void deleteUserInstruments(Connection connection, long userId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(DELETE_ALL_USER_INSTRUMENTS)) {
+            statement.setLong(1, userId);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Service method, which recalculates the instruments label of the user within the given connection
+     * @param connection connection with open transaction
+     * @param userId user id
+     * @throws SQLException if something goes wrong
+     */
+    private void updateInstrumentsLabel(Connection connection, long userId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_INSTRUMENTS_LABEL_SQL)) {
+            statement.setLong(1, userId);
+            statement.executeUpdate();
+        }
     }
 }
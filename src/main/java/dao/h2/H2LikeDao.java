@@ -2,11 +2,15 @@ package dao.h2;
 
 import dao.LikeDao;
 import model.Like;
+import model.LikeStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * LikeDao implementation for the H2 database.
@@ -16,15 +20,48 @@ public class H2LikeDao implements LikeDao {
     private DataSource dataSource;
     private static final Logger log = LoggerFactory.getLogger(H2LikeDao.class);
 
+    // SQL state of the unique constraint violation
+    private static final String DUPLICATE_KEY = "23505";
+
     // SQL queries for all necessary operations:
     private static final String CREATE_LIKE_SQL = "INSERT INTO Likes (user_id, message_id) VALUES (?, ?);";
 
-    private static final String GET_LIKE_COUNT_SQL = "SELECT COUNT(like_id) AS like_count FROM Likes WHERE message_id = ?;";
+    private static final String GET_LIKE_COUNT_SQL = "SELECT like_count FROM Messages WHERE message_id = ?;";
+
+    private static final String GET_LIKE_STATUS_SQL =
+            "SELECT m.like_count, EXISTS (SELECT 1 FROM Likes AS l WHERE l.user_id = ? AND l.message_id = m.message_id) " +
+                    "AS liked FROM Messages AS m WHERE m.message_id = ?;";
 
     private static final String GET_LIKE_ID_SQL = "SELECT like_id FROM Likes WHERE user_id = ? AND message_id = ?;";
 
+    private static final String GET_LIKE_MESSAGE_ID_SQL = "SELECT message_id FROM Likes WHERE like_id = ?;";
+
     private static final String DELETE_LIKE_SQL = "DELETE FROM Likes WHERE like_id = ?;";
 
+    private static final String DELETE_USER_LIKE_SQL = "DELETE FROM Likes WHERE user_id = ? AND message_id = ?;";
+
+    private static final String UPDATE_LIKE_COUNT_SQL =
+            "UPDATE Messages SET like_count = like_count + ? WHERE message_id = ?;";
+
+    private static final String MERGE_LIKE_SQL =
+            "MERGE INTO Likes (user_id, message_id) KEY (user_id, message_id) VALUES (?, ?);";
+
+    private static final String RECOUNT_LIKES_SQL =
+            "UPDATE Messages SET like_count = (SELECT COUNT(like_id) FROM Likes WHERE message_id = ?) " +
+                    "WHERE message_id = ?;";
+
+    // Only the liked messages are counted again, found by the likes_message_user index
+    private static final String RECONCILE_LIKE_COUNTS_SQL =
+            "UPDATE Messages AS m SET like_count = " +
+                    "(SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id) " +
+                    "WHERE m.message_id IN (SELECT DISTINCT message_id FROM Likes) " +
+                    "AND like_count <> (SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id);";
+
+    // Counters left over from removed likes, the subquery runs only for messages with a positive counter
+    private static final String RESET_LIKE_COUNTS_SQL =
+            "UPDATE Messages AS m SET like_count = 0 " +
+                    "WHERE like_count > 0 AND NOT EXISTS (SELECT 1 FROM Likes WHERE Likes.message_id = m.message_id);";
+
     /**
      * Simple constructor of the LikeDao implementation for the H2 database.
      * @param dataSource any DataSource
@@ -40,15 +77,17 @@ public class H2LikeDao implements LikeDao {
      */
     @Override
     public long createLike(Like like) {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(CREATE_LIKE_SQL, Statement.RETURN_GENERATED_KEYS)) {
-            statement.setLong(1, like.getUserId());
-            statement.setLong(2, like.getMessageId());
-            statement.executeUpdate();
-            try (ResultSet resultSet = statement.getGeneratedKeys()) {
-                if (resultSet.next()) {
-                    return resultSet.getLong(1);
-                }
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long likeId = insertLike(connection, like);
+                connection.commit();
+                return likeId;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
             log.warn(e.getMessage());
@@ -58,20 +97,44 @@ public class H2LikeDao implements LikeDao {
 
     /**
      * Method adds new like if it is not exists, or deletes it if it is exists.
+     * Works in one transaction on one connection; the unique (user_id, message_id) constraint
+     * guarantees that concurrent clicks of the same user can't add the like twice.
      * @param like Like to update
+     * @return new state of the message for the user or null if the like couldn't be updated
      */
     @Override
-    public void updateLike(Like like) {
-        try {
-            long likeId = getLikeId(like);
-            if (likeId > 0) {
-                deleteLike(likeId);
-            } else {
-                createLike(like);
+    public LikeStatus updateLike(Like like) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                boolean liked;
+                try (PreparedStatement statement = connection.prepareStatement(DELETE_USER_LIKE_SQL)) {
+                    statement.setLong(1, like.getUserId());
+                    statement.setLong(2, like.getMessageId());
+                    liked = statement.executeUpdate() == 0;
+                }
+                if (liked) {
+                    insertLike(connection, like);
+                } else {
+                    updateLikeCount(connection, like.getMessageId(), -1);
+                }
+                int likeCount = readLikeCount(connection, like.getMessageId());
+                connection.commit();
+                return new LikeStatus(liked, likeCount);
+            } catch (SQLException e) {
+                connection.rollback();
+                if (!DUPLICATE_KEY.equals(e.getSQLState())) {
+                    throw e;
+                }
+                // The same like has just been added by the concurrent request
+                return new LikeStatus(true, readLikeCount(connection, like.getMessageId()));
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
+        return null;
     }
 
     /**
@@ -95,16 +158,44 @@ public class H2LikeDao implements LikeDao {
         return 0;
     }
 
+    /**
+     * Reads whether the user likes the message and its like count with one query
+     * @param like user and message
+     * @return current state of the message for the user
+     * @throws SQLException if there's no such message
+     */
+    @Override
+    public LikeStatus getLikeStatus(Like like) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(GET_LIKE_STATUS_SQL)) {
+            statement.setLong(1, like.getUserId());
+            statement.setLong(2, like.getMessageId());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("No message with id " + like.getMessageId());
+                }
+                return new LikeStatus(resultSet.getBoolean("liked"), resultSet.getInt("like_count"));
+            }
+        }
+    }
+
     /**
      * Deletes the record for the Like with specified id
      * @param likeId Like id to delete
      */
     @Override
     public void deleteLike(long likeId) {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(DELETE_LIKE_SQL)) {
-            statement.setLong(1, likeId);
-            statement.executeUpdate();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                removeLike(connection, likeId);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
@@ -117,16 +208,154 @@ public class H2LikeDao implements LikeDao {
      */
     @Override
     public int getLikeCount(long messageId) {
+        try (Connection connection = dataSource.getConnection()) {
+            return readLikeCount(connection, messageId);
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Recalculates the like counters of the liked messages and of the messages with a positive counter
+     * from the Likes table
+     * @return number of messages with fixed counters
+     */
+    @Override
+    public int reconcileLikeCounts() {
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(GET_LIKE_COUNT_SQL)) {
+             Statement statement = connection.createStatement()) {
+            return statement.executeUpdate(RECONCILE_LIKE_COUNTS_SQL) + statement.executeUpdate(RESET_LIKE_COUNTS_SQL);
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Saves many likes at once with JDBC batches in one transaction: adds the first collection, deletes the second one
+     * and recalculates the like counters of all affected messages.
+     * @param added likes to add, existing likes are skipped
+     * @param removed likes to delete
+     * @throws SQLException if the likes can't be saved, nothing is changed then
+     */
+    @Override
+    public void saveLikes(Collection<Like> added, Collection<Like> removed) throws SQLException {
+        Set<Long> messages = new HashSet<>();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement merge = connection.prepareStatement(MERGE_LIKE_SQL);
+                 PreparedStatement delete = connection.prepareStatement(DELETE_USER_LIKE_SQL);
+                 PreparedStatement recount = connection.prepareStatement(RECOUNT_LIKES_SQL)) {
+                for (Like like : added) {
+                    merge.setLong(1, like.getUserId());
+                    merge.setLong(2, like.getMessageId());
+                    merge.addBatch();
+                    messages.add(like.getMessageId());
+                }
+                merge.executeBatch();
+                for (Like like : removed) {
+                    delete.setLong(1, like.getUserId());
+                    delete.setLong(2, like.getMessageId());
+                    delete.addBatch();
+                    messages.add(like.getMessageId());
+                }
+                delete.executeBatch();
+                for (long messageId : messages) {
+                    recount.setLong(1, messageId);
+                    recount.setLong(2, messageId);
+                    recount.addBatch();
+                }
+                recount.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Service method, which inserts the like and increments the like counter of the message
+     * within the transaction of the specified connection.
+     * @param connection connection with open transaction
+     * @param like Like to add
+     * @return generated id for new Like
+     * @throws SQLException if the like can't be added
+     */
+    private long insertLike(Connection connection, Like like) throws SQLException {
+        long likeId = 0;
+        try (PreparedStatement statement = connection.prepareStatement(CREATE_LIKE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setLong(1, like.getUserId());
+            statement.setLong(2, like.getMessageId());
+            statement.executeUpdate();
+            try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                if (resultSet.next()) {
+                    likeId = resultSet.getLong(1);
+                }
+            }
+        }
+        updateLikeCount(connection, like.getMessageId(), 1);
+        return likeId;
+    }
+
+    /**
+     * Service method, which deletes the like and decrements the like counter of the message
+     * within the transaction of the specified connection.
+     * @param connection connection with open transaction
+     * @param likeId Like id to delete
+     * @throws SQLException if the like can't be deleted
+     */
+    private void removeLike(Connection connection, long likeId) throws SQLException {
+        long messageId;
+        try (PreparedStatement statement = connection.prepareStatement(GET_LIKE_MESSAGE_ID_SQL)) {
+            statement.setLong(1, likeId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return;
+                }
+                messageId = resultSet.getLong("message_id");
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(DELETE_LIKE_SQL)) {
+            statement.setLong(1, likeId);
+            statement.executeUpdate();
+        }
+        updateLikeCount(connection, messageId, -1);
+    }
+
+    /**
+     * Service method, which changes the like counter of the message.
+     * @param connection connection with open transaction
+     * @param messageId message id
+     * @param delta value to add to the counter
+     * @throws SQLException if the counter can't be updated
+     */
+    private void updateLikeCount(Connection connection, long messageId, int delta) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_LIKE_COUNT_SQL)) {
+            statement.setInt(1, delta);
+            statement.setLong(2, messageId);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Service method, which reads the like counter of the message.
+     * @param connection any connection
+     * @param messageId message id
+     * @return number of likes
+     * @throws SQLException if the counter can't be read
+     */
+    private int readLikeCount(Connection connection, long messageId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(GET_LIKE_COUNT_SQL)) {
             statement.setLong(1, messageId);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
                     return resultSet.getInt("like_count");
                 }
             }
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
         }
         return 0;
     }
@@ -1,81 +1,173 @@
 package dao.h2;
 
 import dao.MessageDao;
+import dao.search.InvertedIndex;
+import model.Countries;
 import model.Message;
 import model.Tweet;
+import model.TweetCursor;
 import model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * MessageDao implementation for the H2 database.
+ * Texts of the messages are also kept in the in-memory search index, which is updated by every new message.
+ * Country feeds are the same for all users of the country, so the ids of the recent messages of every country
+ * are kept in ring buffers, and only older pages are read with the country query. In the same way the instrument
+ * feeds are merged from the recent messages of the user's instruments (see InstrumentIndex).
  */
 public class H2MessageDao implements MessageDao {
 
     private DataSource dataSource;
+    private final InstrumentIndex instrumentIndex;
+    private final InvertedIndex searchIndex = new InvertedIndex();
+    private volatile Map<Countries, MessageRing> recentMessages = createRings();
     private static final Logger log = LoggerFactory.getLogger(H2MessageDao.class);
 
-    // SQL queries for all necessary operations:
+    // SQL queries for all necessary operations.
+    // Authors' instruments are taken from the materialized Users.instruments label (see H2InstrumentDao).
+    // Single user feeds are read straight from the (user_id, message_date, message_id) indexes: the index hint
+    // and the user_id in ORDER BY let H2 stop after the first LIMIT rows instead of sorting all user's messages.
     private static final String CREATE_MESSAGE_SQL =
             "INSERT INTO Messages (user_id, message_date, message_text) VALUES (?, ?, ?);";
 
-    private static final String GET_USER_MESSAGES_SQL =
-            "SELECT message_id, message_date, message_text, " +
-                    "(SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id) AS like_count " +
-                    "FROM Messages AS m WHERE user_id = ? ORDER BY m.message_date DESC LIMIT ? OFFSET ?;";
-
-    private static final String GET_SUBSCRIPTION_MESSAGES_SQL =
-            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u.login, " +
-                    "(SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id) AS like_count, " +
-                    "(SELECT GROUP_CONCAT(i.instrument_name SEPARATOR ', ') FROM Instruments AS i " +
-                    "INNER JOIN Users_Instruments AS ui ON i.instrument_id = ui.instrument_id " +
-                    "WHERE ui.user_id = m.user_id GROUP BY ui.user_id) AS instruments_string " +
-                    "FROM Messages AS m " +
+    static final String GET_USER_MESSAGES_SQL =
+            "SELECT m.message_id, m.message_date, m.message_text, m.like_count, u.instruments " +
+                    "FROM Messages AS m USE INDEX (messages_user_date) " +
+                    "INNER JOIN Users AS u ON m.user_id = u.user_id WHERE m.user_id = ? " +
+                    "AND m.message_date <= ? AND (m.message_date < ? OR m.message_id < ?) " +
+                    "ORDER BY m.user_id, m.message_date DESC, m.message_id DESC LIMIT ?;";
+
+    // Subscription feed is read from the precomputed timeline, merged with the messages of popular authors,
+    // which are not fanned out on write (see H2TimelineDao)
+    static final String GET_SUBSCRIPTION_MESSAGES_SQL =
+            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u.login, m.like_count, u.instruments " +
+                    "FROM (" +
+                    "(SELECT t.message_id FROM Timelines AS t USE INDEX (timelines_user_date) WHERE t.user_id = ? " +
+                    "AND t.message_date <= ? AND (t.message_date < ? OR t.message_id < ?) " +
+                    "ORDER BY t.user_id, t.message_date DESC, t.message_id DESC LIMIT ?) " +
+                    "UNION " +
+                    "(SELECT p.message_id FROM Messages AS p " +
                     "INNER JOIN Subscriptions AS s " +
-                    "ON (s.subscripted_user_id = m.user_id) " +
+                    "ON (s.subscripted_user_id = p.user_id) " +
+                    "INNER JOIN Users AS a " +
+                    "ON (a.user_id = s.subscripted_user_id) " +
+                    "WHERE s.user_id = ? AND a.popular = TRUE " +
+                    "AND p.message_date <= ? AND (p.message_date < ? OR p.message_id < ?) " +
+                    "ORDER BY p.message_date DESC, p.message_id DESC LIMIT ?)" +
+                    ") AS feed " +
+                    "INNER JOIN Messages AS m " +
+                    "ON (m.message_id = feed.message_id) " +
                     "INNER JOIN Users AS u " +
                     "ON (m.user_id = u.user_id) " +
-                    "WHERE s.user_id = ? ORDER BY m.message_date DESC LIMIT ? OFFSET ?;";
-
-    private static final String GET_INSTRUMENT_MESSAGES_SQL =
-            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u.login, " +
-                    "(SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id) AS like_count, " +
-                    "(SELECT GROUP_CONCAT(i.instrument_name SEPARATOR ', ') FROM Instruments AS i " +
-                    "INNER JOIN Users_Instruments AS ui ON i.instrument_id = ui.instrument_id " +
-                    "WHERE ui.user_id = m.user_id GROUP BY ui.user_id) AS instruments_string " +
-                    "FROM Messages AS m " +
+                    "ORDER BY m.message_date DESC, m.message_id DESC LIMIT ?;";
+
+    static final String GET_INSTRUMENT_MESSAGES_SQL =
+            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u.login, m.like_count, u.instruments " +
+                    "FROM Messages AS m USE INDEX (messages_user_date) " +
                     "INNER JOIN Users AS u " +
                     "ON m.user_id = u.user_id " +
                     "INNER JOIN Users_Instruments AS ui1 " +
                     "ON (ui1.user_id = m.user_id) " +
                     "INNER JOIN Users_Instruments AS ui2 " +
                     "ON (ui1.instrument_id = ui2.instrument_id) " +
-                    "WHERE ui2.user_id = ? GROUP BY m.message_id ORDER BY m.message_date DESC LIMIT ? OFFSET ?;";
-
-    private static final String GET_COUNTRY_MESSAGES_SQL =
-            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u1.login, " +
-                    "(SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id) AS like_count, " +
-                    "(SELECT GROUP_CONCAT(i.instrument_name SEPARATOR ', ') FROM Instruments AS i " +
-                    "INNER JOIN Users_Instruments AS ui ON i.instrument_id = ui.instrument_id " +
-                    "WHERE ui.user_id = m.user_id GROUP BY ui.user_id) AS instruments_string " +
-                    "FROM Messages AS m " +
+                    "WHERE ui2.user_id = ? " +
+                    "AND m.message_date <= ? AND (m.message_date < ? OR m.message_id < ?) " +
+                    "GROUP BY m.message_id ORDER BY m.message_date DESC, m.message_id DESC LIMIT ?;";
+
+    static final String GET_COUNTRY_MESSAGES_SQL =
+            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u1.login, m.like_count, u1.instruments " +
+                    "FROM Messages AS m USE INDEX (messages_user_date) " +
                     "INNER JOIN Users AS u1 " +
                     "ON m.user_id = u1.user_id " +
                     "INNER JOIN Users AS u2 " +
                     "ON u1.country = u2.country " +
-                    "WHERE u2.user_id = ? ORDER BY m.message_date DESC LIMIT ? OFFSET ?;";
+                    "WHERE u2.user_id = ? " +
+                    "AND m.message_date <= ? AND (m.message_date < ? OR m.message_id < ?) " +
+                    "ORDER BY m.message_date DESC, m.message_id DESC LIMIT ?;";
+
+    // Found messages are read by their ids, newest first
+    private static final String SEARCH_MESSAGES_SQL =
+            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u.login, m.like_count, u.instruments " +
+                    "FROM Messages AS m " +
+                    "INNER JOIN Users AS u " +
+                    "ON m.user_id = u.user_id " +
+                    "WHERE m.message_id IN (%s) " +
+                    "ORDER BY m.message_id DESC;";
+
+    // Recent country messages are read by their ids, ordered as the country feed
+    private static final String GET_MESSAGES_BY_IDS_SQL =
+            "SELECT m.message_id, m.user_id, m.message_date, m.message_text, u.login, m.like_count, u.instruments " +
+                    "FROM Messages AS m " +
+                    "INNER JOIN Users AS u " +
+                    "ON m.user_id = u.user_id " +
+                    "WHERE m.message_id IN (%s) " +
+                    "ORDER BY m.message_date DESC, m.message_id DESC;";
+
+    private static final String GET_USER_COUNTRY_SQL =
+            "SELECT country FROM Users WHERE user_id = ?;";
+
+    private static final String GET_RECENT_COUNTRY_MESSAGES_SQL =
+            "SELECT m.message_id, m.message_date FROM Messages AS m " +
+                    "INNER JOIN Users AS u " +
+                    "ON m.user_id = u.user_id " +
+                    "WHERE u.country = ? " +
+                    "ORDER BY m.message_date DESC, m.message_id DESC LIMIT ?;";
+
+    private static final String GET_INSTRUMENT_IDS_SQL =
+            "SELECT instrument_id FROM Instruments;";
+
+    private static final String GET_RECENT_INSTRUMENT_MESSAGES_SQL =
+            "SELECT m.message_id, m.message_date, m.user_id FROM Messages AS m " +
+                    "INNER JOIN Users_Instruments AS ui " +
+                    "ON m.user_id = ui.user_id " +
+                    "WHERE ui.instrument_id = ? " +
+                    "ORDER BY m.message_date DESC, m.message_id DESC LIMIT ?;";
+
+    private static final String GET_RECENT_USER_MESSAGES_SQL =
+            "SELECT message_id, message_date FROM Messages USE INDEX (messages_user_date) WHERE user_id = ? " +
+                    "ORDER BY user_id, message_date DESC, message_id DESC LIMIT ?;";
+
+    // Number of the recent messages of every country and every instrument kept in memory
+    static final int RECENT_MESSAGES = 1024;
+
+    private static final String GET_MESSAGE_ID_RANGE_SQL =
+            "SELECT MIN(message_id), MAX(message_id) FROM Messages;";
+
+    private static final String GET_MESSAGE_TEXTS_SQL =
+            "SELECT message_id, message_text FROM Messages WHERE message_id BETWEEN ? AND ? ORDER BY message_id;";
+
+    // The search index is rebuilt in this number of id ranges per thread, so the threads finish at about the same time
+    private static final int RANGES_PER_THREAD = 4;
+
+    // Lists of message ids in the queries are padded to a multiple of the page size
+    private static final int ID_LIST_STEP = 20;
 
     /**
      * Simple constructor of the MessageDao implementation for the H2 database.
      * @param dataSource any DataSource
+     * @param instrumentIndex index of the recent messages of every instrument
      */
-    H2MessageDao(DataSource dataSource) {
+    H2MessageDao(DataSource dataSource, InstrumentIndex instrumentIndex) {
         this.dataSource = dataSource;
+        this.instrumentIndex = instrumentIndex;
     }
 
     /**
@@ -93,7 +185,19 @@ public class H2MessageDao implements MessageDao {
             statement.executeUpdate();
             try (ResultSet resultSet = statement.getGeneratedKeys()) {
                 if (resultSet.next()) {
-                    return resultSet.getLong(1);
+                    long messageId = resultSet.getLong(1);
+                    Countries country = getUserCountry(connection, message.getUserId());
+                    long[] instrumentIds = H2InstrumentDao.getUserInstrumentIds(connection, message.getUserId());
+
+                    // The indexes show the message only after its unit of work is committed
+                    TransactionalDataSource.afterCommit(dataSource, () -> {
+                        searchIndex.add(messageId, message.getMessageText());
+                        if (country != null) {
+                            recentMessages.get(country).add(messageId, message.getMessageDate());
+                        }
+                        instrumentIndex.addMessage(instrumentIds, messageId, message.getMessageDate(), message.getUserId());
+                    });
+                    return messageId;
                 }
             }
         } catch (SQLException e) {
@@ -105,19 +209,31 @@ public class H2MessageDao implements MessageDao {
     /**
      * Gets all tweets by the specified user ordered by date, newest first.
      * @param user User
-     * @param instruments instruments string to be added to tweet
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
     @Override
-    public List<Tweet> getUserMessages(User user, String instruments, int limit, int offset) {
+    public List<Tweet> getUserMessages(User user, int limit, TweetCursor cursor) {
         List<Tweet> tweets = new ArrayList<>();
+        getUserMessages(user, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    /**
+     * Streams all tweets by the specified user to the handler while they are read from the database,
+     * ordered by date, newest first.
+     * @param user User
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    @Override
+    public void getUserMessages(User user, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
         try (Connection connection = dataSource.getConnection();
              PreparedStatement statement = connection.prepareStatement(GET_USER_MESSAGES_SQL)) {
             statement.setLong(1, user.getUserId());
-            statement.setInt(2, limit);
-            statement.setInt(3, offset);
+            setCursor(statement, cursor, limit);
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
                     Tweet tweet = new Tweet();
@@ -127,14 +243,13 @@ public class H2MessageDao implements MessageDao {
                     tweet.setMessageText(resultSet.getString("message_text"));
                     tweet.setLogin(user.getLogin());
                     tweet.setLikes(resultSet.getInt("like_count"));
-                    tweet.setInstruments(instruments);
-                    tweets.add(tweet);
+                    tweet.setInstruments(resultSet.getString("instruments"));
+                    handler.accept(tweet);
                 }
             }
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
-        return tweets;
     }
 
     /**
@@ -142,81 +257,431 @@ public class H2MessageDao implements MessageDao {
      * ordered by date, newest first.
      * @param userId User's id
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
     @Override
-    public List<Tweet> getSubscriptionMessages(long userId, int limit, int offset) {
+    public List<Tweet> getSubscriptionMessages(long userId, int limit, TweetCursor cursor) {
         List<Tweet> tweets = new ArrayList<>();
+        getSubscriptionMessages(userId, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    /**
+     * Streams tweets from users, who are in the subscription list of the specified User, to the handler
+     * while they are read from the database, ordered by date, newest first.
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    @Override
+    public void getSubscriptionMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
         try (Connection connection = dataSource.getConnection();
              PreparedStatement statement = connection.prepareStatement(GET_SUBSCRIPTION_MESSAGES_SQL)) {
             statement.setLong(1, userId);
-            statement.setInt(2, limit);
-            statement.setInt(3, offset);
+            setCursor(statement, cursor, limit);
+            statement.setLong(6, userId);
+            Timestamp date = Timestamp.valueOf(cursor.getMessageDate());
+            statement.setTimestamp(7, date);
+            statement.setTimestamp(8, date);
+            statement.setLong(9, cursor.getMessageId());
+            statement.setInt(10, limit);
+            statement.setInt(11, limit);
             try (ResultSet resultSet = statement.executeQuery()) {
-                getTweetsFromResultSet(resultSet, tweets);
+                getTweetsFromResultSet(resultSet, handler);
             }
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
-        return tweets;
     }
 
     /**
      * Gets tweets from users, who have the same instruments, ordered by date, newest first.
      * @param userId User's id
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
     @Override
-    public List<Tweet> getInstrumentMessages(long userId, int limit, int offset) {
+    public List<Tweet> getInstrumentMessages(long userId, int limit, TweetCursor cursor) {
         List<Tweet> tweets = new ArrayList<>();
+        getInstrumentMessages(userId, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    /**
+     * Streams tweets from users, who have the same instruments, to the handler
+     * while they are read from the database, ordered by date, newest first.
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    @Override
+    public void getInstrumentMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        try (Connection connection = dataSource.getConnection()) {
+            long[] instrumentIds = H2InstrumentDao.getUserInstrumentIds(connection, userId);
+            long[] ids = instrumentIndex.getMessageIds(instrumentIds, cursor, limit);
+            if (ids != null) {
+                readMessagesByIds(connection, GET_MESSAGES_BY_IDS_SQL, ids, limit, handler);
+                return;
+            }
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+            return;
+        }
+
+        // The page is older than the index
         try (Connection connection = dataSource.getConnection();
              PreparedStatement statement = connection.prepareStatement(GET_INSTRUMENT_MESSAGES_SQL)) {
             statement.setLong(1, userId);
-            statement.setInt(2, limit);
-            statement.setInt(3, offset);
+            setCursor(statement, cursor, limit);
             try (ResultSet resultSet = statement.executeQuery()) {
-                getTweetsFromResultSet(resultSet, tweets);
+                getTweetsFromResultSet(resultSet, handler);
             }
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
-        return tweets;
     }
 
     /**
      * Gets tweets from the same country as User, ordered by date, newest first.
      * @param userId User's id
      * @param limit how many tweets to get
-     * @param offset from what position
+     * @param cursor position of the last shown tweet, only older tweets are returned
      * @return ArrayList of Tweets
      */
     @Override
-    public List<Tweet> getCountryMessages(long userId, int limit, int offset) {
+    public List<Tweet> getCountryMessages(long userId, int limit, TweetCursor cursor) {
         List<Tweet> tweets = new ArrayList<>();
+        getCountryMessages(userId, limit, cursor, tweets::add);
+        return tweets;
+    }
+
+    /**
+     * Streams tweets from the same country as User to the handler
+     * while they are read from the database, ordered by date, newest first.
+     * @param userId User's id
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only older tweets are returned
+     * @param handler receives every tweet
+     */
+    @Override
+    public void getCountryMessages(long userId, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        try (Connection connection = dataSource.getConnection()) {
+            Countries country = getUserCountry(connection, userId);
+            long[] ids = country == null ? null : recentMessages.get(country).getMessageIds(cursor, limit);
+            if (ids != null) {
+                readMessagesByIds(connection, GET_MESSAGES_BY_IDS_SQL, ids, limit, handler);
+                return;
+            }
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+            return;
+        }
+
+        // The page is older than the ring buffer
         try (Connection connection = dataSource.getConnection();
              PreparedStatement statement = connection.prepareStatement(GET_COUNTRY_MESSAGES_SQL)) {
             statement.setLong(1, userId);
-            statement.setInt(2, limit);
-            statement.setInt(3, offset);
+            setCursor(statement, cursor, limit);
             try (ResultSet resultSet = statement.executeQuery()) {
-                getTweetsFromResultSet(resultSet, tweets);
+                getTweetsFromResultSet(resultSet, handler);
             }
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
+    }
+
+    /**
+     * Finds the newest tweets containing all words of the query.
+     * @param query words separated by spaces, a word ending with "*" is a prefix
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only tweets with smaller ids are returned
+     * @return ArrayList of Tweets
+     */
+    @Override
+    public List<Tweet> searchMessages(String query, int limit, TweetCursor cursor) {
+        List<Tweet> tweets = new ArrayList<>();
+        searchMessages(query, limit, cursor, tweets::add);
         return tweets;
     }
 
+    /**
+     * Streams the newest tweets containing all words of the query to the handler.
+     * Ids of the tweets are taken from the search index, only the found tweets are read from the database.
+     * @param query words separated by spaces, a word ending with "*" is a prefix
+     * @param limit how many tweets to get
+     * @param cursor position of the last shown tweet, only tweets with smaller ids are returned
+     * @param handler receives every tweet
+     */
+    @Override
+    public void searchMessages(String query, int limit, TweetCursor cursor, Consumer<Tweet> handler) {
+        long[] ids = searchIndex.search(query, cursor.getMessageId(), limit);
+        if (ids.length == 0) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            readMessagesByIds(connection, SEARCH_MESSAGES_SQL, ids, limit, handler);
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the search index from all messages. The messages are split into ranges of ids,
+     * which are read and indexed in parallel, every range on its own connection.
+     * The old index is kept, if some range can't be read.
+     */
+    @Override
+    public void rebuildSearchIndex() {
+        long minId;
+        long maxId;
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(GET_MESSAGE_ID_RANGE_SQL)) {
+            if (!resultSet.next() || resultSet.getObject(1) == null) {
+                return;
+            }
+            minId = resultSet.getLong(1);
+            maxId = resultSet.getLong(2);
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        long rangeSize = Math.max(1, (maxId - minId) / (threads * RANGES_PER_THREAD) + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<InvertedIndex>> ranges = new ArrayList<>();
+            for (long from = minId; from <= maxId; from += rangeSize) {
+                long first = from;
+                long last = Math.min(maxId, from + rangeSize - 1);
+                ranges.add(executor.submit(() -> indexRange(first, last)));
+            }
+            List<InvertedIndex> parts = new ArrayList<>();
+            for (Future<InvertedIndex> range : ranges) {
+                parts.add(range.get());
+            }
+            searchIndex.load(parts);
+            log.info("Search index is built: " + searchIndex.getTermCount() + " terms");
+        } catch (ExecutionException e) {
+            log.warn(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads the ids of the recent messages of every country into new ring buffers
+     * and the recent messages of every instrument into the instrument index, replacing their content.
+     * Messages created during the load may be missing.
+     */
+    @Override
+    public void rebuildRecentMessages() {
+        rebuildCountryMessages();
+        rebuildInstrumentMessages();
+    }
+
+    /**
+     * Invalidates the ring buffers of both countries of the author, who has moved, because the old ring
+     * keeps the author's messages and the new ring misses them. The rings answer only the pages
+     * of the messages created afterwards, older pages are read with the country query.
+     * Must be called after the new country is committed.
+     * @param oldCountry country, which the author has left
+     * @param newCountry new country of the author
+     */
+    void countryChanged(Countries oldCountry, Countries newCountry) {
+        // Messages of the author, created afterwards, are added to the new ring only
+        LocalDateTime now = LocalDateTime.now();
+        recentMessages.get(oldCountry).invalidate(now);
+        recentMessages.get(newCountry).invalidate(now);
+    }
+
+    /**
+     * Reads the ids and dates of the newest messages of the user
+     * @param connection connection to use
+     * @param userId User's id
+     * @param limit how many messages to read
+     * @return ids and dates, newest first
+     * @throws SQLException if the query fails
+     */
+    static List<TweetCursor> getRecentUserMessages(Connection connection, long userId, int limit) throws SQLException {
+        List<TweetCursor> messages = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(GET_RECENT_USER_MESSAGES_SQL)) {
+            statement.setLong(1, userId);
+            statement.setInt(2, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    messages.add(new TweetCursor(resultSet.getTimestamp(2).toLocalDateTime(), resultSet.getLong(1)));
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Service method, which loads the instrument index
+     */
+    private void rebuildInstrumentMessages() {
+        Map<Long, List<InstrumentIndex.Entry>> messages = new HashMap<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement instruments = connection.prepareStatement(GET_INSTRUMENT_IDS_SQL);
+             PreparedStatement statement = connection.prepareStatement(GET_RECENT_INSTRUMENT_MESSAGES_SQL)) {
+            try (ResultSet resultSet = instruments.executeQuery()) {
+                while (resultSet.next()) {
+                    messages.put(resultSet.getLong(1), new ArrayList<>());
+                }
+            }
+            for (Map.Entry<Long, List<InstrumentIndex.Entry>> instrument : messages.entrySet()) {
+                statement.setLong(1, instrument.getKey());
+                statement.setInt(2, RECENT_MESSAGES);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        instrument.getValue().add(new InstrumentIndex.Entry(resultSet.getLong(1),
+                                resultSet.getTimestamp(2).toLocalDateTime(), resultSet.getLong(3)));
+                    }
+                }
+            }
+            instrumentIndex.load(messages);
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Service method, which loads the ring buffers of the countries
+     */
+    private void rebuildCountryMessages() {
+        Map<Countries, MessageRing> rings = createRings();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(GET_RECENT_COUNTRY_MESSAGES_SQL)) {
+            for (Map.Entry<Countries, MessageRing> ring : rings.entrySet()) {
+                statement.setString(1, ring.getKey().toString());
+                statement.setInt(2, RECENT_MESSAGES);
+                List<TweetCursor> messages = new ArrayList<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        messages.add(new TweetCursor(resultSet.getTimestamp(2).toLocalDateTime(), resultSet.getLong(1)));
+                    }
+                }
+
+                // Oldest first, so the newest message gets the last sequence number
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                    ring.getValue().add(messages.get(i).getMessageId(), messages.get(i).getMessageDate());
+                }
+                ring.getValue().setLoaded(messages.size() < RECENT_MESSAGES);
+            }
+            recentMessages = rings;
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Service method, which creates empty ring buffers for all countries
+     * @return ring buffers by country
+     */
+    private static Map<Countries, MessageRing> createRings() {
+        Map<Countries, MessageRing> rings = new EnumMap<>(Countries.class);
+        for (Countries country : Countries.values()) {
+            rings.put(country, new MessageRing(RECENT_MESSAGES));
+        }
+        return rings;
+    }
+
+    /**
+     * Service method, which reads the country of the user
+     * @param connection connection to use
+     * @param userId User's id
+     * @return country or null if there is no such user
+     * @throws SQLException if the query fails
+     */
+    static Countries getUserCountry(Connection connection, long userId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(GET_USER_COUNTRY_SQL)) {
+            statement.setLong(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? Countries.valueOf(resultSet.getString(1)) : null;
+            }
+        }
+    }
+
+    /**
+     * Service method, which reads the tweets with the specified ids. The list of ids is padded with zeros
+     * to a multiple of ID_LIST_STEP, so a few statements serve all pages and a short page is never padded
+     * to the whole limit.
+     * @param connection connection to use
+     * @param sqlFormat query with "%s" in place of the ids
+     * @param ids ids of the tweets, at most limit
+     * @param limit page size
+     * @param handler receives every tweet
+     * @throws SQLException if the query fails
+     */
+    private void readMessagesByIds(Connection connection, String sqlFormat, long[] ids, int limit,
+                                   Consumer<Tweet> handler) throws SQLException {
+        if (ids.length == 0) {
+            return;
+        }
+        int size = Math.min(Math.max(limit, ids.length), (ids.length + ID_LIST_STEP - 1) / ID_LIST_STEP * ID_LIST_STEP);
+        String sql = String.format(sqlFormat, String.join(", ", Collections.nCopies(size, "?")));
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < size; i++) {
+                statement.setLong(i + 1, i < ids.length ? ids[i] : 0);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                getTweetsFromResultSet(resultSet, handler);
+            }
+        }
+    }
+
+    /**
+     * Service method, which indexes the messages with ids in the range
+     * @param first first id of the range
+     * @param last last id of the range
+     * @return index of the range
+     * @throws SQLException if the messages can't be read
+     */
+    private InvertedIndex indexRange(long first, long last) throws SQLException {
+        InvertedIndex index = new InvertedIndex();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(GET_MESSAGE_TEXTS_SQL)) {
+            statement.setLong(1, first);
+            statement.setLong(2, last);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    index.add(resultSet.getLong(1), resultSet.getString(2));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Service method for setting the keyset pagination parameters, which follow the user id in all feed queries.
+     * @param statement statement with feed query
+     * @param cursor position of the last shown tweet
+     * @param limit how many tweets to get
+     * @throws SQLException if the statement is incorrect
+     */
+    private void setCursor(PreparedStatement statement, TweetCursor cursor, int limit) throws SQLException {
+        Timestamp date = Timestamp.valueOf(cursor.getMessageDate());
+        statement.setTimestamp(2, date);
+        statement.setTimestamp(3, date);
+        statement.setLong(4, cursor.getMessageId());
+        statement.setInt(5, limit);
+    }
+
     /**
      * Service method for processing the ResultSet with tweets.
      * @param resultSet ResultSet to process
-     * @param tweets List for processed tweets
+     * @param handler receives every processed tweet
      * @throws SQLException if something wrong with the ResultSet
      */
-    private void getTweetsFromResultSet(ResultSet resultSet, List<Tweet> tweets) throws SQLException {
+    private void getTweetsFromResultSet(ResultSet resultSet, Consumer<Tweet> handler) throws SQLException {
         while (resultSet.next()) {
             Tweet tweet = new Tweet();
             tweet.setMessageId(resultSet.getLong("message_id"));
@@ -225,9 +690,8 @@ public class H2MessageDao implements MessageDao {
             tweet.setMessageText(resultSet.getString("message_text"));
             tweet.setLogin(resultSet.getString("login"));
             tweet.setLikes(resultSet.getInt("like_count"));
-            tweet.setInstruments(resultSet.getString("instruments_string") == null
-                    ? "" : resultSet.getString("instruments_string"));
-            tweets.add(tweet);
+            tweet.setInstruments(resultSet.getString("instruments"));
+            handler.accept(tweet);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package dao.h2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Versioned schema migrations for the H2 database.
+ * Migrations are the numbered scripts from the "sql" folder of the classpath: 1.sql, 2.sql, 3.sql and so on.
+ * Every script is applied once, in order of its number, and its version is recorded in the Schema_Versions table.
+ * H2 commits every DDL statement implicitly, so a failed script is rolled back only partly: its data changes are
+ * undone, but the created tables, columns and indexes stay. That's why the scripts after the baseline schema of
+ * 1.sql and 2.sql change the schema only with IF [NOT] EXISTS and their data changes can be repeated: a failed
+ * migration is applied again from its first statement on the next start. Shipped scripts are never edited,
+ * every schema change goes into a new script, so it's applied to the existing databases too.
+ */
+public class H2MigrationRunner {
+
+    // Folder with the migration scripts in the classpath
+    private static final String SCRIPTS_PATH = "sql/";
+
+    private DataSource dataSource;
+    private static final Logger log = LoggerFactory.getLogger(H2MigrationRunner.class);
+
+    // SQL queries for all necessary operations:
+    private static final String CREATE_VERSIONS_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS Schema_Versions (" +
+                    "version    INT       NOT NULL PRIMARY KEY, " +
+                    "applied_on TIMESTAMP NOT NULL);";
+
+    private static final String GET_CURRENT_VERSION_SQL =
+            "SELECT COALESCE(MAX(version), 0) AS current_version FROM Schema_Versions;";
+
+    private static final String ADD_VERSION_SQL =
+            "INSERT INTO Schema_Versions (version, applied_on) VALUES (?, CURRENT_TIMESTAMP());";
+
+    /**
+     * Simple constructor of the migration runner for the H2 database.
+     * @param dataSource any DataSource
+     */
+    public H2MigrationRunner(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the version of the last applied migration.
+     * @return current schema version or 0 if the database is empty
+     * @throws SQLException if the versions can't be read
+     */
+    public int getCurrentVersion() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(CREATE_VERSIONS_TABLE_SQL);
+            try (ResultSet resultSet = statement.executeQuery(GET_CURRENT_VERSION_SQL)) {
+                resultSet.next();
+                return resultSet.getInt("current_version");
+            }
+        }
+    }
+
+    /**
+     * Applies all migrations newer than the current schema version.
+     * Stops at the first migration that fails, so the versions always stay consecutive.
+     * @return number of applied migrations
+     * @throws SQLException if some migration fails
+     * @throws IOException if some migration script can't be read
+     */
+    public int migrate() throws SQLException, IOException {
+        int applied = 0;
+        int version = getCurrentVersion() + 1;
+        String script = readScript(version);
+        while (script != null) {
+            applyMigration(version, script);
+            log.info("Schema migrated to version " + version);
+            applied++;
+            version++;
+            script = readScript(version);
+        }
+        return applied;
+    }
+
+    /**
+     * Service method, which executes the statements of one migration script and records its version
+     * in the same transaction. Only the data changes of a failed script are rolled back, see the class comment.
+     * @param version version of the migration
+     * @param script SQL script of the migration
+     * @throws SQLException if some statement of the script fails
+     */
+    private void applyMigration(int version, String script) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement();
+                 PreparedStatement versionStatement = connection.prepareStatement(ADD_VERSION_SQL)) {
+                for (String sql : splitStatements(script)) {
+                    statement.execute(sql);
+                }
+                versionStatement.setInt(1, version);
+                versionStatement.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Service method, which reads the migration script with the specified version from the classpath.
+     * @param version version of the migration
+     * @return SQL script or null if there is no such migration
+     * @throws IOException if the script can't be read
+     */
+    private String readScript(int version) throws IOException {
+        InputStream stream = getClass().getClassLoader().getResourceAsStream(SCRIPTS_PATH + version + ".sql");
+        if (stream == null) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    /**
+     * Service method, which splits the script into statements by the semicolons outside string literals.
+     * Line comments are removed.
+     * @param script SQL script
+     * @return statements without the trailing semicolons
+     */
+    static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder statement = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < script.length(); i++) {
+            char c = script.charAt(i);
+            if (!quoted && c == '-' && i + 1 < script.length() && script.charAt(i + 1) == '-') {
+                while (i < script.length() && script.charAt(i) != '\n') {
+                    i++;
+                }
+                statement.append('\n');
+            } else if (!quoted && c == ';') {
+                addStatement(statements, statement);
+            } else {
+                if (c == '\'') {
+                    quoted = !quoted;
+                }
+                statement.append(c);
+            }
+        }
+        addStatement(statements, statement);
+        return statements;
+    }
+
+    /**
+     * Service method, which adds the collected statement to the list, unless it is blank, and clears it.
+     * @param statements list of statements
+     * @param statement collected text of the statement
+     */
+    private static void addStatement(List<String> statements, StringBuilder statement) {
+        String sql = statement.toString().trim();
+        if (!sql.isEmpty()) {
+            statements.add(sql);
+        }
+        statement.setLength(0);
+    }
+}
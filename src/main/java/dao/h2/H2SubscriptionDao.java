@@ -8,20 +8,35 @@ import org.slf4j.LoggerFactory;
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * SubscriptionDao implementation for the H2 database.
+ * The timelines of the subscriber are changed in the same transaction as the subscriptions, see H2TimelineDao.
  */
 public class H2SubscriptionDao implements SubscriptionDao {
 
     private DataSource dataSource;
+    private final H2TimelineDao timelineDao;
 
     // SQL queries for all necessary operations:
     private static final Logger log = LoggerFactory.getLogger(H2SubscriptionDao.class);
 
+    // Subscriptions are unique, so subscribing twice keeps the existing row and inserts nothing
     private static final String CREATE_SUBSCRIPTION_SQL =
-            "INSERT INTO Subscriptions (user_id, subscripted_user_id) VALUES (?, ?);";
+            "INSERT INTO Subscriptions (user_id, subscripted_user_id) SELECT ?1, ?2 FROM DUAL " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM Subscriptions WHERE user_id = ?1 AND subscripted_user_id = ?2);";
+
+    // SQL state of the unique constraint violation, the subscription has been created concurrently
+    private static final String DUPLICATE_KEY = "23505";
+
+    // The repeated transaction sees the concurrent subscription as an existing one
+    private static final int ATTEMPTS = 2;
+
+    private static final String GET_SUBSCRIPTION_ID_SQL =
+            "SELECT subscription_id FROM Subscriptions WHERE user_id = ? AND subscripted_user_id = ?;";
 
     private static final String GET_USER_SUBSCRIPTIONS_SQL =
             "SELECT subscription_id, subscripted_user_id FROM Subscriptions WHERE user_id = ?";
@@ -29,51 +44,75 @@ public class H2SubscriptionDao implements SubscriptionDao {
     private static final String DELETE_SUBSCRIPTION_SQL =
             "DELETE FROM Subscriptions WHERE (user_id = ? AND subscripted_user_id = ?);";
 
+    // Follower count decides whether the author is fanned out, see H2TimelineDao
+    private static final String UPDATE_FOLLOWER_COUNT_SQL =
+            "UPDATE Users SET follower_count = follower_count + ? WHERE user_id = ?;";
+
     /**
      * Simple constructor of the SubscriptionDao implementation for the H2 database.
      * @param dataSource any DataSource
+     * @param timelineDao timelines of the same DataSource
      */
-    H2SubscriptionDao(DataSource dataSource) {
+    H2SubscriptionDao(DataSource dataSource, H2TimelineDao timelineDao) {
         this.dataSource = dataSource;
+        this.timelineDao = timelineDao;
     }
 
     /**
-     * Creates single subscription.
+     * Creates single subscription, if it doesn't exist yet.
      * @param subscription Subscription object
-     * @return id of the created subscription
+     * @return id of the new or existing subscription, 0 if it can't be created
      */
     @Override
     public long createSubscription(Subscription subscription) {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(CREATE_SUBSCRIPTION_SQL, Statement.RETURN_GENERATED_KEYS)) {
-            statement.setLong(1, subscription.getUserId());
-            statement.setLong(2, subscription.getSubscriptedUserId());
-            statement.executeUpdate();
-            try (ResultSet resultSet = statement.getGeneratedKeys()) {
-                if (resultSet.next()) {
-                    return resultSet.getLong(1);
+        try {
+            return inTransaction(connection -> {
+                changeSubscriptions(connection, CREATE_SUBSCRIPTION_SQL, subscription.getUserId(),
+                        Collections.singletonList(subscription.getSubscriptedUserId()), 1);
+                try (PreparedStatement statement = connection.prepareStatement(GET_SUBSCRIPTION_ID_SQL)) {
+                    statement.setLong(1, subscription.getUserId());
+                    statement.setLong(2, subscription.getSubscriptedUserId());
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next() ? resultSet.getLong("subscription_id") : 0L;
+                    }
                 }
-            }
+            });
         } catch (SQLException e) {
             log.warn(e.getMessage());
         }
         return 0;
     }
 
+    /**
+     * Subscribes the user to many other users with one batch. Existing subscriptions are kept.
+     * @param userId id of the subscriber
+     * @param subscriptedUserIds ids of the users to subscribe to
+     * @return number of created subscriptions
+     */
+    @Override
+    public int createSubscriptions(long userId, Collection<Long> subscriptedUserIds) {
+        return executeBatch(CREATE_SUBSCRIPTION_SQL, userId, subscriptedUserIds, 1);
+    }
+
+    /**
+     * Unsubscribes the user from many other users with one batch.
+     * @param userId id of the subscriber
+     * @param subscriptedUserIds ids of the users to unsubscribe from
+     * @return number of deleted subscriptions
+     */
+    @Override
+    public int deleteSubscriptions(long userId, Collection<Long> subscriptedUserIds) {
+        return executeBatch(DELETE_SUBSCRIPTION_SQL, userId, subscriptedUserIds, -1);
+    }
+
     /**
      * Delete the specified Subscription from the database.
      * @param subscription Subscription to delete
      */
     @Override
     public void deleteSubscription(Subscription subscription)  {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement(DELETE_SUBSCRIPTION_SQL)) {
-            statement.setLong(1, subscription.getUserId());
-            statement.setLong(2, subscription.getSubscriptedUserId());
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            log.warn(e.getMessage());
-        }
+        executeBatch(DELETE_SUBSCRIPTION_SQL, subscription.getUserId(),
+                Collections.singletonList(subscription.getSubscriptedUserId()), -1);
     }
 
     /**
@@ -101,4 +140,107 @@ public class H2SubscriptionDao implements SubscriptionDao {
         }
         return subscriptions;
     }
-}
\ No newline at end of file
+
+    /**
+     * Service method, which executes the statement for the user and every subscripted user in one batch and transaction.
+     * @param sql statement with the user id and subscripted user id parameters
+     * @param userId id of the subscriber
+     * @param subscriptedUserIds ids of the subscripted users
+     * @param followerDelta change of the follower count of every subscripted user with an updated row
+     * @return total number of updated rows
+     */
+    private int executeBatch(String sql, long userId, Collection<Long> subscriptedUserIds, int followerDelta) {
+        try {
+            return inTransaction(connection -> changeSubscriptions(connection, sql, userId, subscriptedUserIds, followerDelta));
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Service method, which executes the change in one transaction. A subscription created concurrently
+     * after the NOT EXISTS check fails the insert with a duplicate key. Then the transaction is repeated
+     * once, and the subscription is kept as an existing one instead of failing the whole batch.
+     * @param change statements to execute
+     * @param <T> type of the result
+     * @return result of the change
+     * @throws SQLException if the change fails, it is rolled back
+     */
+    private <T> T inTransaction(SubscriptionChange<T> change) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    T result = change.execute(connection);
+                    connection.commit();
+                    return result;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                if (attempt >= ATTEMPTS || !DUPLICATE_KEY.equals(e.getSQLState())) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Service method, which executes the statement for every subscripted user in one batch,
+     * changes the follower counts of the users, whose subscriptions have been created or deleted,
+     * and adds their messages to the timeline of the subscriber or removes them.
+     * @param connection connection of the current transaction
+     * @param sql statement with the user id and subscripted user id parameters
+     * @param userId id of the subscriber
+     * @param subscriptedUserIds ids of the subscripted users
+     * @param followerDelta change of the follower count of every subscripted user with an updated row
+     * @return total number of updated rows
+     * @throws SQLException if any statement fails
+     */
+    private int changeSubscriptions(Connection connection, String sql, long userId,
+                                    Collection<Long> subscriptedUserIds, int followerDelta) throws SQLException {
+        List<Long> changedUserIds = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (long subscriptedUserId : subscriptedUserIds) {
+                statement.setLong(1, userId);
+                statement.setLong(2, subscriptedUserId);
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            int i = 0;
+            for (long subscriptedUserId : subscriptedUserIds) {
+                if (counts[i++] > 0) {
+                    changedUserIds.add(subscriptedUserId);
+                }
+            }
+        }
+        if (!changedUserIds.isEmpty()) {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_FOLLOWER_COUNT_SQL)) {
+                for (long changedUserId : changedUserIds) {
+                    statement.setInt(1, followerDelta);
+                    statement.setLong(2, changedUserId);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            if (followerDelta > 0) {
+                timelineDao.addAuthorMessages(connection, userId, changedUserIds);
+            } else {
+                timelineDao.removeAuthorMessages(connection, userId, changedUserIds);
+            }
+        }
+        return changedUserIds.size();
+    }
+
+    /**
+     * Statements of one transaction
+     * @param <T> type of the result
+     */
+    private interface SubscriptionChange<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+}
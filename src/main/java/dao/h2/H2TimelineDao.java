@@ -0,0 +1,262 @@
+package dao.h2;
+
+import dao.TimelineDao;
+import model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * TimelineDao implementation for the H2 database.
+ * Timelines are filled on write (fan-out), except for the popular authors with more than FAN_OUT_LIMIT subscribers:
+ * their messages are merged into the subscription feed on read, see H2MessageDao.
+ * The popular flag of Users changes only here, so a message is either fanned out or read directly,
+ * and an author who drops to the limit gets all the messages copied back to the timelines.
+ */
+public class H2TimelineDao implements TimelineDao {
+
+    // Authors with more subscribers than this are not fanned out on write
+    static final int FAN_OUT_LIMIT = 1000;
+
+    private DataSource dataSource;
+    private final int fanOutLimit;
+    private static final Logger log = LoggerFactory.getLogger(H2TimelineDao.class);
+
+    // SQL queries for all necessary operations:
+    // A subscriber, who has subscribed after the message was created, may already have it
+    private static final String FAN_OUT_MESSAGE_SQL =
+            "MERGE INTO Timelines (user_id, message_id, message_date) KEY (user_id, message_id) " +
+                    "SELECT s.user_id, ?, ? FROM Subscriptions AS s " +
+                    "INNER JOIN Users AS a ON (a.user_id = s.subscripted_user_id) " +
+                    "WHERE s.subscripted_user_id = ? AND a.popular = FALSE;";
+
+    private static final String ADD_AUTHOR_MESSAGES_SQL =
+            "MERGE INTO Timelines (user_id, message_id, message_date) KEY (user_id, message_id) " +
+                    "SELECT ?, m.message_id, m.message_date FROM Messages AS m " +
+                    "INNER JOIN Users AS a ON (a.user_id = m.user_id) " +
+                    "WHERE m.user_id = ? AND a.popular = FALSE;";
+
+    private static final String REMOVE_AUTHOR_MESSAGES_SQL =
+            "DELETE FROM Timelines WHERE user_id = ? " +
+                    "AND message_id IN (SELECT message_id FROM Messages WHERE user_id = ?);";
+
+    // Rows copied before the author became popular are kept, the feed merges them without duplicates
+    private static final String SET_POPULAR_SQL =
+            "UPDATE Users SET popular = TRUE WHERE user_id = ? AND popular = FALSE AND follower_count > ?;";
+
+    private static final String RESET_POPULAR_SQL =
+            "UPDATE Users SET popular = FALSE WHERE user_id = ? AND popular = TRUE AND follower_count <= ?;";
+
+    // Messages posted while the author was popular were never fanned out
+    private static final String BACKFILL_AUTHOR_MESSAGES_SQL =
+            "MERGE INTO Timelines (user_id, message_id, message_date) KEY (user_id, message_id) " +
+                    "SELECT s.user_id, m.message_id, m.message_date FROM Subscriptions AS s " +
+                    "INNER JOIN Messages AS m ON (m.user_id = s.subscripted_user_id) " +
+                    "WHERE s.subscripted_user_id = ?;";
+
+    private static final String COUNT_FOLLOWERS_SQL =
+            "UPDATE Users AS u SET follower_count = " +
+                    "(SELECT COUNT(*) FROM Subscriptions WHERE subscripted_user_id = u.user_id);";
+
+    private static final String UPDATE_ALL_POPULAR_SQL = "UPDATE Users SET popular = (follower_count > ?);";
+
+    private static final String DELETE_ALL_TIMELINES_SQL = "DELETE FROM Timelines;";
+
+    private static final String REBUILD_TIMELINES_SQL =
+            "INSERT INTO Timelines (user_id, message_id, message_date) " +
+                    "SELECT s.user_id, m.message_id, m.message_date FROM Subscriptions AS s " +
+                    "INNER JOIN Users AS a ON (a.user_id = s.subscripted_user_id) " +
+                    "INNER JOIN Messages AS m ON (m.user_id = s.subscripted_user_id) " +
+                    "WHERE a.popular = FALSE;";
+
+    /**
+     * Simple constructor of the TimelineDao implementation for the H2 database.
+     * @param dataSource any DataSource
+     */
+    H2TimelineDao(DataSource dataSource) {
+        this(dataSource, FAN_OUT_LIMIT);
+    }
+
+    /**
+     * Constructor with the custom number of subscribers, above which the author is not fanned out.
+     * @param dataSource any DataSource
+     * @param fanOutLimit maximal number of subscribers of the fanned out author
+     */
+    H2TimelineDao(DataSource dataSource, int fanOutLimit) {
+        this.dataSource = dataSource;
+        this.fanOutLimit = fanOutLimit;
+    }
+
+    /**
+     * Appends a new message to the timelines of all subscribers of its author.
+     * Messages of very popular authors are not copied, they are read directly from the messages.
+     * Timelines, which already have the message, keep one copy.
+     * @param message created message with its id
+     * @return number of timelines the message has been added to
+     */
+    @Override
+    public int fanOutMessage(Message message) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(FAN_OUT_MESSAGE_SQL)) {
+            statement.setLong(1, message.getMessageId());
+            statement.setTimestamp(2, Timestamp.valueOf(message.getMessageDate()));
+            statement.setLong(3, message.getUserId());
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Adds all messages of the author to the timeline of the new subscriber,
+     * unless the author has become popular with this subscriber.
+     * @param userId id of the subscriber
+     * @param authorId id of the subscribed user
+     */
+    @Override
+    public void addAuthorMessages(long userId, long authorId) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                addAuthorMessages(connection, userId, Collections.singletonList(authorId));
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Removes all messages of the author from the timeline of the former subscriber.
+     * If the author is not popular anymore, the messages are copied to the timelines of the remaining subscribers.
+     * @param userId id of the subscriber
+     * @param authorId id of the unsubscribed user
+     */
+    @Override
+    public void removeAuthorMessages(long userId, long authorId) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                removeAuthorMessages(connection, userId, Collections.singletonList(authorId));
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Adds all messages of the authors to the timeline of the new subscriber within the transaction
+     * of the specified connection, see {@link #addAuthorMessages(long, long)}. Used by H2SubscriptionDao,
+     * so the subscriptions and timelines are changed together.
+     * @param connection connection with open transaction
+     * @param userId id of the subscriber
+     * @param authorIds ids of the subscribed users, whose follower counts are already updated
+     * @throws SQLException if the timeline can't be updated
+     */
+    void addAuthorMessages(Connection connection, long userId, Collection<Long> authorIds) throws SQLException {
+        for (long authorId : authorIds) {
+            updatePopular(connection, authorId);
+        }
+        try (PreparedStatement statement = connection.prepareStatement(ADD_AUTHOR_MESSAGES_SQL)) {
+            for (long authorId : authorIds) {
+                statement.setLong(1, userId);
+                statement.setLong(2, authorId);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Removes all messages of the authors from the timeline of the former subscriber within the transaction
+     * of the specified connection, see {@link #removeAuthorMessages(long, long)}.
+     * @param connection connection with open transaction
+     * @param userId id of the subscriber
+     * @param authorIds ids of the unsubscribed users, whose follower counts are already updated
+     * @throws SQLException if the timelines can't be updated
+     */
+    void removeAuthorMessages(Connection connection, long userId, Collection<Long> authorIds) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(REMOVE_AUTHOR_MESSAGES_SQL)) {
+            for (long authorId : authorIds) {
+                statement.setLong(1, userId);
+                statement.setLong(2, authorId);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        for (long authorId : authorIds) {
+            updatePopular(connection, authorId);
+        }
+    }
+
+    /**
+     * Rebuilds all follower counts, popular flags and timelines from the messages and subscriptions
+     */
+    @Override
+    public void rebuildTimelines() {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             PreparedStatement popularStatement = connection.prepareStatement(UPDATE_ALL_POPULAR_SQL)) {
+            connection.setAutoCommit(false);
+            try {
+                statement.executeUpdate(COUNT_FOLLOWERS_SQL);
+                popularStatement.setInt(1, fanOutLimit);
+                popularStatement.executeUpdate();
+                statement.executeUpdate(DELETE_ALL_TIMELINES_SQL);
+                statement.executeUpdate(REBUILD_TIMELINES_SQL);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * Service method, which compares the follower count of the author with the limit and flips the popular flag.
+     * An author who is not popular anymore gets the messages copied to the timelines of all subscribers.
+     * @param connection connection of the current transaction
+     * @param authorId id of the author
+     * @throws SQLException if the flag or timelines can't be updated
+     */
+    private void updatePopular(Connection connection, long authorId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SET_POPULAR_SQL)) {
+            statement.setLong(1, authorId);
+            statement.setInt(2, fanOutLimit);
+            if (statement.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(RESET_POPULAR_SQL)) {
+            statement.setLong(1, authorId);
+            statement.setInt(2, fanOutLimit);
+            if (statement.executeUpdate() == 0) {
+                return;
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(BACKFILL_AUTHOR_MESSAGES_SQL)) {
+            statement.setLong(1, authorId);
+            statement.executeUpdate();
+        }
+    }
+}
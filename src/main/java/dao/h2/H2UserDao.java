@@ -15,6 +15,7 @@ import java.sql.*;
 public class H2UserDao implements UserDao {
 
     private DataSource dataSource;
+    private final H2MessageDao messageDao;
     private static final Logger log = LoggerFactory.getLogger(H2UserDao.class);
 
     // SQL queries for all necessary operations:
@@ -34,9 +35,11 @@ public class H2UserDao implements UserDao {
      * Simple constructor of the UserDao implementation for the H2 database.
      *
      * @param dataSource any DataSource
+     * @param messageDao MessageDao, whose country feeds follow the users, who change their country
      */
-    H2UserDao(DataSource dataSource) {
+    H2UserDao(DataSource dataSource, H2MessageDao messageDao) {
         this.dataSource = dataSource;
+        this.messageDao = messageDao;
     }
 
     /**
@@ -98,7 +101,7 @@ public class H2UserDao implements UserDao {
      * Gets User with the specified login from the database.
      *
      * @param login User's login
-     * @return User object
+     * @return User object, null if there's no such user or blank User if the database can't be read
      */
     @Override
     public User readUserByLogin(String login) {
@@ -107,7 +110,9 @@ public class H2UserDao implements UserDao {
              PreparedStatement statement = connection.prepareStatement(SELECT_USER_BY_LOGIN_SQL)) {
             statement.setString(1, login);
             try (ResultSet resultSet = statement.executeQuery()) {
-                resultSet.next();
+                if (!resultSet.next()) {
+                    return null;
+                }
                 user.setUserId(resultSet.getLong("user_id"));
                 user.setPassword(resultSet.getString("password"));
                 user.setFirstName(resultSet.getString("first_name"));
@@ -116,14 +121,15 @@ public class H2UserDao implements UserDao {
                 user.setLogin(login);
             }
         } catch (SQLException e) {
-            log.info("Checking if login is free: " + e.getMessage());
-            return null;
+            log.warn(e.getMessage());
+            return new User();
         }
         return user;
     }
 
     /**
-     * Updates the specified User in the database
+     * Updates the specified User in the database.
+     * If the country has changed, the country feeds of both countries are invalidated after the commit.
      *
      * @param user User to update
      * @return user id or 0 if login is used
@@ -132,6 +138,7 @@ public class H2UserDao implements UserDao {
     public long updateUser(User user) {
         try (Connection connection = dataSource.getConnection();
              PreparedStatement statement = connection.prepareStatement(UPDATE_USER_SQL)) {
+            Countries oldCountry = H2MessageDao.getUserCountry(connection, user.getUserId());
             statement.setString(1, user.getLogin());
             statement.setString(2, user.getPassword());
             statement.setString(3, user.getFirstName());
@@ -139,6 +146,12 @@ public class H2UserDao implements UserDao {
             statement.setString(5, user.getCountry().toString());
             statement.setLong(6, user.getUserId());
             statement.executeUpdate();
+
+            // Country feeds show the author's messages in the new country only after the unit of work is committed
+            Countries newCountry = user.getCountry();
+            if (oldCountry != null && oldCountry != newCountry) {
+                TransactionalDataSource.afterCommit(dataSource, () -> messageDao.countryChanged(oldCountry, newCountry));
+            }
             return user.getUserId();
         } catch (SQLException e) {
             log.warn(e.getMessage());
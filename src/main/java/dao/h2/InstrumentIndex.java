@@ -0,0 +1,237 @@
+package dao.h2;
+
+import model.TweetCursor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Thread-safe in-memory index of the recent messages of every instrument: the messages of all users,
+ * who play the instrument, ordered as the feeds, newest first. The instrument feed of a user is
+ * the merge of the lists of his instruments, a message of an author with several common instruments
+ * is taken once.
+ * <p>
+ * Every list keeps at most the capacity of the newest messages. Below its floor, the newest message
+ * it has dropped, a list may miss messages, so a page, which reaches the floor of any merged list,
+ * has to be read from the database. A list without floor contains all messages of the instrument.
+ * Writers are synchronized per list, readers walk the lists without locking.
+ * The index answers no pages before it has been loaded from the database.
+ */
+class InstrumentIndex {
+
+    // Feed order: by date, then by id, newest first
+    private static final Comparator<Entry> NEWEST_FIRST = (a, b) -> {
+        int dates = b.messageDate.compareTo(a.messageDate);
+        return dates != 0 ? dates : Long.compare(b.messageId, a.messageId);
+    };
+
+    private final int capacity;
+    private final Map<Long, Timeline> timelines = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * Creates the empty index, which answers no pages until it is loaded
+     * @param capacity number of the newest messages kept for every instrument
+     */
+    InstrumentIndex(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the new message to the lists of the author's instruments
+     * @param instrumentIds instruments of the author
+     * @param messageId id of the message
+     * @param messageDate date of the message
+     * @param userId id of the author
+     */
+    void addMessage(long[] instrumentIds, long messageId, LocalDateTime messageDate, long userId) {
+        Entry entry = new Entry(messageId, messageDate, userId);
+        for (long instrumentId : instrumentIds) {
+            getTimeline(instrumentId).add(entry);
+        }
+    }
+
+    /**
+     * Moves the messages of the author, whose instruments have changed: they are removed from the lists
+     * of the dropped instruments and added to the lists of the new ones
+     * @param userId id of the author
+     * @param oldInstrumentIds instruments before the change
+     * @param newInstrumentIds instruments after the change
+     * @param messages ids and dates of the newest messages of the author, at least the capacity of them
+     */
+    void updateAuthor(long userId, long[] oldInstrumentIds, long[] newInstrumentIds, List<TweetCursor> messages) {
+        for (long instrumentId : oldInstrumentIds) {
+            if (!contains(newInstrumentIds, instrumentId)) {
+                getTimeline(instrumentId).removeAuthor(userId);
+            }
+        }
+        for (long instrumentId : newInstrumentIds) {
+            if (!contains(oldInstrumentIds, instrumentId)) {
+                Timeline timeline = getTimeline(instrumentId);
+                for (TweetCursor message : messages) {
+                    timeline.add(new Entry(message.getMessageId(), message.getMessageDate(), userId));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces all lists. Every list must contain the newest messages of the instrument,
+     * lists shorter than the capacity are considered complete.
+     * @param messages newest messages by instrument id, as ids, dates and authors
+     */
+    void load(Map<Long, List<Entry>> messages) {
+        timelines.clear();
+        for (Map.Entry<Long, List<Entry>> instrument : messages.entrySet()) {
+            Timeline timeline = getTimeline(instrument.getKey());
+            for (Entry entry : instrument.getValue()) {
+                timeline.add(entry);
+            }
+            if (instrument.getValue().size() >= capacity) {
+                timeline.floor = instrument.getValue().get(instrument.getValue().size() - 1);
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * Merges the lists of the instruments into one page
+     * @param instrumentIds instruments of the reader
+     * @param cursor position of the last shown message
+     * @param limit how many ids to get
+     * @return ids of the page, newest first, or null if the page has to be read from the database
+     */
+    long[] getMessageIds(long[] instrumentIds, TweetCursor cursor, int limit) {
+        if (!loaded) {
+            return null;
+        }
+        if (limit <= 0) {
+            return new long[0];
+        }
+        Entry start = new Entry(cursor.getMessageId(), cursor.getMessageDate(), 0);
+        List<Timeline> merged = new ArrayList<>(instrumentIds.length);
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, instrumentIds.length),
+                (a, b) -> NEWEST_FIRST.compare(a.entry, b.entry));
+        for (long instrumentId : instrumentIds) {
+            Timeline timeline = getTimeline(instrumentId);
+            merged.add(timeline);
+            Iterator<Entry> iterator = timeline.entries.tailSet(start, false).iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator.next(), iterator));
+            }
+        }
+
+        long[] ids = new long[limit];
+        int count = 0;
+        Entry last = null;
+        while (count < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+            if (last == null || head.entry.messageId != last.messageId) {
+                last = head.entry;
+                ids[count++] = last.messageId;
+            }
+            if (head.iterator.hasNext()) {
+                head.entry = head.iterator.next();
+                heads.add(head);
+            }
+        }
+
+        // Floors are read after the entries: writers move the floor before they drop entries,
+        // so every entry missed by the merge is not newer than some floor seen here
+        for (Timeline timeline : merged) {
+            Entry floor = timeline.floor;
+            if (floor != null && (count < limit || NEWEST_FIRST.compare(last, floor) >= 0)) {
+                return null;
+            }
+        }
+        return count < limit ? Arrays.copyOf(ids, count) : ids;
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (long value : ids) {
+            if (value == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Timeline getTimeline(long instrumentId) {
+        return timelines.computeIfAbsent(instrumentId, id -> new Timeline());
+    }
+
+    /**
+     * Message in the lists
+     */
+    static class Entry {
+
+        private final long messageId;
+        private final LocalDateTime messageDate;
+        private final long userId;
+
+        Entry(long messageId, LocalDateTime messageDate, long userId) {
+            this.messageId = messageId;
+            this.messageDate = messageDate;
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * Current entry of one list in the merge
+     */
+    private static class Head {
+
+        private Entry entry;
+        private final Iterator<Entry> iterator;
+
+        private Head(Entry entry, Iterator<Entry> iterator) {
+            this.entry = entry;
+            this.iterator = iterator;
+        }
+    }
+
+    /**
+     * Newest messages of one instrument
+     */
+    private class Timeline {
+
+        private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+        private volatile Entry floor;
+        private int size;
+
+        private synchronized void add(Entry entry) {
+            Entry current = floor;
+            if ((current != null && NEWEST_FIRST.compare(entry, current) >= 0) || !entries.add(entry)) {
+                return;
+            }
+            if (++size > capacity) {
+                Entry oldest = entries.last();
+                floor = oldest;
+                entries.remove(oldest);
+                size--;
+            }
+        }
+
+        private synchronized void removeAuthor(long userId) {
+            List<Entry> removed = new ArrayList<>();
+            for (Entry entry : entries) {
+                if (entry.userId == userId) {
+                    removed.add(entry);
+                }
+            }
+            for (Entry entry : removed) {
+                if (entries.remove(entry)) {
+                    size--;
+                }
+            }
+        }
+    }
+}
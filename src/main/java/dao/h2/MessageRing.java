@@ -0,0 +1,149 @@
+package dao.h2;
+
+import model.TweetCursor;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring buffer with the ids and dates of the most recent messages of one feed.
+ * Writers take the next sequence number and put the entry into its slot, readers walk the whole ring
+ * and give up on slots, which are not written yet or already overwritten by a newer lap,
+ * so neither writers nor readers ever wait.
+ * <p>
+ * Messages may be added out of their date order, so a page is chosen by date and id like the feed queries do.
+ * The floor is the newest message, which may be missing from the ring: the ring answers a page only
+ * if the whole page is newer than the floor, or there is no floor, because the ring has all messages of the feed.
+ */
+class MessageRing {
+
+    // Same order as the keyset pagination of the feed queries: by date, then by id
+    private static final Comparator<Entry> NEWEST_FIRST = (a, b) -> {
+        int dates = b.messageDate.compareTo(a.messageDate);
+        return dates != 0 ? dates : Long.compare(b.messageId, a.messageId);
+    };
+
+    // Floor of the ring, which hasn't been loaded yet: any message may be missing
+    private static final Entry UNKNOWN = new Entry(-1, Long.MAX_VALUE, LocalDateTime.MAX);
+
+    private final int mask;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicReference<Entry> floor = new AtomicReference<>(UNKNOWN);
+
+    /**
+     * Creates the empty ring, which answers no pages until it is loaded
+     * @param capacity number of messages, rounded up to a power of two
+     */
+    MessageRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Adds the newest message
+     * @param messageId id of the message
+     * @param messageDate date of the message
+     */
+    void add(long messageId, LocalDateTime messageDate) {
+        long sequence = head.getAndIncrement();
+        int slot = (int) (sequence & mask);
+
+        // The floor is raised before the entry is dropped, so a reader, which misses the entry, sees the floor
+        Entry dropped = slots.get(slot);
+        if (dropped != null) {
+            floor.accumulateAndGet(dropped, MessageRing::newer);
+        }
+        slots.set(slot, new Entry(sequence, messageId, messageDate));
+    }
+
+    /**
+     * Marks the ring as loaded with the newest messages of the feed
+     * @param complete true if the ring has been loaded with all messages of the feed,
+     *                 otherwise the older messages are missing
+     */
+    void setLoaded(boolean complete) {
+        Entry oldest = null;
+        for (int slot = 0; slot <= mask; slot++) {
+            Entry entry = slots.get(slot);
+            if (entry != null && (oldest == null || NEWEST_FIRST.compare(entry, oldest) > 0)) {
+                oldest = entry;
+            }
+        }
+        floor.set(complete || oldest == null ? null : oldest);
+    }
+
+    /**
+     * Raises the floor to the date, so the ring answers only pages of messages newer than the date.
+     * Called when messages older than the date may have been moved to or from the feed.
+     * @param date date, until which any message may be missing
+     */
+    void invalidate(LocalDateTime date) {
+        floor.accumulateAndGet(new Entry(-1, Long.MAX_VALUE, date), MessageRing::newer);
+    }
+
+    /**
+     * Ids of the newest messages older than the cursor
+     * @param cursor position of the last shown message
+     * @param limit how many ids to get
+     * @return ids, newest first, or null if the ring can't tell, whether some newer message is missing
+     */
+    long[] getMessageIds(TweetCursor cursor, int limit) {
+        if (limit <= 0) {
+            return new long[0];
+        }
+        Entry start = new Entry(-1, cursor.getMessageId(), cursor.getMessageDate());
+        long newest = head.get() - 1;
+        long oldest = Math.max(0, newest - mask);
+        Entry[] entries = new Entry[(int) (newest - oldest + 1)];
+        int count = 0;
+        for (long sequence = newest; sequence >= oldest; sequence--) {
+            Entry entry = slots.get((int) (sequence & mask));
+            if (entry == null || entry.sequence != sequence) {
+                // Taken, but not written yet, or overwritten by a writer, which has lapped this reader
+                return null;
+            }
+            if (NEWEST_FIRST.compare(entry, start) > 0) {
+                entries[count++] = entry;
+            }
+        }
+        Arrays.sort(entries, 0, count, NEWEST_FIRST);
+
+        // Floor is read after the entries, see add()
+        Entry missing = floor.get();
+        int size = Math.min(count, limit);
+        if (missing != null && (size < limit || NEWEST_FIRST.compare(entries[size - 1], missing) >= 0)) {
+            return null;
+        }
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = entries[i].messageId;
+        }
+        return ids;
+    }
+
+    private static Entry newer(Entry a, Entry b) {
+        return a == null || NEWEST_FIRST.compare(b, a) < 0 ? b : a;
+    }
+
+    /**
+     * Immutable slot content
+     */
+    private static class Entry {
+
+        private final long sequence;
+        private final long messageId;
+        private final LocalDateTime messageDate;
+
+        private Entry(long sequence, long messageId, LocalDateTime messageDate) {
+            this.sequence = sequence;
+            this.messageId = messageId;
+            this.messageDate = messageDate;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package dao.h2;
+
+import dao.DaoFactory;
+import dao.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * DataSource decorator, which binds one connection to the current thread for the whole unit of work.
+ * Outside of a unit of work the connections of the wrapped DataSource are returned as is.
+ * Inside of it every DAO gets the bound connection, where closing does nothing and the DAO's own
+ * transaction (setAutoCommit(false), commit, rollback) is turned into a savepoint.
+ * DAO methods log and swallow their SQLExceptions, so every failed statement on the bound connection
+ * marks the unit of work as rollback-only: it is rolled back and throws, even if the work itself has finished.
+ * Changes of the in-memory indexes are registered as after-commit actions, so they never show rolled back data.
+ */
+class TransactionalDataSource implements DataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionalDataSource.class);
+
+    private final DataSource dataSource;
+    private final ThreadLocal<Connection> bound = new ThreadLocal<>();
+
+    // Actions of the current unit of work, which run after its commit
+    private final ThreadLocal<List<Runnable>> afterCommit = new ThreadLocal<>();
+
+    // First failed statement of the current unit of work, null if there was none
+    private final ThreadLocal<SQLException> failure = new ThreadLocal<>();
+
+    /**
+     * Constructor
+     * @param dataSource DataSource to take the connections from
+     */
+    TransactionalDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Executes the work with one connection bound to the current thread and commits it.
+     * If the thread is already in a unit of work, the work joins it within a savepoint:
+     * a failed statement of the nested work rolls back and fails only the nested work.
+     * @param work DAO calls to execute
+     * @param daoFactory factory passed to the work
+     * @param <T> type of the result
+     * @return result of the work
+     * @throws SQLException if the work or any of its statements fails, its changes are rolled back
+     */
+    <T> T inTransaction(UnitOfWork<T> work, DaoFactory daoFactory) throws SQLException {
+        Connection connection = bound.get();
+        if (connection != null) {
+            Savepoint savepoint = connection.setSavepoint();
+            SQLException outerFailure = failure.get();
+            failure.remove();
+            List<Runnable> actions = afterCommit.get();
+            int outerActions = actions.size();
+            try {
+                T result = work.execute(daoFactory);
+                checkFailure();
+                connection.releaseSavepoint(savepoint);
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback(savepoint);
+                actions.subList(outerActions, actions.size()).clear();
+                throw e;
+            } finally {
+                failure.set(outerFailure);
+            }
+        }
+        List<Runnable> actions = new ArrayList<>();
+        T result;
+        try (Connection newConnection = dataSource.getConnection()) {
+            newConnection.setAutoCommit(false);
+            bound.set(newConnection);
+            afterCommit.set(actions);
+            try {
+                result = work.execute(daoFactory);
+                checkFailure();
+                newConnection.commit();
+            } catch (SQLException | RuntimeException e) {
+                newConnection.rollback();
+                throw e;
+            } finally {
+                bound.remove();
+                failure.remove();
+                afterCommit.remove();
+                newConnection.setAutoCommit(true);
+            }
+        }
+
+        // The work is committed, a failed action must not fail it
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.warn("After-commit action failed: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the action after the commit of the current unit of work or at once, if there is none.
+     * Actions of a rolled back unit of work or nested work are dropped.
+     * @param action change of some in-memory state, which must only reflect committed data
+     */
+    void afterCommit(Runnable action) {
+        List<Runnable> actions = afterCommit.get();
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    /**
+     * Runs the action after the commit of the current unit of work of the DataSource
+     * @param dataSource DataSource of the DAO, the action runs at once, if it isn't a TransactionalDataSource
+     * @param action change of some in-memory state, which must only reflect committed data
+     */
+    static void afterCommit(DataSource dataSource, Runnable action) {
+        if (dataSource instanceof TransactionalDataSource) {
+            ((TransactionalDataSource) dataSource).afterCommit(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Service method, which fails the current unit of work, if some of its statements has failed
+     * @throws SQLException with the message and SQL state of the first failed statement
+     */
+    private void checkFailure() throws SQLException {
+        SQLException e = failure.get();
+        if (e != null) {
+            throw new SQLException("Unit of work is rolled back: " + e.getMessage(), e.getSQLState(), e);
+        }
+    }
+
+    /**
+     * Service method, which marks the current unit of work as rollback-only
+     * @param e exception of the failed statement
+     */
+    private void markFailed(SQLException e) {
+        if (failure.get() == null) {
+            failure.set(e);
+        }
+    }
+
+    /**
+     * Returns the connection bound to the current thread or a new connection from the wrapped DataSource
+     * @return connection
+     * @throws SQLException if the wrapped DataSource fails
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = bound.get();
+        if (connection == null) {
+            return dataSource.getConnection();
+        }
+        return (Connection) Proxy.newProxyInstance(TransactionalDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new BoundConnection(connection, this::markFailed));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Use getConnection()");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+
+    /**
+     * View of the bound connection for one DAO call. The DAO's transaction is a savepoint
+     * in the transaction of the unit of work. Statements of the connection report their failures.
+     */
+    private static class BoundConnection implements InvocationHandler {
+
+        private final Connection connection;
+        private final Consumer<SQLException> onFailure;
+        private Savepoint savepoint;
+        private boolean closed;
+
+        private BoundConnection(Connection connection, Consumer<SQLException> onFailure) {
+            this.connection = connection;
+            this.onFailure = onFailure;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!closed && savepoint != null) {
+                    connection.releaseSavepoint(savepoint);
+                    savepoint = null;
+                }
+                closed = true;
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return closed || connection.isClosed();
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+            switch (name) {
+                case "getAutoCommit":
+                    return savepoint == null;
+                case "setAutoCommit":
+                    if ((Boolean) args[0]) {
+                        if (savepoint != null) {
+                            connection.releaseSavepoint(savepoint);
+                            savepoint = null;
+                        }
+                    } else if (savepoint == null) {
+                        savepoint = connection.setSavepoint();
+                    }
+                    return null;
+                case "commit":
+                    if (savepoint != null) {
+                        connection.releaseSavepoint(savepoint);
+                        savepoint = connection.setSavepoint();
+                    }
+                    return null;
+                case "rollback":
+                    if (args == null || args.length == 0) {
+                        if (savepoint == null) {
+                            throw new SQLException("Connection is in auto-commit mode");
+                        }
+                        connection.rollback(savepoint);
+                        return null;
+                    }
+                    break;
+                case "createStatement":
+                case "prepareStatement":
+                case "prepareCall":
+                    Object statement = invokeTarget(connection, method, args);
+                    return Proxy.newProxyInstance(TransactionalDataSource.class.getClassLoader(),
+                            new Class<?>[]{method.getReturnType()}, new FailingStatement(statement, onFailure));
+                default:
+                    break;
+            }
+            return invokeTarget(connection, method, args);
+        }
+    }
+
+    /**
+     * Statement of the bound connection, which reports the failures of its execute methods
+     */
+    private static class FailingStatement implements InvocationHandler {
+
+        private final Object statement;
+        private final Consumer<SQLException> onFailure;
+
+        private FailingStatement(Object statement, Consumer<SQLException> onFailure) {
+            this.statement = statement;
+            this.onFailure = onFailure;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+                return invokeTarget(statement, method, args);
+            } catch (SQLException e) {
+                if (method.getName().startsWith("execute")) {
+                    onFailure.accept(e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Service method, which calls the method of the wrapped object and rethrows the original exception
+     * @param target wrapped object
+     * @param method method to call
+     * @param args arguments of the method
+     * @return result of the method
+     * @throws Throwable exception of the method
+     */
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
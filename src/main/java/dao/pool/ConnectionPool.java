@@ -0,0 +1,421 @@
+package dao.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple JDBC connection pool on top of any DataSource, for example H2 JdbcDataSource.
+ * The DataSource should open physical connections: under another pool its limits and idle connections are doubled,
+ * so the jdbc/mtdb resource of context.xml is a plain JdbcDataSource.
+ * <p>
+ * Every pooled connection keeps its own cache of prepared statements by SQL, so the DAO methods,
+ * which prepare the same queries again and again, get the already prepared statements.
+ * Connections held longer than the leak threshold are reported with the stack trace of the code, which took them.
+ * Time spent waiting for a connection and the number of busy connections are collected in histograms.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final DataSource dataSource;
+    private final long timeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger created = new AtomicInteger();
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean closed;
+
+    private final Histogram waitMicros = new Histogram("wait, us");
+    private final Histogram busyConnections = new Histogram("busy connections");
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    /**
+     * Creates the pool. Connections are opened on demand.
+     * @param dataSource source of the physical connections
+     * @param maxSize maximal number of connections
+     * @param timeoutMillis how long getConnection waits for a free connection
+     * @param leakThresholdMillis connections held longer than this are reported as leaked, 0 turns the detection off
+     * @param statementCacheSize maximal number of cached statements per connection
+     */
+    public ConnectionPool(DataSource dataSource, int maxSize, long timeoutMillis,
+                          long leakThresholdMillis, int statementCacheSize) {
+        this.dataSource = dataSource;
+        this.timeoutMillis = timeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        permits = new Semaphore(maxSize, true);
+        leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (leakThresholdMillis > 0) {
+            long period = Math.max(1000, leakThresholdMillis / 2);
+            leakDetector.scheduleWithFixedDelay(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a free connection from the pool or opens a new one. Closing the returned connection
+     * gives it back to the pool.
+     * @return pooled connection
+     * @throws SQLException if there's no free connection within the timeout or a new connection can't be opened
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("No free connection within " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        waitMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        try {
+            PooledConnection connection = idle.pollFirst();
+            while (connection != null && connection.physical.isClosed()) {
+                created.decrementAndGet();
+                connection = idle.pollFirst();
+            }
+            if (connection == null) {
+                connection = new PooledConnection(dataSource.getConnection());
+                created.incrementAndGet();
+            }
+            connection.borrow();
+            borrowed.add(connection);
+            busyConnections.record(borrowed.size());
+            return new Lease(connection).proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the connection back to the pool, its transaction is rolled back if it hasn't been finished.
+     * @param connection returned connection
+     */
+    private void release(PooledConnection connection) {
+        borrowed.remove(connection);
+        try {
+            if (!connection.physical.getAutoCommit()) {
+                connection.physical.rollback();
+                connection.physical.setAutoCommit(true);
+            }
+            if (closed) {
+                connection.closePhysical();
+            } else {
+                idle.offerFirst(connection);
+            }
+        } catch (SQLException e) {
+            log.warn("Broken connection is removed from the pool: " + e.getMessage());
+            connection.closePhysical();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Reports the connections held longer than the leak threshold
+     */
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection connection : borrowed) {
+            long heldMillis = now - connection.borrowedAt;
+            if (heldMillis > leakThresholdMillis && !connection.leakReported) {
+                connection.leakReported = true;
+                log.warn("Connection is held for " + heldMillis + " ms, possible leak", connection.borrowedBy);
+            }
+        }
+    }
+
+    /**
+     * Pool statistics: connections, waiting times, utilization and statement cache
+     * @return statistics as String
+     */
+    public String getStatistics() {
+        return String.format("connections: open=%d, busy=%d, idle=%d; %s; %s; statements: hits=%d, misses=%d",
+                created.get(), borrowed.size(), idle.size(), waitMicros, busyConnections,
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    public Histogram getWaitMicros() {
+        return waitMicros;
+    }
+
+    public Histogram getBusyConnections() {
+        return busyConnections;
+    }
+
+    /**
+     * Closes all idle connections, the borrowed ones are closed when they are returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        leakDetector.shutdownNow();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.closePhysical();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pool connections use the credentials of the wrapped DataSource");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+
+    /**
+     * Physical connection with its statement cache. Every borrower gets its own lease of the connection.
+     */
+    private class PooledConnection {
+
+        private final Connection physical;
+        private final Map<String, PreparedStatement> statements;
+
+        private volatile long borrowedAt;
+        private volatile Throwable borrowedBy;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > statementCacheSize) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private void borrow() {
+            borrowedAt = System.currentTimeMillis();
+            // Stack trace is only needed for the leak report
+            borrowedBy = leakThresholdMillis > 0 ? new Throwable("Connection taken here") : null;
+            leakReported = false;
+        }
+
+        /**
+         * Takes the statement from the cache or prepares a new one. The statement is removed from the cache
+         * while it is used, so the same SQL can be prepared twice at the same time.
+         */
+        private PreparedStatement cachedStatement(Lease lease, String key, Method method, Object[] args) throws Throwable {
+            PreparedStatement statement = statements.remove(key);
+            if (statement == null || statement.isClosed()) {
+                statementMisses.increment();
+                try {
+                    statement = (PreparedStatement) method.invoke(physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            } else {
+                statementHits.increment();
+            }
+            PreparedStatement physicalStatement = statement;
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new CachedStatement(lease, key, physicalStatement));
+        }
+
+        /**
+         * Puts the statement back to the cache
+         */
+        private synchronized void returnStatement(String key, PreparedStatement statement) {
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                PreparedStatement previous = statements.put(key, statement);
+                if (previous != null) {
+                    closeQuietly(previous);
+                }
+            } catch (SQLException e) {
+                closeQuietly(statement);
+            }
+        }
+
+        private synchronized void closePhysical() {
+            for (PreparedStatement statement : statements.values()) {
+                closeQuietly(statement);
+            }
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                log.warn(e.getMessage());
+            }
+            created.decrementAndGet();
+        }
+    }
+
+    /**
+     * One borrowing of a pooled connection. The caller gets the proxy of the lease, which returns the connection
+     * to the pool on the first close and takes prepared statements from the cache. A new lease is created
+     * for every borrower, so a handle kept after close can't return the connection of the next borrower.
+     */
+    private class Lease implements InvocationHandler {
+
+        private final PooledConnection connection;
+        private final Connection proxy;
+        private volatile boolean released;
+
+        private Lease(PooledConnection connection) {
+            this.connection = connection;
+            proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            synchronized (connection) {
+                String name = method.getName();
+                if (name.equals("close")) {
+                    if (!released) {
+                        released = true;
+                        release(connection);
+                    }
+                    return null;
+                }
+                if (name.equals("isClosed")) {
+                    return released || connection.physical.isClosed();
+                }
+                if (released) {
+                    throw new SQLException("Connection has been returned to the pool");
+                }
+                if (name.equals("prepareStatement") && args.length <= 2
+                        && (args.length == 1 || args[1] instanceof Integer)) {
+                    String key = args.length == 1 ? (String) args[0] : args[1] + ":" + args[0];
+                    return connection.cachedStatement(this, key, method, args);
+                }
+                try {
+                    return method.invoke(connection.physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepared statement from the cache, which goes back to the cache on close
+     */
+    private class CachedStatement implements InvocationHandler {
+
+        private final Lease lease;
+        private final String key;
+        private final PreparedStatement statement;
+        private boolean closed;
+
+        private CachedStatement(Lease lease, String key, PreparedStatement statement) {
+            this.lease = lease;
+            this.key = key;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    lease.connection.returnStatement(key, statement);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return closed || lease.released || statement.isClosed();
+            }
+            if (name.equals("getConnection")) {
+                return lease.proxy;
+            }
+            if (closed || lease.released) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            log.warn(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package dao.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Thread-safe in-memory inverted index of the message texts. Every term has a posting list with the ids
+ * of the messages containing it, sorted ascending, so the newest messages are at the end of the list.
+ * Message ids grow with time, so the search returns the newest matching messages without reading older ones.
+ * <p>
+ * Terms are lowercase runs of letters and digits, so "#Jazz" and "jazz!" are both found by "jazz".
+ * A query term ending with "*" matches all terms with this prefix, all terms of a query must match.
+ * Posting lists are appended without locking the readers: a reader always sees a sorted prefix of the list.
+ */
+public class InvertedIndex {
+
+    // Longer terms are cut, so a very long word can't inflate the dictionary
+    static final int MAX_TERM_LENGTH = 32;
+
+    // Prefix terms with more matching terms are cut, the rarest terms are dropped
+    private static final int MAX_PREFIX_TERMS = 256;
+
+    private volatile NavigableMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+
+    /**
+     * Adds the message to the index
+     * @param messageId id of the message
+     * @param text text of the message
+     */
+    public void add(long messageId, String text) {
+        NavigableMap<String, Postings> current = terms;
+        for (String term : tokenize(text)) {
+            current.computeIfAbsent(term, key -> new Postings()).add(messageId);
+        }
+    }
+
+    /**
+     * Finds the newest messages containing all terms of the query
+     * @param query terms separated by spaces, a term ending with "*" is a prefix
+     * @param beforeId only messages with smaller ids are returned
+     * @param limit maximal number of ids
+     * @return ids of the found messages, newest first, empty if the query has no terms
+     */
+    public long[] search(String query, long beforeId, int limit) {
+        NavigableMap<String, Postings> current = terms;
+        List<Matcher> matchers = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            for (String term : tokenize(word)) {
+                matchers.add(prefix ? prefixMatcher(current, term) : termMatcher(current, term));
+            }
+        }
+        if (matchers.isEmpty() || limit <= 0) {
+            return new long[0];
+        }
+
+        // Leapfrog join: every matcher jumps to the newest id, which is not newer than the current candidate,
+        // until all of them stop at the same id
+        long[] ids = new long[limit];
+        int count = 0;
+        long candidate = beforeId;
+        while (count < limit) {
+            candidate = matchers.get(0).previous(candidate);
+            int agreed = 1;
+            for (int i = 1; candidate > 0 && agreed < matchers.size(); i = (i + 1) % matchers.size()) {
+                long found = matchers.get(i).previous(candidate + 1);
+                if (found == candidate) {
+                    agreed++;
+                } else {
+                    candidate = found;
+                    agreed = 1;
+                }
+            }
+            if (candidate <= 0) {
+                break;
+            }
+            ids[count++] = candidate;
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Replaces the content of the index with the parts. The parts must cover increasing ranges of ids,
+     * so their posting lists are just concatenated. Messages added during the merge are lost.
+     * @param parts indexes of the ranges of messages, oldest first
+     */
+    public void load(List<InvertedIndex> parts) {
+        NavigableMap<String, Postings> merged = new ConcurrentSkipListMap<>();
+        for (InvertedIndex part : parts) {
+            for (Map.Entry<String, Postings> entry : part.terms.entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), key -> new Postings()).addAll(entry.getValue());
+            }
+        }
+        terms = merged;
+    }
+
+    /**
+     * Number of terms in the index
+     * @return number of terms
+     */
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Splits the text into distinct lowercase terms
+     * @param text any text, may be null
+     * @return terms in order of their first occurrence
+     */
+    static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        if (text == null) {
+            return result;
+        }
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean letter = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String term = text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT);
+                if (!result.contains(term)) {
+                    result.add(term);
+                }
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    private static Matcher termMatcher(NavigableMap<String, Postings> terms, String term) {
+        Postings postings = terms.get(term);
+        return postings == null ? before -> 0 : postings::previous;
+    }
+
+    /**
+     * Service method, which creates the union of all terms with the prefix
+     */
+    private static Matcher prefixMatcher(NavigableMap<String, Postings> terms, String prefix) {
+        List<Postings> lists = new ArrayList<>(terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+        if (lists.size() > MAX_PREFIX_TERMS) {
+            lists.sort((a, b) -> Integer.compare(b.size(), a.size()));
+            lists = lists.subList(0, MAX_PREFIX_TERMS);
+        }
+        Postings[] union = lists.toArray(new Postings[0]);
+        return before -> {
+            long newest = 0;
+            for (Postings postings : union) {
+                newest = Math.max(newest, postings.previous(before));
+            }
+            return newest;
+        };
+    }
+
+    /**
+     * Set of message ids, which can be walked from the newest to the oldest
+     */
+    private interface Matcher {
+
+        /**
+         * Finds the newest id in the set, which is smaller than the argument
+         * @param before upper bound, exclusive
+         * @return id or 0 if there is no such id
+         */
+        long previous(long before);
+    }
+
+    /**
+     * Sorted growable list of message ids. Writers are synchronized, readers are not locked:
+     * the size is published after the ids, and an id, which arrives out of order, is inserted into a copy,
+     * so a reader always sees a sorted list.
+     */
+    static class Postings {
+
+        private volatile long[] ids = new long[4];
+        private volatile int size;
+
+        synchronized void add(long id) {
+            long[] current = ids;
+            int count = size;
+            if (count > 0 && current[count - 1] >= id) {
+                int position = Arrays.binarySearch(current, 0, count, id);
+                if (position >= 0) {
+                    return;
+                }
+                position = -position - 1;
+                long[] copy = new long[count == current.length ? count * 2 : current.length];
+                System.arraycopy(current, 0, copy, 0, position);
+                copy[position] = id;
+                System.arraycopy(current, position, copy, position + 1, count - position);
+                ids = copy;
+                size = count + 1;
+                return;
+            }
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+                current[count] = id;
+                ids = current;
+            } else {
+                current[count] = id;
+            }
+            size = count + 1;
+        }
+
+        synchronized void addAll(Postings other) {
+            int count = other.size;
+            long[] otherIds = other.ids;
+            for (int i = 0; i < count; i++) {
+                add(otherIds[i]);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        long previous(long before) {
+            // Size is read first, so the ids are at least as new as the size
+            int count = size;
+            long[] current = ids;
+            int position = Arrays.binarySearch(current, 0, count, before);
+            position = position >= 0 ? position - 1 : -position - 2;
+            return position >= 0 ? current[position] : 0;
+        }
+    }
+}
@@ -8,7 +8,7 @@ import java.io.IOException;
 /**
  * Filter that sets the UTF-8 encoding to each request
  */
-@WebFilter("/*")
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
 public class CharsetFilter implements Filter {
     public void destroy() {
     }
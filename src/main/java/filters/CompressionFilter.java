@@ -0,0 +1,155 @@
+package filters;
+
+import javax.servlet.*;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Locale;
+
+/**
+ * Filter that compresses responses for clients, which accept gzip.
+ * <p>
+ * Static js and css files are served from their precompressed copies (".br" or ".gz" next to the file,
+ * created at build time), so they are never compressed at runtime.
+ * Text responses of servlets and JSPs are compressed on the fly: the body goes through a deflater, which is
+ * flushed together with the response, so streamed feeds reach the client tweet by tweet and the whole
+ * body is never buffered. Asynchronous handlers have to close the response writer before completing.
+ */
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
+public class CompressionFilter implements Filter {
+
+    // Responses of these types are compressed at runtime
+    private static final String[] COMPRESSIBLE_TYPES = {"text/html", "text/plain", "text/css",
+            "application/javascript", "text/javascript", "application/json", "image/svg+xml"};
+
+    // Static files, which may have precompressed copies
+    private static final String[] STATIC_EXTENSIONS = {".js", ".css"};
+
+    private ServletContext context;
+
+    public void destroy() {
+    }
+
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws ServletException, IOException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) resp;
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean gzip = accepts(acceptEncoding, "gzip");
+        response.addHeader("Vary", "Accept-Encoding");
+
+        String path = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        if (isStatic(path)) {
+            if ((accepts(acceptEncoding, "br") && servePrecompressed(request, response, path, "br"))
+                    || (gzip && servePrecompressed(request, response, path, "gzip"))) {
+                return;
+            }
+        }
+
+        if (!gzip) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        GzipResponseWrapper wrapper = new GzipResponseWrapper(response, COMPRESSIBLE_TYPES);
+        chain.doFilter(req, wrapper);
+
+        // Asynchronous responses are finished, when their writer is closed
+        if (!request.isAsyncStarted()) {
+            wrapper.finish();
+        }
+    }
+
+    public void init(FilterConfig config) throws ServletException {
+        context = config.getServletContext();
+    }
+
+    /**
+     * Service method, which writes the precompressed copy of the static file, if it exists
+     * @param request request of the static file
+     * @param response response
+     * @param path path of the static file in the web application
+     * @param encoding "br" or "gzip"
+     * @return true if the copy has been written
+     * @throws IOException if the copy can't be read or written
+     */
+    private boolean servePrecompressed(HttpServletRequest request, HttpServletResponse response,
+                                       String path, String encoding) throws IOException {
+        URL resource = context.getResource(path + (encoding.equals("br") ? ".br" : ".gz"));
+        if (resource == null) {
+            return false;
+        }
+        URLConnection connection = resource.openConnection();
+        long lastModified = connection.getLastModified() / 1000 * 1000;
+        if (lastModified > 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+            if (request.getDateHeader("If-Modified-Since") >= lastModified) {
+                connection.getInputStream().close();
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        String contentType = context.getMimeType(path);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setHeader("Content-Encoding", encoding);
+        long length = connection.getContentLengthLong();
+        if (length >= 0) {
+            response.setContentLengthLong(length);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+
+    private static boolean isStatic(String path) {
+        for (String extension : STATIC_EXTENSIONS) {
+            if (path.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the Accept-Encoding header allows the encoding
+     * @param acceptEncoding header value, may be null
+     * @param encoding encoding name
+     * @return true if the encoding or "*" is listed without q=0
+     */
+    static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String item : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] parts = item.split(";");
+            String name = parts[0].trim();
+            if (name.equals(encoding) || name.equals("*")) {
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            if (Double.parseDouble(parameter.substring(2)) <= 0) {
+                                return false;
+                            }
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
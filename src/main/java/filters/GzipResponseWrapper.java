@@ -0,0 +1,203 @@
+package filters;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response wrapper, which compresses the body with gzip, if its content type is compressible.
+ * The decision is made when the servlet takes the writer or the output stream, so the content type
+ * has to be set before. Flushing the response flushes the deflater, nothing is buffered beyond its window.
+ */
+class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+    // Bodies with known smaller length are not worth compressing
+    private static final long MIN_LENGTH = 256;
+
+    private final String[] compressibleTypes;
+    private long contentLength = -1;
+    private GzipOutputStream gzipStream;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    /**
+     * Constructor
+     * @param response response to wrap
+     * @param compressibleTypes content types to compress
+     */
+    GzipResponseWrapper(HttpServletResponse response, String[] compressibleTypes) {
+        super(response);
+        this.compressibleTypes = compressibleTypes;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (outputStream == null) {
+            outputStream = compress() ? gzipStream : super.getOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (outputStream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (writer == null) {
+            writer = compress()
+                    ? new PrintWriter(new OutputStreamWriter(gzipStream, getCharacterEncoding()))
+                    : super.getWriter();
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        setContentLengthLong(length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        // The compressed length is unknown, so the header is only set for uncompressed bodies
+        contentLength = length;
+        if (gzipStream == null) {
+            super.setContentLengthLong(length);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!(gzipStream != null && name.equalsIgnoreCase("Content-Length"))) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!(gzipStream != null && name.equalsIgnoreCase("Content-Length"))) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (outputStream != null) {
+            outputStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    /**
+     * Writes the rest of the compressed body. Called by the filter after the servlet has finished.
+     * @throws IOException if the body can't be written
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+    }
+
+    /**
+     * Service method, which decides whether the body is compressed and prepares the headers
+     * @return true if the body goes through gzip
+     * @throws IOException if the output stream is not available
+     */
+    private boolean compress() throws IOException {
+        if (gzipStream != null) {
+            return true;
+        }
+        int status = getStatus();
+        if (status < 200 || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED
+                || containsHeader("Content-Encoding") || !isCompressible(getContentType())
+                || (contentLength >= 0 && contentLength < MIN_LENGTH)) {
+            return false;
+        }
+        setHeader("Content-Encoding", "gzip");
+        super.setContentLengthLong(-1);
+        gzipStream = new GzipOutputStream(super.getOutputStream());
+        return true;
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        for (String compressibleType : compressibleTypes) {
+            if (type.startsWith(compressibleType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Servlet output stream, which writes through the deflater. Flush uses SYNC_FLUSH,
+     * so everything written so far can be decompressed by the client at once.
+     */
+    private static class GzipOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream out;
+        private final GZIPOutputStream gzip;
+        private boolean finished;
+
+        private GzipOutputStream(ServletOutputStream out) throws IOException {
+            this.out = out;
+            gzip = new GZIPOutputStream(out, 8192, true);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            gzip.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            gzip.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!finished) {
+                gzip.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            out.close();
+        }
+
+        private void finish() throws IOException {
+            if (!finished) {
+                finished = true;
+                gzip.finish();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
@@ -10,7 +10,7 @@ import java.util.Locale;
 /**
  * Filter that changes the locale session attribute if there is such parameter in request.
  */
-@WebFilter("/*")
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
 public class LocaleFilter implements Filter {
     public void destroy() {
     }
@@ -26,7 +26,10 @@ public class ContextInitListener implements ServletContextListener {
         ServletContext context = sce.getServletContext();
         context.setAttribute("countries", Countries.values());
         try {
-            HashGenerator hashGenerator = new HashGenerator();
+            String iterations = context.getInitParameter("hashIterations");
+            HashGenerator hashGenerator = iterations == null
+                    ? new HashGenerator()
+                    : new HashGenerator(Integer.parseInt(iterations));
             context.setAttribute("hashGenerator", hashGenerator);
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
@@ -1,27 +1,31 @@
 package listeners;
 
-import dao.DaoFactory;
+import dao.async.AsyncDaoFactory;
+import dao.cache.CachingDaoFactory;
+import dao.cache.LikeBufferDaoFactory;
 import dao.h2.H2DaoFactory;
-import model.Countries;
+import dao.h2.H2MigrationRunner;
+import dao.pool.ConnectionPool;
+import org.h2.jdbcx.JdbcDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import services.DataGenerator;
+import services.FeedVersion;
 import services.HashGenerator;
+import services.TrendingHashtags;
+import services.TweetEvents;
 
 import javax.annotation.Resource;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 import javax.sql.DataSource;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.sql.*;
-import java.time.LocalDateTime;
-import java.util.Random;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Initializes the database and sets it as "dataSource" servlet context attribute.
@@ -35,53 +39,159 @@ public class DatabaseInitListener implements ServletContextListener {
 
     private static final Logger log = LoggerFactory.getLogger(DatabaseInitListener.class);
 
+    // How often like counters are checked against the Likes table
+    private static final long RECONCILE_PERIOD_MINUTES = 60;
+
+    // Size and time to live of the user and instrument caches
+    private static final int CACHE_SIZE = 10000;
+    private static final long CACHE_TTL_MINUTES = 10;
+
+    // Size of the like batch and maximal time before the pressed likes are written to the database
+    private static final int LIKE_BATCH_SIZE = 500;
+    private static final long LIKE_FLUSH_MILLIS = 1000;
+
+    // Connection pool settings
+    private static final int POOL_SIZE = 20;
+    private static final long POOL_TIMEOUT_MILLIS = 5000;
+    private static final long POOL_LEAK_THRESHOLD_MILLIS = 30000;
+    private static final int STATEMENT_CACHE_SIZE = 50;
+
+    // Feed requests, which can wait for a free DAO thread, the rest is rejected
+    private static final int DAO_QUEUE_SIZE = 1000;
+
+    // In-memory database for the embedded runtime without the jdbc/mtdb resource,
+    // a file database is used only if it is set with the "jdbcUrl" parameter
+    private static final String DEFAULT_JDBC_URL = "jdbc:h2:mem:mtdb;DB_CLOSE_DELAY=-1";
+
+    // Open event streams, events waiting for a slow stream, writer threads and heartbeat period of the streams
+    private static final int EVENT_STREAMS = 10000;
+    private static final int EVENT_QUEUE_SIZE = 16;
+    private static final int EVENT_WRITERS = 4;
+    private static final long EVENT_HEARTBEAT_MILLIS = 15000;
+
+    // Trending hashtags: size of the top and the window of 12 buckets by 5 minutes
+    private static final int TREND_COUNT = 10;
+    private static final int TREND_BUCKETS = 12;
+    private static final long TREND_BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // Generated content of the new database, can be changed with the "seedUsers", "seedTweetsPerUser",
+    // "seedSubscriptionsPerUser" and "seedLikesPerUser" parameters
+    private static final int SEED_USERS = 100;
+    private static final int SEED_TWEETS_PER_USER = 5;
+    private static final int SEED_SUBSCRIPTIONS_PER_USER = 5;
+    private static final int SEED_LIKES_PER_USER = 5;
+    private static final int SEED_THREADS = 4;
+
+    private ScheduledExecutorService scheduler;
+    private CachingDaoFactory daoFactory;
+    private AsyncDaoFactory asyncDaoFactory;
+    private final FeedVersion feedVersion = new FeedVersion();
+    private TweetEvents tweetEvents;
+    private final TrendingHashtags trendingHashtags = new TrendingHashtags(TREND_COUNT, TREND_BUCKETS, TREND_BUCKET_MILLIS);
+    private ConnectionPool connectionPool;
+
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         log.info("Database initialization started...");
-        Pattern pattern = Pattern.compile("^\\d+\\.sql$");
-        Path sqlPath = Paths.get(sce.getServletContext().getRealPath("/WEB-INF/classes/sql"));
-        try (Connection connection = dataSource.getConnection();
-             Statement statement = connection.createStatement()) {
-            DirectoryStream<Path> paths = Files.newDirectoryStream(sqlPath);
-            for (Path filePath : paths) {
-                if (pattern.matcher(filePath.toFile().getName()).find()) {
-                    statement.addBatch(
-                            Files.lines(filePath)
-                                    .collect(Collectors.joining())
-                    );
-                }
-            }
+        if (dataSource == null) {
+            String url = sce.getServletContext().getInitParameter("jdbcUrl");
+            JdbcDataSource h2DataSource = new JdbcDataSource();
+            h2DataSource.setURL(url == null ? DEFAULT_JDBC_URL : url);
+            dataSource = h2DataSource;
+            log.info("jdbc/mtdb resource is not found, using " + h2DataSource.getURL());
+        }
+        connectionPool = new ConnectionPool(dataSource, POOL_SIZE, POOL_TIMEOUT_MILLIS,
+                POOL_LEAK_THRESHOLD_MILLIS, STATEMENT_CACHE_SIZE);
 
-            // Autogenerating tweets
-
-            HashGenerator hashGenerator = (HashGenerator) sce.getServletContext().getAttribute("hashGenerator");
-            Random rand = new Random();
-
-            for (int user = 6; user < 100; user++) {
-                statement.addBatch("INSERT INTO Users (login, password, first_name, last_name, country) " +
-                        "VALUES ('User" + user + "', " +
-                        "'" + hashGenerator.getHash("pass") + "', " +
-                        "'Auto', " +
-                        "'Generated', " +
-                        "'" + Countries.values()[rand.nextInt(4)].toString() + "');");
-                statement.addBatch("INSERT INTO Users_Instruments (user_id, instrument_id) VALUES (" + user + " , " + (rand.nextInt(5) + 1) + ");");
-                statement.addBatch("INSERT INTO Users_Instruments (user_id, instrument_id) VALUES (" + user  + " , " + (rand.nextInt(5) + 6) + ");");
-                for (int msg = 0; msg < rand.nextInt((5)+1); msg++) {
-                    statement.addBatch("INSERT INTO Messages (user_id, message_date, message_text) VALUES " +
-                            "(" + user + ", '" + Timestamp.valueOf(LocalDateTime.now()).toString() + "', 'Auto generated tweet about music #" + msg + "');");
-                    Thread.sleep(1);
-                }
+        H2MigrationRunner migrationRunner = new H2MigrationRunner(connectionPool);
+        try {
+            boolean emptyDatabase = migrationRunner.getCurrentVersion() == 0;
+            migrationRunner.migrate();
+
+            // Autogenerating content, only for the new database
+            if (emptyDatabase) {
+                ServletContext context = sce.getServletContext();
+                HashGenerator hashGenerator = (HashGenerator) context.getAttribute("hashGenerator");
+                new DataGenerator(connectionPool, SEED_THREADS, System.nanoTime()).generate(
+                        getIntParameter(context, "seedUsers", SEED_USERS),
+                        getIntParameter(context, "seedTweetsPerUser", SEED_TWEETS_PER_USER),
+                        getIntParameter(context, "seedSubscriptionsPerUser", SEED_SUBSCRIPTIONS_PER_USER),
+                        getIntParameter(context, "seedLikesPerUser", SEED_LIKES_PER_USER),
+                        hashGenerator.getHash("pass"));
             }
-            statement.executeBatch();
         } catch (SQLException e) {
             log.warn("SQL script problems: " + e.getMessage());
         } catch (IOException e) {
             log.warn("SQL file error:" + e.getMessage());
-        } catch (InterruptedException e) {
-            log.warn(e.getMessage());
         }
 
-        DaoFactory daoFactory = new H2DaoFactory(dataSource);
+        // Likes are written in batches, users and instruments are cached
+        daoFactory = new CachingDaoFactory(
+                new LikeBufferDaoFactory(new H2DaoFactory(connectionPool), LIKE_BATCH_SIZE, LIKE_FLUSH_MILLIS),
+                CACHE_SIZE, TimeUnit.MINUTES.toMillis(CACHE_TTL_MINUTES));
+
+        // Generated tweets and instruments bypass the DAO, so subscription feeds, instruments labels,
+        // the search index and the recent messages of countries and instruments are built from scratch
+        daoFactory.getTimelineDao().rebuildTimelines();
+        daoFactory.getInstrumentDao().rebuildInstrumentsLabels();
+        daoFactory.getMessageDao().rebuildSearchIndex();
+        daoFactory.getMessageDao().rebuildRecentMessages();
+
+        // Periodically fixes the like counters, if they have drifted from the Likes table.
+        // The first check waits a full period, the counters have just been loaded or generated
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(() -> {
+            int fixed = daoFactory.getLikeDao().reconcileLikeCounts();
+            if (fixed > 0) {
+                log.warn("Like counters fixed for " + fixed + " messages");
+                feedVersion.changed(FeedVersion.LIKES);
+            }
+            log.info("DAO caches: " + daoFactory.getStatistics());
+            log.info("Connection pool: " + connectionPool.getStatistics());
+        }, RECONCILE_PERIOD_MINUTES, RECONCILE_PERIOD_MINUTES, TimeUnit.MINUTES);
+
+        // Feed servlets call the DAOs on their own threads, one thread for every pooled connection
+        asyncDaoFactory = new AsyncDaoFactory(daoFactory, POOL_SIZE, DAO_QUEUE_SIZE);
+
+        // New tweets are pushed to the subscribers, who have the main page open
+        tweetEvents = new TweetEvents(EVENT_STREAMS, EVENT_QUEUE_SIZE, EVENT_WRITERS, EVENT_HEARTBEAT_MILLIS);
+
         sce.getServletContext().setAttribute("daoFactory", daoFactory);
+        sce.getServletContext().setAttribute("asyncDaoFactory", asyncDaoFactory);
+        sce.getServletContext().setAttribute("feedVersion", feedVersion);
+        sce.getServletContext().setAttribute("tweetEvents", tweetEvents);
+        sce.getServletContext().setAttribute("trendingHashtags", trendingHashtags);
+    }
+
+    private static int getIntParameter(ServletContext context, String name, int defaultValue) {
+        String value = context.getInitParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (tweetEvents != null) {
+            tweetEvents.close();
+        }
+
+        // Finishes the started DAO calls
+        if (asyncDaoFactory != null) {
+            asyncDaoFactory.close();
+        }
+
+        // Writes the buffered likes
+        if (daoFactory != null) {
+            try {
+                daoFactory.close();
+            } catch (Exception e) {
+                log.warn("DAO factory is not closed: " + e.getMessage());
+            }
+        }
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
     }
 }
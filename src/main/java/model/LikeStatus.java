@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * DTO class that represents the state of a message for the user after the like has been pressed
+ */
+public class LikeStatus {
+
+    // true if the user likes the message
+    private boolean liked;
+
+    // total number of likes of the message
+    private int likeCount;
+
+    /**
+     * No-args constructor of the LikeStatus instance
+     */
+    public LikeStatus() {
+    }
+
+    /**
+     * All-args constructor of the LikeStatus instance
+     * @param liked true if the user likes the message
+     * @param likeCount total number of likes of the message
+     */
+    public LikeStatus(boolean liked, int likeCount) {
+        this.liked = liked;
+        this.likeCount = likeCount;
+    }
+
+    public boolean isLiked() {
+        return liked;
+    }
+
+    public void setLiked(boolean liked) {
+        this.liked = liked;
+    }
+
+    public int getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(int likeCount) {
+        this.likeCount = likeCount;
+    }
+}
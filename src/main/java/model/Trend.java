@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * DTO class that represents a trending hashtag with its estimated number of recent tweets
+ */
+public class Trend {
+
+    // hashtag without "#", in lower case
+    private String hashtag;
+
+    // estimated number of tweets with the hashtag in the window
+    private long count;
+
+    /**
+     * No-args constructor of the Trend instance
+     */
+    public Trend() {
+    }
+
+    /**
+     * All-args constructor of the Trend instance
+     * @param hashtag hashtag without "#"
+     * @param count estimated number of tweets
+     */
+    public Trend(String hashtag, long count) {
+        this.hashtag = hashtag;
+        this.count = count;
+    }
+
+    public String getHashtag() {
+        return hashtag;
+    }
+
+    public void setHashtag(String hashtag) {
+        this.hashtag = hashtag;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,89 @@
+package model;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * DTO class that represents a position in a feed: date and id of the last tweet that has been shown.
+ * Feeds are ordered by date and id, newest first, so the next page contains only tweets "older" than the cursor.
+ */
+public class TweetCursor {
+
+    // Separates date and id in the string form of the cursor
+    private static final char SEPARATOR = '_';
+
+    // Date of the last shown tweet
+    private LocalDateTime messageDate;
+
+    // Id of the last shown tweet
+    private long messageId;
+
+    /**
+     * All-args constructor for TweetCursor instance
+     * @param messageDate date of the last shown tweet
+     * @param messageId id of the last shown tweet
+     */
+    public TweetCursor(LocalDateTime messageDate, long messageId) {
+        this.messageDate = messageDate;
+        this.messageId = messageId;
+    }
+
+    /**
+     * Creates the cursor, which points right after the specified message
+     * @param message last shown message
+     */
+    public TweetCursor(Message message) {
+        this(message.getMessageDate(), message.getMessageId());
+    }
+
+    /**
+     * Returns the cursor for the first page of any feed, it is "newer" than any tweet.
+     * @return cursor for the first page
+     */
+    public static TweetCursor first() {
+        return new TweetCursor(LocalDateTime.of(9999, 12, 31, 23, 59), Long.MAX_VALUE);
+    }
+
+    /**
+     * Parses the cursor from its string form, made by toString().
+     * Returns the cursor for the first page if the string is empty.
+     * @param cursor string form of the cursor, comes from the client
+     * @return TweetCursor or null if the string is malformed
+     */
+    public static TweetCursor valueOf(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return first();
+        }
+        int separator = cursor.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return new TweetCursor(LocalDateTime.parse(cursor.substring(0, separator)),
+                    Long.parseLong(cursor.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public LocalDateTime getMessageDate() {
+        return messageDate;
+    }
+
+    public void setMessageDate(LocalDateTime messageDate) {
+        this.messageDate = messageDate;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(long messageId) {
+        this.messageId = messageId;
+    }
+
+    @Override
+    public String toString() {
+        return messageDate.toString() + SEPARATOR + messageId;
+    }
+}
@@ -24,30 +24,34 @@ public class AddNewInstruments {
      * @throws SQLException if something goes wrong
      */
     public static void addNewInstruments(String instrument, DaoFactory daoFactory, HttpSession session, User user) throws SQLException {
-        if (instrument != null && !instrument.isEmpty()) {
-            String[] instrumentsArray = instrument.trim().toLowerCase().split("[\\s\\.,]+");
-            List<Instrument> instrumentsAll = daoFactory.getInstrumentDao().getAllInstruments();
-            List<Instrument> instrumentsToAdd = new ArrayList<>();
-            boolean flag;
-            for (String anInstrumentsArray : instrumentsArray) {
-                flag = true;
-                for (Instrument inst : instrumentsAll) {
-                    if (inst.getInstrumentName().equals(anInstrumentsArray)) {
-                        flag = false;
-                        break;
+        // All changes are made in one transaction, so the user never stays with a part of the instruments
+        List<Instrument> userInstruments = daoFactory.inTransaction(factory -> {
+            if (instrument != null && !instrument.isEmpty()) {
+                String[] instrumentsArray = instrument.trim().toLowerCase().split("[\\s\\.,]+");
+                List<Instrument> instrumentsAll = factory.getInstrumentDao().getAllInstruments();
+                List<Instrument> instrumentsToAdd = new ArrayList<>();
+                boolean flag;
+                for (String anInstrumentsArray : instrumentsArray) {
+                    flag = true;
+                    for (Instrument inst : instrumentsAll) {
+                        if (inst.getInstrumentName().equals(anInstrumentsArray)) {
+                            flag = false;
+                            break;
+                        }
+                    }
+                    if (flag) {
+                        instrumentsToAdd.add(new Instrument(0, anInstrumentsArray));
                     }
                 }
-                if (flag) {
-                    instrumentsToAdd.add(new Instrument(0, anInstrumentsArray));
+                if (instrumentsToAdd.size() > 0) {
+                    factory.getInstrumentDao().createInstruments(instrumentsToAdd);
                 }
+                factory.getInstrumentDao().setInstrumentsToUser(user.getUserId(), instrumentsArray);
+            } else {
+                factory.getInstrumentDao().deleteAllUserInstruments(user.getUserId());
             }
-            if (instrumentsToAdd.size() > 0) {
-                daoFactory.getInstrumentDao().createInstruments(instrumentsToAdd);
-            }
-            daoFactory.getInstrumentDao().setInstrumentsToUser(user.getUserId(), instrumentsArray);
-        } else {
-            daoFactory.getInstrumentDao().deleteAllUserInstruments(user.getUserId());
-        }
-        session.setAttribute("Instruments", daoFactory.getInstrumentDao().getUserInstruments(user.getUserId()));
+            return factory.getInstrumentDao().getUserInstruments(user.getUserId());
+        });
+        session.setAttribute("Instruments", userInstruments);
     }
 }
@@ -0,0 +1,162 @@
+package services;
+
+import model.Tweet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Service class with static method for rendering feeds asynchronously
+ */
+public class AsyncFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncFeed.class);
+
+    // Tweets on one page and the most pages one reload of a feed may ask for
+    public static final int PAGE_SIZE = 20;
+    public static final int MAX_PAGES = 10;
+
+    // The query is bounded by the connection pool timeout, this one stops the requests, which are never completed
+    private static final long FEED_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Puts the request into asynchronous mode and starts the feed query on a DAO thread, which reads the page
+     * into memory. The page is written to the response on a container thread after the query has released
+     * its DAO thread and connection, so a slow client never holds them. The container thread is released at once.
+     * The page is written as html by default or as JSON, if the request has "format=json" parameter.
+     * If the query can't be started, because all DAO threads are busy, or doesn't finish in time,
+     * the response status is 503.
+     * @param request feed request
+     * @param response feed response
+     * @param subscriptions ids of the users, the current user is subscribed to
+     * @param bundle resource bundle with localized labels
+     * @param formatter formatter of the tweets' dates
+     * @param query starts the query with the given tweet handler
+     */
+    public static void render(HttpServletRequest request, HttpServletResponse response, LongHashSet subscriptions,
+                              ResourceBundle bundle, DateTimeFormatter formatter,
+                              Function<Consumer<Tweet>, CompletableFuture<Void>> query) {
+        boolean json = isJson(request);
+        response.setContentType(json ? "application/json; charset=UTF-8" : "text/html; charset=UTF-8");
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(FEED_TIMEOUT_MILLIS);
+
+        // Either the page or the timeout completes the response, whichever comes first
+        AtomicBoolean completed = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                if (completed.compareAndSet(false, true)) {
+                    log.warn("Feed is not loaded in time");
+                    response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                completed.set(true);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        List<Tweet> page = new ArrayList<>();
+        query.apply(page::add).whenComplete((result, e) -> {
+            if (completed.compareAndSet(false, true)) {
+                asyncContext.start(() -> write(asyncContext, response, json, page, e, subscriptions, bundle, formatter));
+            }
+        });
+    }
+
+    /**
+     * Service method, which writes the page read by the query and completes the response
+     * @param asyncContext context of the request
+     * @param response feed response
+     * @param json true for JSON, false for html
+     * @param page tweets of the page
+     * @param e exception of the query, null if it has succeeded
+     * @param subscriptions ids of the users, the current user is subscribed to
+     * @param bundle resource bundle with localized labels
+     * @param formatter formatter of the tweets' dates
+     */
+    private static void write(AsyncContext asyncContext, HttpServletResponse response, boolean json, List<Tweet> page,
+                              Throwable e, LongHashSet subscriptions, ResourceBundle bundle, DateTimeFormatter formatter) {
+        try {
+            if (e == null) {
+                PrintWriter out = response.getWriter();
+                FeedWriter renderer = json
+                        ? new JsonFeedWriter(out, subscriptions, formatter)
+                        : new ProcessTweets(out, subscriptions, bundle, formatter);
+                page.forEach(renderer);
+                renderer.finish();
+                out.close();
+            } else {
+                log.warn("Feed is not loaded: " + e.getMessage());
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            }
+        } catch (IOException ex) {
+            log.warn("Feed is not written: " + ex.getMessage());
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Number of tweets requested: one page, or all pages shown so far, when the feed is reloaded
+     * with "resetLimit" and "pageCount" parameters. The page count is clamped to 1..MAX_PAGES.
+     * @param request feed request
+     * @return number of tweets, 0 if the page count is not a number
+     */
+    public static int getLimit(HttpServletRequest request) {
+        if (!isReload(request)) {
+            return PAGE_SIZE;
+        }
+        try {
+            int pageCount = Integer.parseInt(request.getParameter("pageCount").trim());
+            return Math.min(Math.max(pageCount, 1), MAX_PAGES) * PAGE_SIZE;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Checks whether all pages shown so far are reloaded, starting from the newest tweet
+     * @param request feed request
+     * @return true for "resetLimit" and non-empty "pageCount" parameters
+     */
+    public static boolean isReload(HttpServletRequest request) {
+        String pageCount = request.getParameter("pageCount");
+        return request.getParameter("resetLimit") != null && pageCount != null && !pageCount.isEmpty();
+    }
+
+    /**
+     * Checks whether the feed is requested as JSON
+     * @param request feed request
+     * @return true for "format=json" parameter
+     */
+    public static boolean isJson(HttpServletRequest request) {
+        return "json".equals(request.getParameter("format"));
+    }
+}
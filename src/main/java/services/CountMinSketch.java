@@ -0,0 +1,91 @@
+package services;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min Sketch: approximate counters of any number of keys in a fixed table of depth x width counters.
+ * Every row counts the keys with its own hash, an estimate is the minimum over the rows, so it may be too big
+ * because of collisions, but never too small. Sketches of the same size can be added and subtracted,
+ * which lets sliding windows drop their oldest part. Not thread-safe.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+
+    /**
+     * Creates the empty sketch
+     * @param depth number of rows (hash functions)
+     * @param width number of counters in a row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        counters = new long[depth * this.width];
+    }
+
+    /**
+     * Increases the counter of the key
+     * @param key key to count
+     * @param count increment
+     */
+    public void add(String key, long count) {
+        int hash = key.hashCode();
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + index(hash, row)] += count;
+        }
+    }
+
+    /**
+     * Estimated counter of the key
+     * @param key key
+     * @return estimate, which is never smaller than the real counter
+     */
+    public long estimate(String key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Adds all counters of the other sketch
+     * @param other sketch of the same size
+     */
+    public void add(CountMinSketch other) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+    }
+
+    /**
+     * Subtracts all counters of the other sketch, which must have been added before
+     * @param other sketch of the same size
+     */
+    public void subtract(CountMinSketch other) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] -= other.counters[i];
+        }
+    }
+
+    /**
+     * Resets all counters
+     */
+    public void clear() {
+        Arrays.fill(counters, 0);
+    }
+
+    /**
+     * Service method, which derives the hash of the row from the key hash, mixing it with the row number
+     */
+    private int index(int hash, int row) {
+        long mixed = (hash ^ ((long) row << 32)) * 0x9E3779B97F4A7C15L;
+        mixed ^= mixed >>> 29;
+        mixed *= 0xBF58476D1CE4E5B9L;
+        mixed ^= mixed >>> 32;
+        return (int) mixed & (width - 1);
+    }
+}
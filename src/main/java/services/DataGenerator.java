@@ -0,0 +1,600 @@
+package services;
+
+import dao.DaoFactory;
+import dao.h2.H2DaoFactory;
+import dao.h2.H2MigrationRunner;
+import model.Countries;
+import org.h2.jdbcx.JdbcDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Bulk generator of the test content: users with instruments, tweets, subscriptions and likes.
+ * <p>
+ * The content is skewed like in a real service: followers and likes go to the popular users by Zipf's law,
+ * the number of tweets, subscriptions and likes of a user is exponentially distributed, and tweets are posted
+ * in bursts of several messages a few minutes apart, spread over the last days.
+ * <p>
+ * Every user has his own random streams, derived from the seed, so the users are generated in parallel:
+ * every worker takes a range of users and writes them with parameterized JDBC batches over its own connection.
+ * Users and messages get explicit ids after the current maximum, which are reserved by moving the sequences,
+ * so the generator is meant for a database without concurrent writers. The dates of all tweets are generated
+ * first, and the message ids are given in the order of the dates, so the ids grow with time like the ids
+ * of the tweets posted live, which the search relies on. The likes are generated twice,
+ * first to count them, then to write them, so the messages are inserted with their final like counters.
+ * Timelines are not filled, they are rebuilt by the TimelineDao afterwards.
+ * <p>
+ * Can be run standalone: DataGenerator jdbcUrl [users [tweetsPerUser [subscriptionsPerUser [likesPerUser [threads]]]]]
+ */
+public class DataGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(DataGenerator.class);
+
+    // Rows in one batch, every batch is committed
+    private static final int BATCH_SIZE = 1000;
+
+    // Zipf's exponent of the popularity of users and hashtags
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    // Tweets are posted during the last days, in bursts of several tweets a few minutes apart
+    private static final long HISTORY_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final double TWEETS_PER_BURST = 3;
+    private static final double BURST_GAP_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // Random picks per wanted subscription or like, before a user with few candidates gives up
+    private static final int ATTEMPTS_PER_PICK = 20;
+
+    // Instruments of every user
+    private static final int INSTRUMENTS_PER_USER = 2;
+
+    // Hashtags of the generated tweets, the first ones are the most popular
+    private static final String[] HASHTAGS = {"music", "rock", "jazz", "concert", "guitar", "blues", "newalbum",
+            "drums", "jam", "pop", "vocals", "metal", "piano", "bass", "folk", "punk", "indie", "soul", "funk",
+            "classical", "flamenco", "reggae", "rehearsal", "tour", "vinyl"};
+
+    // Default scale of the standalone run
+    private static final int DEFAULT_USERS = 100000;
+    private static final int DEFAULT_TWEETS_PER_USER = 20;
+    private static final int DEFAULT_SUBSCRIPTIONS_PER_USER = 20;
+    private static final int DEFAULT_LIKES_PER_USER = 20;
+
+    // Independent random streams of every user
+    private static final long PROFILE_STREAM = 1;
+    private static final long SUBSCRIPTIONS_STREAM = 2;
+    private static final long LIKES_STREAM = 3;
+    private static final long DATES_STREAM = 4;
+
+    // Bits of the message offset in the sort key of the message dates
+    private static final int OFFSET_BITS = 31;
+
+    private static final String INSERT_USER_SQL =
+            "INSERT INTO Users (user_id, login, password, first_name, last_name, country, instruments) " +
+                    "VALUES (?, ?, ?, 'Auto', 'Generated', ?, ?);";
+
+    private static final String INSERT_USER_INSTRUMENT_SQL =
+            "INSERT INTO Users_Instruments (user_id, instrument_id) VALUES (?, ?);";
+
+    private static final String INSERT_MESSAGE_SQL =
+            "INSERT INTO Messages (message_id, user_id, message_date, message_text, like_count) VALUES (?, ?, ?, ?, ?);";
+
+    private static final String INSERT_SUBSCRIPTION_SQL =
+            "INSERT INTO Subscriptions (user_id, subscripted_user_id) VALUES (?, ?);";
+
+    private static final String INSERT_LIKE_SQL =
+            "INSERT INTO Likes (user_id, message_id) VALUES (?, ?);";
+
+    private static final String GET_INSTRUMENTS_SQL =
+            "SELECT instrument_id, instrument_name FROM Instruments ORDER BY instrument_id;";
+
+    private final DataSource dataSource;
+    private final int threads;
+    private final long seed;
+
+    // Ids of the content added by the last run
+    private volatile long firstUserId;
+    private volatile long lastMessageId;
+
+    /**
+     * Creates the generator
+     * @param dataSource database with the current schema, must give at least threads connections
+     * @param threads number of parallel workers
+     * @param seed seed of the random content, the same seed gives the same content
+     */
+    public DataGenerator(DataSource dataSource, int threads, long seed) {
+        this.dataSource = dataSource;
+        this.threads = Math.max(1, threads);
+        this.seed = seed;
+    }
+
+    /**
+     * Fills the database standalone: applies the migrations, generates the content with the password "pass"
+     * for all users and builds the timelines
+     * @param args jdbcUrl [users [tweetsPerUser [subscriptionsPerUser [likesPerUser [threads]]]]]
+     * @throws Exception if the database can't be filled
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: DataGenerator jdbcUrl [users [tweetsPerUser [subscriptionsPerUser " +
+                    "[likesPerUser [threads]]]]]");
+            return;
+        }
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(args[0]);
+        new H2MigrationRunner(dataSource).migrate();
+
+        DataGenerator generator = new DataGenerator(dataSource,
+                intArgument(args, 5, Runtime.getRuntime().availableProcessors()), System.nanoTime());
+        generator.generate(intArgument(args, 1, DEFAULT_USERS),
+                intArgument(args, 2, DEFAULT_TWEETS_PER_USER),
+                intArgument(args, 3, DEFAULT_SUBSCRIPTIONS_PER_USER),
+                intArgument(args, 4, DEFAULT_LIKES_PER_USER),
+                new HashGenerator().getHash("pass"));
+
+        DaoFactory daoFactory = new H2DaoFactory(dataSource);
+        daoFactory.getTimelineDao().rebuildTimelines();
+        daoFactory.close();
+    }
+
+    /**
+     * Adds the generated users with their instruments, tweets, subscriptions and likes
+     * @param users number of new users
+     * @param tweetsPerUser average number of tweets of a user
+     * @param subscriptionsPerUser average number of subscriptions of a user
+     * @param likesPerUser average number of likes of a user
+     * @param passwordHash password hash of all new users, hashed once
+     * @throws SQLException if the content can't be inserted, the batches committed before stay in the database
+     */
+    public void generate(int users, int tweetsPerUser, int subscriptionsPerUser, int likesPerUser,
+                         String passwordHash) throws SQLException {
+        if (users <= 0) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        Content content = new Content(users, tweetsPerUser, subscriptionsPerUser, likesPerUser, passwordHash, started);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            run(workers, users, content::pickDates);
+            content.assignMessageIds();
+            run(workers, users, content::countLikes);
+            run(workers, users, content::insertUsers);
+            run(workers, users, content::insertMessages);
+            run(workers, users, content::insertSubscriptionsAndLikes);
+        } finally {
+            workers.shutdownNow();
+        }
+        firstUserId = content.firstUserId;
+        lastMessageId = content.firstMessageId + content.getMessageCount() - 1;
+        log.info("Generated " + users + " users and " + content.getMessageCount() + " tweets in "
+                + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    /**
+     * Id of the first user added by the last run, the users have sequential ids
+     * @return user id, 0 if nothing has been generated
+     */
+    public long getFirstUserId() {
+        return firstUserId;
+    }
+
+    /**
+     * Id of the last message added by the last run, the newest message id in the database
+     * @return message id, 0 if nothing has been generated
+     */
+    public long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    /**
+     * Service method, which splits the users into a range for every worker and waits for all ranges
+     */
+    private void run(ExecutorService workers, int users, RangeTask task) throws SQLException {
+        List<Future<Void>> futures = new ArrayList<>(threads);
+        for (int worker = 0; worker < threads; worker++) {
+            int from = (int) ((long) users * worker / threads);
+            int to = (int) ((long) users * (worker + 1) / threads);
+            futures.add(workers.submit((Callable<Void>) () -> {
+                task.run(from, to);
+                return null;
+            }));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Data generation is interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    private static int intArgument(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private static long maxId(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Exponentially distributed count
+     */
+    private static int exponential(SplittableRandom random, double mean) {
+        return (int) (-Math.log(1 - random.nextDouble()) * mean);
+    }
+
+    /**
+     * Work on a range of users: from inclusive, to exclusive
+     */
+    private interface RangeTask {
+        void run(int from, int to) throws SQLException;
+    }
+
+    /**
+     * Zipf's distribution over ranks 0 .. n - 1, sampled by the binary search in the cumulative probabilities
+     */
+    static class Zipf {
+
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int rank = 0; rank < n; rank++) {
+                sum += 1 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+
+    /**
+     * Content of one run: ids, distributions and the per user counters, shared by the workers
+     */
+    private class Content {
+
+        private final int users;
+        private final int tweetsPerUser;
+        private final int subscriptionsPerUser;
+        private final int likesPerUser;
+        private final String passwordHash;
+        private final long now;
+
+        private final long firstUserId;
+        private final long firstMessageId;
+        private final long[] instrumentIds;
+        private final String[] instrumentNames;
+
+        // Popularity: rank of a user by Zipf's law, mapped to a user by a stride coprime to the number of users,
+        // so the popular users are spread over all ranges
+        private final Zipf popularity;
+        private final long stride;
+        private final Zipf hashtags = new Zipf(HASHTAGS.length, ZIPF_EXPONENT);
+
+        // Messages of the user i have the offsets messageOffsets[i] .. messageOffsets[i + 1] - 1,
+        // the message with the offset has the date messageDates[offset] and the id firstMessageId + messageRanks[offset]
+        private final long[] messageOffsets;
+        private final long[] messageDates;
+        private final int[] messageRanks;
+        private final AtomicIntegerArray likeCounts;
+
+        private Content(int users, int tweetsPerUser, int subscriptionsPerUser, int likesPerUser,
+                        String passwordHash, long now) throws SQLException {
+            this.users = users;
+            this.tweetsPerUser = tweetsPerUser;
+            this.subscriptionsPerUser = subscriptionsPerUser;
+            this.likesPerUser = likesPerUser;
+            this.passwordHash = passwordHash;
+            this.now = now;
+
+            try (Connection connection = dataSource.getConnection()) {
+                firstUserId = maxId(connection, "SELECT MAX(user_id) FROM Users;") + 1;
+                firstMessageId = maxId(connection, "SELECT MAX(message_id) FROM Messages;") + 1;
+                List<Long> ids = new ArrayList<>();
+                List<String> names = new ArrayList<>();
+                try (Statement statement = connection.createStatement();
+                     ResultSet resultSet = statement.executeQuery(GET_INSTRUMENTS_SQL)) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong("instrument_id"));
+                        names.add(resultSet.getString("instrument_name"));
+                    }
+                }
+                instrumentIds = ids.stream().mapToLong(Long::longValue).toArray();
+                instrumentNames = names.toArray(new String[0]);
+            }
+
+            popularity = new Zipf(users, ZIPF_EXPONENT);
+            long candidate = Math.max(1, (long) (users * 0.618));
+            while (gcd(candidate, users) != 1) {
+                candidate++;
+            }
+            stride = candidate;
+
+            messageOffsets = new long[users + 1];
+            for (int user = 0; user < users; user++) {
+                messageOffsets[user + 1] = messageOffsets[user] + new Profile(user).tweets;
+            }
+            if (messageOffsets[users] > Integer.MAX_VALUE) {
+                throw new SQLException("Too many messages: " + messageOffsets[users]);
+            }
+            messageDates = new long[(int) messageOffsets[users]];
+            messageRanks = new int[messageDates.length];
+            likeCounts = new AtomicIntegerArray(messageDates.length);
+
+            // The sequences are moved after the generated ids at once, otherwise H2 updates them on every insert
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("ALTER TABLE Users ALTER COLUMN user_id RESTART WITH " + (firstUserId + users));
+                statement.executeUpdate("ALTER TABLE Messages ALTER COLUMN message_id RESTART WITH "
+                        + (firstMessageId + messageOffsets[users]));
+            }
+        }
+
+        private long getMessageCount() {
+            return messageOffsets[users];
+        }
+
+        /**
+         * Service method, which generates the dates of the tweets of the users
+         */
+        private void pickDates(int from, int to) {
+            for (int user = from; user < to; user++) {
+                SplittableRandom random = random(DATES_STREAM, user);
+                long date = 0;
+                int burst = 0;
+                for (long offset = messageOffsets[user]; offset < messageOffsets[user + 1]; offset++) {
+                    if (burst-- <= 0) {
+                        burst = exponential(random, TWEETS_PER_BURST);
+                        date = now - (long) (random.nextDouble() * HISTORY_MILLIS);
+                    } else {
+                        date = Math.min(now, date + (long) (-Math.log(1 - random.nextDouble()) * BURST_GAP_MILLIS));
+                    }
+                    messageDates[(int) offset] = date;
+                }
+            }
+        }
+
+        /**
+         * Service method, which numbers the tweets of all users by date, then by offset.
+         * The dates are within HISTORY_MILLIS, so the date and the offset are sorted as one long key.
+         */
+        private void assignMessageIds() {
+            long oldest = now - HISTORY_MILLIS;
+            long[] keys = new long[messageDates.length];
+            for (int offset = 0; offset < keys.length; offset++) {
+                keys[offset] = (messageDates[offset] - oldest) << OFFSET_BITS | offset;
+            }
+            Arrays.parallelSort(keys);
+            long mask = (1L << OFFSET_BITS) - 1;
+            for (int rank = 0; rank < keys.length; rank++) {
+                messageRanks[(int) (keys[rank] & mask)] = rank;
+            }
+        }
+
+        private void countLikes(int from, int to) {
+            for (int user = from; user < to; user++) {
+                for (long message : pickLikes(user)) {
+                    likeCounts.incrementAndGet((int) message);
+                }
+            }
+        }
+
+        private void insertUsers(int from, int to) throws SQLException {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement insertUser = connection.prepareStatement(INSERT_USER_SQL);
+                 PreparedStatement insertInstrument = connection.prepareStatement(INSERT_USER_INSTRUMENT_SQL)) {
+                connection.setAutoCommit(false);
+                for (int user = from; user < to; user++) {
+                    Profile profile = new Profile(user);
+                    long userId = firstUserId + user;
+                    StringBuilder label = new StringBuilder();
+                    for (int instrument : profile.instruments) {
+                        insertInstrument.setLong(1, userId);
+                        insertInstrument.setLong(2, instrumentIds[instrument]);
+                        insertInstrument.addBatch();
+                        label.append(label.length() == 0 ? "" : ", ").append(instrumentNames[instrument]);
+                    }
+                    insertUser.setLong(1, userId);
+                    insertUser.setString(2, "User" + userId);
+                    insertUser.setString(3, passwordHash);
+                    insertUser.setString(4, profile.country.toString());
+                    insertUser.setString(5, label.toString());
+                    insertUser.addBatch();
+                    if ((user - from + 1) % BATCH_SIZE == 0) {
+                        flush(connection, insertUser, insertInstrument);
+                    }
+                }
+                flush(connection, insertUser, insertInstrument);
+            }
+        }
+
+        private void insertMessages(int from, int to) throws SQLException {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement insertMessage = connection.prepareStatement(INSERT_MESSAGE_SQL)) {
+                connection.setAutoCommit(false);
+                int count = 0;
+                for (int user = from; user < to; user++) {
+                    Profile profile = new Profile(user);
+                    for (int offset = (int) messageOffsets[user]; offset < messageOffsets[user + 1]; offset++) {
+                        insertMessage.setLong(1, firstMessageId + messageRanks[offset]);
+                        insertMessage.setLong(2, firstUserId + user);
+                        insertMessage.setTimestamp(3, new Timestamp(messageDates[offset]));
+                        insertMessage.setString(4, text(profile.random));
+                        insertMessage.setInt(5, likeCounts.get(offset));
+                        insertMessage.addBatch();
+                        if (++count % BATCH_SIZE == 0) {
+                            flush(connection, insertMessage);
+                        }
+                    }
+                }
+                flush(connection, insertMessage);
+            }
+        }
+
+        private void insertSubscriptionsAndLikes(int from, int to) throws SQLException {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement insertSubscription = connection.prepareStatement(INSERT_SUBSCRIPTION_SQL);
+                 PreparedStatement insertLike = connection.prepareStatement(INSERT_LIKE_SQL)) {
+                connection.setAutoCommit(false);
+                int count = 0;
+                for (int user = from; user < to; user++) {
+                    long userId = firstUserId + user;
+                    for (int author : pickSubscriptions(user)) {
+                        insertSubscription.setLong(1, userId);
+                        insertSubscription.setLong(2, firstUserId + author);
+                        insertSubscription.addBatch();
+                        count++;
+                    }
+                    for (long message : pickLikes(user)) {
+                        insertLike.setLong(1, userId);
+                        insertLike.setLong(2, firstMessageId + messageRanks[(int) message]);
+                        insertLike.addBatch();
+                        count++;
+                    }
+                    if (count >= BATCH_SIZE) {
+                        flush(connection, insertSubscription, insertLike);
+                        count = 0;
+                    }
+                }
+                flush(connection, insertSubscription, insertLike);
+            }
+        }
+
+        /**
+         * Service method, which picks the authors followed by the user, popular authors first
+         */
+        private Set<Integer> pickSubscriptions(int user) {
+            SplittableRandom random = random(SUBSCRIPTIONS_STREAM, user);
+            int wanted = Math.min(exponential(random, subscriptionsPerUser), users - 1);
+            Set<Integer> authors = new HashSet<>();
+            for (int attempt = 0; authors.size() < wanted && attempt < wanted * ATTEMPTS_PER_PICK; attempt++) {
+                int author = popularUser(random);
+                if (author != user) {
+                    authors.add(author);
+                }
+            }
+            return authors;
+        }
+
+        /**
+         * Service method, which picks the messages liked by the user: a popular author, then any of his messages.
+         * Messages are returned as offsets after the first generated message.
+         */
+        private Set<Long> pickLikes(int user) {
+            SplittableRandom random = random(LIKES_STREAM, user);
+            int wanted = exponential(random, likesPerUser);
+            Set<Long> messages = new HashSet<>();
+            for (int attempt = 0; messages.size() < wanted && attempt < wanted * ATTEMPTS_PER_PICK; attempt++) {
+                int author = popularUser(random);
+                long first = messageOffsets[author];
+                long count = messageOffsets[author + 1] - first;
+                if (author != user && count > 0) {
+                    messages.add(first + (long) (random.nextDouble() * count));
+                }
+            }
+            return messages;
+        }
+
+        private int popularUser(SplittableRandom random) {
+            return (int) (popularity.sample(random) * stride % users);
+        }
+
+        private String text(SplittableRandom random) {
+            String first = HASHTAGS[hashtags.sample(random)];
+            String second = HASHTAGS[hashtags.sample(random)];
+            return first.equals(second)
+                    ? "Auto generated tweet about #" + first
+                    : "Auto generated tweet about #" + first + " and #" + second;
+        }
+
+        private SplittableRandom random(long stream, int user) {
+            return new SplittableRandom(seed ^ (stream << 48) ^ user);
+        }
+
+        /**
+         * Service method, which writes the batches in order and commits them
+         */
+        private void flush(Connection connection, PreparedStatement... statements) throws SQLException {
+            for (PreparedStatement statement : statements) {
+                statement.executeBatch();
+            }
+            connection.commit();
+        }
+
+        private long gcd(long a, long b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+
+        /**
+         * Country, instruments and number of tweets of a user. The random stream continues with his tweets.
+         */
+        private class Profile {
+
+            private final SplittableRandom random;
+            private final Countries country;
+            private final int[] instruments;
+            private final int tweets;
+
+            private Profile(int user) {
+                random = random(PROFILE_STREAM, user);
+                country = Countries.values()[random.nextInt(Countries.values().length)];
+                instruments = new int[Math.min(INSTRUMENTS_PER_USER, instrumentIds.length)];
+                for (int i = 0; i < instruments.length; i++) {
+                    instruments[i] = pickInstrument(i);
+                }
+                tweets = exponential(random, tweetsPerUser);
+            }
+
+            /**
+             * Service method, which picks an instrument, that is not among the first picked ones
+             */
+            private int pickInstrument(int picked) {
+                while (true) {
+                    int instrument = random.nextInt(instrumentIds.length);
+                    boolean taken = false;
+                    for (int i = 0; i < picked; i++) {
+                        taken |= instruments[i] == instrument;
+                    }
+                    if (!taken) {
+                        return instrument;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package services;
+
+import model.Countries;
+import model.Instrument;
+import model.User;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe change tracker of the feeds, which lets the feed servlets answer conditional requests
+ * with 304 Not Modified before any query is sent to the database.
+ * Every change is numbered and recorded in the scopes it can be seen in: a new tweet in the scopes
+ * of its author, country and instruments, a subscription in the scope of the subscriber.
+ * Likes and profile changes may appear in every feed, so they have shared scopes.
+ * The version of a feed is the number of the newest change in its scopes, so a change of one user
+ * doesn't invalidate the feeds of unrelated users.
+ * ETag of a feed response consists of the start time of the application, the version
+ * and a hash of everything else the response depends on (user, page, locale), so it changes with every
+ * restart and every change. Last-Modified has only second precision, so clients should prefer ETag.
+ */
+public class FeedVersion {
+
+    // Shared scopes: like counters and author names are shown in every feed, search may find any new tweet
+    public static final String LIKES = "likes";
+    public static final String PROFILES = "profiles";
+    public static final String TWEETS = "tweets";
+
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Change initial = new Change(0, epoch);
+    private final ConcurrentMap<String, Change> changes = new ConcurrentHashMap<>();
+
+    /**
+     * Scope of the tweets of one author
+     * @param userId id of the author
+     * @return scope name
+     */
+    public static String author(long userId) {
+        return "author-" + userId;
+    }
+
+    /**
+     * Scope of the subscriptions of one user, which are marked in every feed of the user
+     * @param userId id of the user
+     * @return scope name
+     */
+    public static String subscriber(long userId) {
+        return "subscriber-" + userId;
+    }
+
+    /**
+     * Scope of the tweets of the country
+     * @param country country of the authors
+     * @return scope name
+     */
+    public static String country(Countries country) {
+        return "country-" + country;
+    }
+
+    /**
+     * Scope of the tweets of the instrument's players
+     * @param instrumentId id of the instrument
+     * @return scope name
+     */
+    public static String instrument(long instrumentId) {
+        return "instrument-" + instrumentId;
+    }
+
+    /**
+     * Scopes of a feed shown to the user: the scopes of its content, the subscriptions of the user
+     * and the shared scopes of likes and profiles
+     * @param user current user
+     * @param content scopes of the tweets in the feed
+     * @return list of scopes
+     */
+    public static List<String> scopes(User user, String... content) {
+        List<String> scopes = new ArrayList<>(content.length + 3);
+        scopes.addAll(Arrays.asList(content));
+        scopes.add(subscriber(user.getUserId()));
+        scopes.add(LIKES);
+        scopes.add(PROFILES);
+        return scopes;
+    }
+
+    /**
+     * Scopes of the subscription feed, which depends on every subscripted author
+     * @param user current user
+     * @param subscriptions ids of the users, the current user is subscribed to
+     * @return list of scopes
+     */
+    public static List<String> subscriptionScopes(User user, LongHashSet subscriptions) {
+        List<String> scopes = scopes(user, author(user.getUserId()));
+        subscriptions.forEach(userId -> scopes.add(author(userId)));
+        return scopes;
+    }
+
+    /**
+     * Scopes of the instrument feed, which depends on every instrument of the user
+     * @param user current user
+     * @param instruments instruments of the current user, if they are unknown, every new tweet changes the feed
+     * @return list of scopes
+     */
+    public static List<String> instrumentScopes(User user, Collection<Instrument> instruments) {
+        if (instruments == null) {
+            return scopes(user, TWEETS);
+        }
+        List<String> scopes = scopes(user);
+        for (Instrument instrument : instruments) {
+            scopes.add(instrument(instrument.getInstrumentId()));
+        }
+        return scopes;
+    }
+
+    /**
+     * Marks the feeds of the scopes as changed
+     * @param scopes scopes of the change
+     */
+    public void changed(String... scopes) {
+        Change change = new Change(sequence.incrementAndGet(), System.currentTimeMillis());
+        for (String scope : scopes) {
+            changes.merge(scope, change, Change::newer);
+        }
+    }
+
+    /**
+     * Marks the feeds, where a new tweet of the author can be seen, as changed
+     * @param author author of the tweet
+     * @param instruments instruments of the author, may be null
+     */
+    public void tweeted(User author, Collection<Instrument> instruments) {
+        List<String> scopes = new ArrayList<>();
+        scopes.add(author(author.getUserId()));
+        scopes.add(country(author.getCountry()));
+        scopes.add(TWEETS);
+        if (instruments != null) {
+            for (Instrument instrument : instruments) {
+                scopes.add(instrument(instrument.getInstrumentId()));
+            }
+        }
+        changed(scopes.toArray(new String[0]));
+    }
+
+    /**
+     * Current version of the feed
+     * @param scopes scopes of the feed
+     * @return number of the newest change in the scopes, 0 if there were none since the start
+     */
+    public long getVersion(Collection<String> scopes) {
+        return getChange(scopes).sequence;
+    }
+
+    /**
+     * Time of the last change of the feed
+     * @param scopes scopes of the feed
+     * @return time in milliseconds
+     */
+    public long getLastModified(Collection<String> scopes) {
+        return getChange(scopes).time;
+    }
+
+    /**
+     * Weak entity tag of the feed response for the current version
+     * @param scopes scopes of the feed
+     * @param feed everything the response depends on besides the version, for example feed name, user id and page
+     * @return ETag header value
+     */
+    public String getETag(Collection<String> scopes, Object... feed) {
+        return getETag(getChange(scopes), feed);
+    }
+
+    /**
+     * Sets ETag and Last-Modified headers of the feed response and checks the conditional request headers.
+     * If-None-Match takes precedence over If-Modified-Since. If the client has the current version,
+     * the response status is set to 304 and nothing else should be written.
+     * @param request feed request
+     * @param response feed response
+     * @param scopes scopes of the feed
+     * @param feed everything the response depends on besides the version
+     * @return true if the feed has not been modified
+     */
+    public boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                               Collection<String> scopes, Object... feed) {
+        // Both headers are made of the same change, so they can't disagree
+        Change change = getChange(scopes);
+        long modified = change.time / 1000 * 1000;
+        String eTag = getETag(change, feed);
+        response.setHeader("ETag", eTag);
+        response.setDateHeader("Last-Modified", modified);
+        response.setHeader("Cache-Control", "no-cache");
+
+        boolean notModified;
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, eTag);
+        } else {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            notModified = ifModifiedSince >= 0 && ifModifiedSince >= modified;
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    /**
+     * Service method, which finds the newest change of the scopes
+     * @param scopes scopes of the feed
+     * @return newest change or the start of the application
+     */
+    private Change getChange(Collection<String> scopes) {
+        Change newest = initial;
+        for (String scope : scopes) {
+            Change change = changes.get(scope);
+            if (change != null) {
+                newest = Change.newer(newest, change);
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Service method, which makes the weak entity tag of the change
+     * @param change newest change of the feed
+     * @param feed everything the response depends on besides the version
+     * @return ETag header value
+     */
+    private String getETag(Change change, Object... feed) {
+        return "W/\"" + Long.toString(epoch, 36) + "-" + Long.toString(change.sequence, 36) + "-"
+                + Integer.toHexString(Arrays.hashCode(feed)) + "\"";
+    }
+
+    /**
+     * Service method, which compares the If-None-Match header with the ETag using the weak comparison
+     * @param ifNoneMatch list of entity tags or "*"
+     * @param eTag current entity tag
+     * @return true if one of the tags matches
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        String current = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Numbered change of some scopes
+     */
+    private static final class Change {
+
+        private final long sequence;
+        private final long time;
+
+        private Change(long sequence, long time) {
+            this.sequence = sequence;
+            this.time = time;
+        }
+
+        private static Change newer(Change first, Change second) {
+            return first.sequence >= second.sequence ? first : second;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package services;
+
+import model.Tweet;
+
+import java.util.function.Consumer;
+
+/**
+ * Writer of one feed page, which receives the tweets of the page one by one
+ * and writes them straight to the response. One instance is used for one request only.
+ */
+public interface FeedWriter extends Consumer<Tweet> {
+
+    /**
+     * Finishes the page. Must be called after all tweets have been written.
+     */
+    void finish();
+}
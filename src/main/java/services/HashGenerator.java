@@ -1,32 +1,144 @@
 package services;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
 
 /**
- * Wrapper for MessageDigest class, generates hash from a string
+ * Thread-safe password hashing service. New hashes are salted PBKDF2 hashes, encoded as
+ * "pbkdf2$iterations$salt$hash". Old unsalted MD5 hashes are still verified, so they can be upgraded on login.
+ * Every thread uses its own digest and key factory, so concurrent logins don't wait for each other.
  */
 public class HashGenerator {
 
-    // Hash algorithm
-    private static final String ALGORITHM = "MD5";
-    private MessageDigest digest;
+    // Hash algorithms
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String LEGACY_ALGORITHM = "MD5";
+
+    // Prefix and separator of the encoded hash
+    private static final String PREFIX = "pbkdf2";
+    private static final String SEPARATOR = "$";
+
+    // Default number of PBKDF2 iterations, salt and hash lengths
+    public static final int DEFAULT_ITERATIONS = 10000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<SecretKeyFactory> keyFactory;
+    private final ThreadLocal<MessageDigest> legacyDigest;
 
     /**
-     * Creates a new instance of HashGenerator
+     * Creates a new instance of HashGenerator with the default number of iterations
      * @throws NoSuchAlgorithmException can't happen
      */
     public HashGenerator() throws NoSuchAlgorithmException {
-        digest = MessageDigest.getInstance(ALGORITHM);
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Creates a new instance of HashGenerator
+     * @param iterations number of PBKDF2 iterations for new hashes, the more the slower and safer
+     * @throws NoSuchAlgorithmException can't happen
+     */
+    public HashGenerator(int iterations) throws NoSuchAlgorithmException {
+        this.iterations = iterations;
+
+        // Fails fast if the algorithms are not available
+        SecretKeyFactory.getInstance(ALGORITHM);
+        MessageDigest.getInstance(LEGACY_ALGORITHM);
+
+        keyFactory = ThreadLocal.withInitial(() -> {
+            try {
+                return SecretKeyFactory.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        legacyDigest = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(LEGACY_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Generates salted hash from a string
+     * @param password string to hash
+     * @return encoded hash with its parameters and salt
+     */
+    public String getHash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + SEPARATOR + iterations + SEPARATOR + encoder.encodeToString(salt)
+                + SEPARATOR + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Checks the password against the stored hash, both new and old ones
+     * @param password password to check
+     * @param hash stored hash
+     * @return true if the password matches the hash, false also if the hash is malformed
+     */
+    public boolean verify(String password, String hash) {
+        if (hash == null) {
+            return false;
+        }
+        if (!hash.startsWith(PREFIX + SEPARATOR)) {
+            String legacyHash = getLegacyHash(password);
+            return legacyHash != null && MessageDigest.isEqual(
+                    hash.getBytes(StandardCharsets.UTF_8), legacyHash.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = hash.split("\\" + SEPARATOR);
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            byte[] actual = pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            // Wrong number of iterations, salt or hash encoding
+            return false;
+        }
+    }
+
+    /**
+     * Checks if the stored hash is an old one or is weaker than the current settings
+     * and should be replaced with the new hash of the same password
+     * @param hash stored hash
+     * @return true if the hash should be upgraded
+     */
+    public boolean needsUpgrade(String hash) {
+        if (hash == null || !hash.startsWith(PREFIX + SEPARATOR)) {
+            return true;
+        }
+        String[] parts = hash.split("\\" + SEPARATOR);
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
     }
 
     /**
-     * Generates hash from a string
+     * Generates old unsalted MD5 hash from a string, the way it was stored before
      * @param password string to hash
      * @return hashed string
      */
-    public String getHash(String password)  {
+    private String getLegacyHash(String password) {
+        MessageDigest digest = legacyDigest.get();
         digest.reset();
         try {
             byte[] result = digest.digest(password.getBytes("UTF-8"));
@@ -36,4 +148,22 @@ public class HashGenerator {
         }
         return null;
     }
+
+    /**
+     * Calculates PBKDF2 hash
+     * @param password string to hash
+     * @param salt salt
+     * @param iterations number of iterations
+     * @return hash bytes
+     */
+    private byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return keyFactory.get().generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
 }
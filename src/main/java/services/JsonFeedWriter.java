@@ -0,0 +1,169 @@
+package services;
+
+import model.Tweet;
+import model.TweetCursor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes a feed page as JSON straight to the response, tweet by tweet while they are read from the database:
+ * <pre>
+ * {"tweets":[{"id":1,"userId":2,"login":"...","instruments":"...","date":"...","text":"...",
+ *             "likes":3,"subscribed":true}, ...],
+ *  "next":"cursor of the last tweet or null"}
+ * </pre>
+ * Strings are escaped while they are written and numbers are written from a reusable buffer,
+ * so no intermediate Strings are built for the tweets.
+ * One instance is used for one request only.
+ */
+public class JsonFeedWriter implements FeedWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private final LongHashSet subscriptions;
+    private final DateTimeFormatter formatter;
+    private final char[] digits = new char[20];
+
+    private int count;
+    private Tweet lastTweet;
+
+    /**
+     * Creates the writer for one request.
+     *
+     * @param out           response writer
+     * @param subscriptions ids of the users followed by the current user
+     * @param formatter     date formatter
+     */
+    public JsonFeedWriter(Writer out, LongHashSet subscriptions, DateTimeFormatter formatter) {
+        this.out = out;
+        this.subscriptions = subscriptions;
+        this.formatter = formatter;
+    }
+
+    /**
+     * Writes one tweet as JSON object to the response.
+     *
+     * @param tweet Tweet to write
+     */
+    @Override
+    public void accept(Tweet tweet) {
+        try {
+            out.write(count == 0 ? "{\"tweets\":[{\"id\":" : ",{\"id\":");
+            writeLong(tweet.getMessageId());
+            out.write(",\"userId\":");
+            writeLong(tweet.getUserId());
+            out.write(",\"login\":");
+            writeString(tweet.getLogin());
+            out.write(",\"instruments\":");
+            writeString(tweet.getInstruments());
+
+            // Formatted date contains only digits, spaces and separators, so it needs no escaping
+            out.write(",\"date\":\"");
+            formatter.formatTo(tweet.getMessageDate(), out);
+            out.write("\",\"text\":");
+            writeString(tweet.getMessageText());
+            out.write(",\"likes\":");
+            writeLong(tweet.getLikes());
+            out.write(subscriptions.contains(tweet.getUserId()) ? ",\"subscribed\":true}" : ",\"subscribed\":false}");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count++;
+        lastTweet = tweet;
+    }
+
+    /**
+     * Closes the list of tweets and adds the cursor of the next page, if the page is full.
+     * Must be called after all tweets have been written.
+     */
+    @Override
+    public void finish() {
+        try {
+            out.write(count == 0 ? "{\"tweets\":[],\"next\":" : "],\"next\":");
+            if (count / 20 > 0) {
+                writeString(new TweetCursor(lastTweet).toString());
+            } else {
+                out.write("null");
+            }
+            out.write('}');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Service method, which writes the number without creating a String
+     * @param value number to write
+     * @throws IOException if the writer fails
+     */
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            out.write(Long.toString(value));
+            return;
+        }
+        int position = digits.length;
+        boolean negative = value < 0;
+        long rest = negative ? -value : value;
+        do {
+            digits[--position] = (char) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest > 0);
+        if (negative) {
+            digits[--position] = '-';
+        }
+        out.write(digits, position, digits.length - position);
+    }
+
+    /**
+     * Service method, which writes the JSON string literal. Runs of characters, which don't need escaping,
+     * are written at once.
+     * @param value string to write, null is written as empty string
+     * @throws IOException if the writer fails
+     */
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        if (value != null) {
+            int start = 0;
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\' && c != '<' && c != '\u2028' && c != '\u2029') {
+                    continue;
+                }
+                out.write(value, start, i - start);
+                start = i + 1;
+                switch (c) {
+                    case '"':
+                        out.write("\\\"");
+                        break;
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    default:
+                        // Other control characters, "<" and line separators, which break scripts
+                        out.write("\\u");
+                        out.write(HEX[(c >> 12) & 0xF]);
+                        out.write(HEX[(c >> 8) & 0xF]);
+                        out.write(HEX[(c >> 4) & 0xF]);
+                        out.write(HEX[c & 0xF]);
+                        break;
+                }
+            }
+            out.write(value, start, length - start);
+        }
+        out.write('"');
+    }
+}
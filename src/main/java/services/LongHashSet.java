@@ -0,0 +1,219 @@
+package services;
+
+import java.io.Serializable;
+import java.util.function.LongConsumer;
+
+/**
+ * Thread-safe set of primitive long values based on open addressing with linear probing.
+ * Made for small sets, which are read much more often than changed, like the ids of followed users:
+ * reads don't take locks and work on an immutable table, every change builds a new table under the lock.
+ */
+public class LongHashSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Marks an empty slot, zero itself is stored in a separate flag
+    private static final long EMPTY = 0;
+
+    private volatile Table table = new Table(new long[0], false, 0);
+
+    /**
+     * Creates an empty set
+     */
+    public LongHashSet() {
+    }
+
+    /**
+     * Creates the set with all the values, building its table once
+     * @param values values to add, duplicates are ignored
+     */
+    public LongHashSet(long... values) {
+        addAll(values);
+    }
+
+    /**
+     * Checks if the value is in the set
+     * @param value value to find
+     * @return true if the set contains the value
+     */
+    public boolean contains(long value) {
+        Table current = table;
+        if (value == EMPTY) {
+            return current.containsEmpty;
+        }
+        long[] slots = current.slots;
+        if (slots.length == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return true;
+            }
+            if (slots[i] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds the value to the set
+     * @param value value to add
+     * @return true if the value has been added, false if it was already in the set
+     */
+    public synchronized boolean add(long value) {
+        if (contains(value)) {
+            return false;
+        }
+        Table current = table;
+        if (value == EMPTY) {
+            table = new Table(current.slots, true, current.size + 1);
+        } else {
+            table = rebuild(current, value, EMPTY, current.size + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds all the values with one new table, while add() builds a new table for every value
+     * @param values values to add, duplicates are ignored
+     * @return number of added values
+     */
+    public synchronized int addAll(long... values) {
+        Table current = table;
+        long[] slots = new long[capacity(current.size + values.length)];
+        for (long value : current.slots) {
+            if (value != EMPTY) {
+                insert(slots, value);
+            }
+        }
+        boolean containsEmpty = current.containsEmpty;
+        int size = current.size;
+        for (long value : values) {
+            if (value == EMPTY) {
+                if (!containsEmpty) {
+                    containsEmpty = true;
+                    size++;
+                }
+            } else if (insertIfAbsent(slots, value)) {
+                size++;
+            }
+        }
+        table = new Table(slots, containsEmpty, size);
+        return size - current.size;
+    }
+
+    /**
+     * Removes the value from the set
+     * @param value value to remove
+     * @return true if the value has been removed, false if it wasn't in the set
+     */
+    public synchronized boolean remove(long value) {
+        if (!contains(value)) {
+            return false;
+        }
+        Table current = table;
+        if (value == EMPTY) {
+            table = new Table(current.slots, false, current.size - 1);
+        } else {
+            table = rebuild(current, EMPTY, value, current.size - 1);
+        }
+        return true;
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * Passes every value of the set to the action. Changes made meanwhile are not seen.
+     * @param action receives the values in no particular order
+     */
+    public void forEach(LongConsumer action) {
+        Table current = table;
+        if (current.containsEmpty) {
+            action.accept(EMPTY);
+        }
+        for (long value : current.slots) {
+            if (value != EMPTY) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Service method, which copies all values to the new table of the suitable capacity
+     * @param current current table
+     * @param added value to add or EMPTY
+     * @param removed value to skip or EMPTY
+     * @param size number of values in the new table
+     * @return new table
+     */
+    private static Table rebuild(Table current, long added, long removed, int size) {
+        long[] slots = new long[capacity(size)];
+        for (long value : current.slots) {
+            if (value != EMPTY && value != removed) {
+                insert(slots, value);
+            }
+        }
+        if (added != EMPTY) {
+            insert(slots, added);
+        }
+        return new Table(slots, current.containsEmpty, size);
+    }
+
+    // Keeps the table at most half full
+    private static int capacity(int size) {
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static boolean insertIfAbsent(long[] slots, long value) {
+        int mask = slots.length - 1;
+        int i = hash(value) & mask;
+        while (slots[i] != EMPTY) {
+            if (slots[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = value;
+        return true;
+    }
+
+    private static void insert(long[] slots, long value) {
+        int mask = slots.length - 1;
+        int i = hash(value) & mask;
+        while (slots[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = value;
+    }
+
+    // Spreads sequential ids over the table
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Immutable snapshot of the set
+     */
+    private static class Table implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] slots;
+        private final boolean containsEmpty;
+        private final int size;
+
+        private Table(long[] slots, boolean containsEmpty, int size) {
+            this.slots = slots;
+            this.containsEmpty = containsEmpty;
+            this.size = size;
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package services;
 
-import model.Subscription;
 import model.Tweet;
+import model.TweetCursor;
 
+import java.io.PrintWriter;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.ResourceBundle;
 
 /**
- * Service class with static method for processing tweets.
+ * Service class for processing tweets. Writes every tweet as a part of html page straight to the response,
+ * so tweets can be rendered one by one while they are read from the database.
+ * One instance is used for one request only.
  */
-public class ProcessTweets {
+public class ProcessTweets implements FeedWriter {
 
     //            <div class="singleTweet">
     //            <div class="tweetPic">
@@ -28,72 +30,111 @@ public class ProcessTweets {
     //            <hr>
     //        </div>
 
+    private final PrintWriter out;
+    private final LongHashSet subscriptions;
+    private final DateTimeFormatter formatter;
+
+    // Localized strings, resolved once per request
+    private final String like;
+    private final String subscribe;
+    private final String unsubscribe;
+    private final String next;
+
+    private int count;
+    private Tweet lastTweet;
+
     /**
-     * Static method that generates a part of html page from List of tweets.
+     * Creates the renderer for one request.
      *
-     * @param tweets        List of Tweets
-     * @param subscriptions String with subscriptions of the author
+     * @param out           response writer
+     * @param subscriptions ids of the users followed by the current user
      * @param bundle        ResourceBundle with localized content
      * @param formatter     date formatter
-     * @return html as String
      */
-    public static String process(List<Tweet> tweets, List<Subscription> subscriptions, ResourceBundle bundle, DateTimeFormatter formatter) {
-        StringBuilder out = new StringBuilder();
-        String subscribe;
-        String functionName;
-        for (Tweet tweet : tweets) {
-            subscribe = bundle.getString("subscribe");
-            functionName = "subscribe";
-            for (Subscription subscription : subscriptions) {
-                if (subscription.getSubscriptedUserId() == tweet.getUserId()) {
-                    subscribe = bundle.getString("unsubscribe");
-                    functionName = "unsubscribe";
-                    break;
-                }
-            }
-
-            // Userpic section
-            out.append("<div class=\"singleTweet\" id=\"").append(tweet.getMessageId()).append("\">");
-            out.append(" <div class=\"tweetPic\">");
-            out.append("     <img src=\"/img/tweet_icon.png\" />");
-            out.append(" </div>");
-
-            // Main content
-            out.append(" <div class=\"tweetContent\">");
-
-            //User id
-            out.append("     <span class=\"tweetUser\" id=\"").append(tweet.getUserId())
-                    .append("\">").append(tweet.getLogin()).append("</span>");
-
-            // Instruments
-            out.append("     <span class=\"tweetInstrument\">").append(tweet.getInstruments()).append("</span>");
-
-            // Date
-            out.append("     <span class=\"tweetDate\"> - ").append(tweet.getMessageDate().format(formatter))
-                    .append("</span><br>");
-
-            // Tweet text
-            out.append("     <span class=\"tweetText\">").append(tweet.getMessageText()).append("</span><br>");
-
-            // Like link
-            out.append("     <span class=\"tweetLike\"><a href=\"javascript:likePressed(")
-                    .append(tweet.getMessageId()).append(")\">").append(bundle.getString("like")).append("</a> (")
-                    .append(tweet.getLikes()).append("), ");
-
-            // Subscribe or unsubscribe link
-            out.append("<a href=\"javascript:").append(functionName).append("(").append(tweet.getUserId()).append(")\">").append(subscribe)
-                    .append("</a></span>");
-
-            // The rest
-            out.append(" </div>");
-            out.append("</div><div class=\"clear\"><hr></div>");
-        }
-        // Add "next" link if needed
-        if (tweets.size() / 20 > 0) {
-            out.append("  <span><a id=\"next\" onclick=\"getNextTweets()\">")
-                    .append(bundle.getString("next"))
-                    .append("</span>");
+    public ProcessTweets(PrintWriter out, LongHashSet subscriptions, ResourceBundle bundle, DateTimeFormatter formatter) {
+        this.out = out;
+        this.subscriptions = subscriptions;
+        this.formatter = formatter;
+        like = bundle.getString("like");
+        subscribe = bundle.getString("subscribe");
+        unsubscribe = bundle.getString("unsubscribe");
+        next = bundle.getString("next");
+    }
+
+    /**
+     * Writes one tweet as html to the response.
+     *
+     * @param tweet Tweet to write
+     */
+    @Override
+    public void accept(Tweet tweet) {
+        boolean subscribed = subscriptions.contains(tweet.getUserId());
+
+        // Userpic section
+        out.write("<div class=\"singleTweet\" id=\"");
+        out.print(tweet.getMessageId());
+        out.write("\"> <div class=\"tweetPic\">     <img src=\"/img/tweet_icon.png\" /> </div>");
+
+        // Main content
+        out.write(" <div class=\"tweetContent\">");
+
+        //User id
+        out.write("     <span class=\"tweetUser\" id=\"");
+        out.print(tweet.getUserId());
+        out.write("\">");
+        out.write(tweet.getLogin());
+        out.write("</span>");
+
+        // Instruments
+        out.write("     <span class=\"tweetInstrument\">");
+        out.write(tweet.getInstruments());
+        out.write("</span>");
+
+        // Date
+        out.write("     <span class=\"tweetDate\"> - ");
+        formatter.formatTo(tweet.getMessageDate(), out);
+        out.write("</span><br>");
+
+        // Tweet text
+        out.write("     <span class=\"tweetText\">");
+        out.write(tweet.getMessageText());
+        out.write("</span><br>");
+
+        // Like link
+        out.write("     <span class=\"tweetLike\"><a href=\"javascript:likePressed(");
+        out.print(tweet.getMessageId());
+        out.write(")\">");
+        out.write(like);
+        out.write("</a> (<span class=\"likeCount\">");
+        out.print(tweet.getLikes());
+        out.write("</span>), ");
+
+        // Subscribe or unsubscribe link
+        out.write(subscribed ? "<a href=\"javascript:unsubscribe(" : "<a href=\"javascript:subscribe(");
+        out.print(tweet.getUserId());
+        out.write(")\">");
+        out.write(subscribed ? unsubscribe : subscribe);
+        out.write("</a></span>");
+
+        // The rest
+        out.write(" </div></div><div class=\"clear\"><hr></div>");
+
+        count++;
+        lastTweet = tweet;
+    }
+
+    /**
+     * Finishes the page: adds "next" link with the cursor of the last tweet if needed.
+     * Must be called after all tweets have been written.
+     */
+    @Override
+    public void finish() {
+        if (count / 20 > 0) {
+            out.write("  <span><a id=\"next\" onclick=\"getNextTweets('");
+            out.write(new TweetCursor(lastTweet).toString());
+            out.write("')\">");
+            out.write(next);
+            out.write("</span>");
         }
-        return out.toString();
     }
 }
@@ -0,0 +1,214 @@
+package services;
+
+import model.Countries;
+import model.Trend;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe counter of the most used hashtags of the recent tweets, globally and for every country.
+ * <p>
+ * Every scope counts hashtags in a sliding window of time buckets, every bucket is a Count-Min Sketch,
+ * and the sum of the buckets is kept in one more sketch. When the window moves, the oldest bucket
+ * is subtracted from the sum and reused, so the memory doesn't depend on the number of tweets or hashtags.
+ * Besides the sketches every scope keeps a small set of candidates, the hashtags with the biggest estimates,
+ * and the top is taken from them.
+ */
+public class TrendingHashtags {
+
+    // Size of the sketches: an estimate is too big by at most e / WIDTH of all hashtags in the window
+    // with probability 1 - e^-DEPTH
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1024;
+
+    // Candidates per place in the top, a hashtag must beat the weakest candidate to get into the set
+    private static final int CANDIDATES_PER_TREND = 4;
+
+    // Longer hashtags are cut
+    private static final int MAX_HASHTAG_LENGTH = 32;
+
+    private final int topSize;
+    private final int bucketCount;
+    private final long bucketMillis;
+    private final LongSupplier clock;
+    private final Window global;
+    private final Map<Countries, Window> countries = new EnumMap<>(Countries.class);
+
+    /**
+     * Creates the counter
+     * @param topSize number of trends returned
+     * @param bucketCount number of buckets in the window
+     * @param bucketMillis duration of one bucket in milliseconds
+     */
+    public TrendingHashtags(int topSize, int bucketCount, long bucketMillis) {
+        this(topSize, bucketCount, bucketMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates the counter with the specified clock
+     * @param topSize number of trends returned
+     * @param bucketCount number of buckets in the window
+     * @param bucketMillis duration of one bucket in milliseconds
+     * @param clock source of the current time in milliseconds
+     */
+    TrendingHashtags(int topSize, int bucketCount, long bucketMillis, LongSupplier clock) {
+        this.topSize = topSize;
+        this.bucketCount = bucketCount;
+        this.bucketMillis = bucketMillis;
+        this.clock = clock;
+        global = new Window();
+        for (Countries country : Countries.values()) {
+            countries.put(country, new Window());
+        }
+    }
+
+    /**
+     * Counts the hashtags of the new tweet
+     * @param country country of the author, may be null
+     * @param text text of the tweet
+     */
+    public void addTweet(Countries country, String text) {
+        List<String> hashtags = extractHashtags(text);
+        if (hashtags.isEmpty()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        global.add(hashtags, now);
+        if (country != null) {
+            countries.get(country).add(hashtags, now);
+        }
+    }
+
+    /**
+     * Most used hashtags in the window
+     * @param country country or null for all countries
+     * @return trends with the biggest counts first
+     */
+    public List<Trend> getTrends(Countries country) {
+        return (country == null ? global : countries.get(country)).top(clock.getAsLong());
+    }
+
+    /**
+     * Finds distinct hashtags in the text: "#" followed by letters, digits or underscores
+     * @param text text of the tweet, may be null
+     * @return hashtags without "#" in lower case
+     */
+    static List<String> extractHashtags(String text) {
+        List<String> hashtags = new ArrayList<>();
+        if (text == null) {
+            return hashtags;
+        }
+        int length = text.length();
+        for (int i = text.indexOf('#'); i >= 0 && i < length; i = text.indexOf('#', i)) {
+            int start = ++i;
+            while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+                i++;
+            }
+            if (i > start) {
+                String hashtag = text.substring(start, Math.min(i, start + MAX_HASHTAG_LENGTH)).toLowerCase(Locale.ROOT);
+                if (!hashtags.contains(hashtag)) {
+                    hashtags.add(hashtag);
+                }
+            }
+        }
+        return hashtags;
+    }
+
+    /**
+     * Sliding window of one scope
+     */
+    private class Window {
+
+        private final CountMinSketch[] buckets = new CountMinSketch[bucketCount];
+        private final CountMinSketch total = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        private final Map<String, Long> candidates = new HashMap<>();
+        private long currentBucket = Long.MIN_VALUE;
+
+        private Window() {
+            for (int i = 0; i < bucketCount; i++) {
+                buckets[i] = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+            }
+        }
+
+        private synchronized void add(List<String> hashtags, long now) {
+            advance(now);
+            CountMinSketch bucket = buckets[(int) Math.floorMod(currentBucket, (long) bucketCount)];
+            for (String hashtag : hashtags) {
+                bucket.add(hashtag, 1);
+                total.add(hashtag, 1);
+                offer(hashtag, total.estimate(hashtag));
+            }
+        }
+
+        private synchronized List<Trend> top(long now) {
+            advance(now);
+            List<Trend> trends = new ArrayList<>(candidates.size());
+            for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+                trends.add(new Trend(candidate.getKey(), candidate.getValue()));
+            }
+            trends.sort((a, b) -> a.getCount() != b.getCount()
+                    ? Long.compare(b.getCount(), a.getCount())
+                    : a.getHashtag().compareTo(b.getHashtag()));
+            return trends.size() > topSize ? new ArrayList<>(trends.subList(0, topSize)) : trends;
+        }
+
+        /**
+         * Service method, which adds the hashtag to the candidates, if its estimate beats the weakest one
+         */
+        private void offer(String hashtag, long estimate) {
+            if (candidates.containsKey(hashtag) || candidates.size() < topSize * CANDIDATES_PER_TREND) {
+                candidates.put(hashtag, estimate);
+                return;
+            }
+            String weakest = null;
+            long weakestEstimate = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+                if (candidate.getValue() < weakestEstimate) {
+                    weakest = candidate.getKey();
+                    weakestEstimate = candidate.getValue();
+                }
+            }
+            if (estimate > weakestEstimate) {
+                candidates.remove(weakest);
+                candidates.put(hashtag, estimate);
+            }
+        }
+
+        /**
+         * Service method, which moves the window to the current time: expired buckets are subtracted
+         * from the total and cleared, the candidates are estimated again
+         */
+        private void advance(long now) {
+            long bucket = Math.floorDiv(now, bucketMillis);
+            if (bucket <= currentBucket) {
+                return;
+            }
+            long expired = currentBucket == Long.MIN_VALUE ? 0 : Math.min(bucket - currentBucket, bucketCount);
+            for (long i = 1; i <= expired; i++) {
+                CountMinSketch oldest = buckets[(int) Math.floorMod(currentBucket + i, (long) bucketCount)];
+                total.subtract(oldest);
+                oldest.clear();
+            }
+            currentBucket = bucket;
+            if (expired > 0) {
+                Iterator<Map.Entry<String, Long>> iterator = candidates.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<String, Long> candidate = iterator.next();
+                    long estimate = total.estimate(candidate.getKey());
+                    if (estimate > 0) {
+                        candidate.setValue(estimate);
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe hub of the open Server-Sent Events streams. A new tweet is published as a small event
+ * to the streams of the author and of all users, who are subscribed to the author, so the clients
+ * reload their feeds only when there is something new. The streams are indexed by the authors they listen to,
+ * so publishing costs as much as the number of interested streams, not the number of all streams.
+ * <p>
+ * Idle streams hold no threads: the streams are asynchronous requests, events are written by a small
+ * pool of writer threads with non-blocking IO, so a slow client never holds a writer thread.
+ * Every stream has a bounded queue of events, a slow client, whose queue is full,
+ * loses the queued events and gets one "reset" event instead, so the memory per stream is bounded.
+ * Heartbeat comments are sent to all streams periodically, they keep proxies from closing idle streams
+ * and let the hub notice the clients, which have gone. A stream, which can't be written for a whole
+ * heartbeat period, is closed.
+ */
+public class TweetEvents implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TweetEvents.class);
+
+    // Reconnection delay for the browsers and the fixed events
+    private static final String OPEN_EVENT = "retry: 10000\n\n";
+    private static final String HEARTBEAT_EVENT = ":\n\n";
+    private static final String RESET_EVENT = "event: reset\ndata: {}\n\n";
+
+    private final int maxConnections;
+    private final int queueSize;
+    private final long heartbeatMillis;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    // Streams of every user and streams listening to every author
+    private final ConcurrentMap<Long, Set<Connection>> userConnections = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Set<Connection>> listeners = new ConcurrentHashMap<>();
+
+    private final ExecutorService writers;
+    private final ScheduledExecutorService heartbeat;
+
+    /**
+     * Creates the hub and starts the heartbeat
+     * @param maxConnections maximal number of open streams
+     * @param queueSize maximal number of events waiting to be written to one stream
+     * @param writerThreads number of threads writing the events
+     * @param heartbeatMillis period of the heartbeat in milliseconds
+     */
+    public TweetEvents(int maxConnections, int queueSize, int writerThreads, long heartbeatMillis) {
+        this.maxConnections = maxConnections;
+        this.queueSize = queueSize;
+        this.heartbeatMillis = heartbeatMillis;
+        AtomicInteger counter = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers the stream of the user. The request must be in asynchronous mode
+     * and the content type of the response must be set.
+     * @param context asynchronous context of the stream request
+     * @param userId id of the user
+     * @param subscriptions live set of the ids of the users, the user is subscribed to
+     * @return false if there are too many open streams or the response can't be written,
+     * then the stream is not registered
+     */
+    public boolean open(AsyncContext context, long userId, LongHashSet subscriptions) {
+        if (connections.size() >= maxConnections) {
+            return false;
+        }
+        ServletOutputStream out;
+        try {
+            out = context.getResponse().getOutputStream();
+        } catch (IOException e) {
+            return false;
+        }
+        Connection connection = new Connection(context, out, userId, subscriptions);
+        context.addListener(connection);
+        out.setWriteListener(connection);
+        connections.add(connection);
+
+        // The stream is registered for the user before the subscriptions are read,
+        // so a subscription made meanwhile is indexed either here or by subscribed()
+        add(userConnections, userId, connection);
+        connection.listen(userId);
+        subscriptions.forEach(connection::listen);
+        connection.send(OPEN_EVENT);
+        return true;
+    }
+
+    /**
+     * Lets the open streams of the user receive the tweets of the author.
+     * Must be called after the author has been added to the subscriptions of the user.
+     * @param userId id of the subscriber
+     * @param authorId id of the author
+     */
+    public void subscribed(long userId, long authorId) {
+        for (Connection connection : userConnections.getOrDefault(userId, Collections.emptySet())) {
+            connection.listen(authorId);
+        }
+    }
+
+    /**
+     * Stops sending the tweets of the author to the open streams of the user
+     * @param userId id of the subscriber
+     * @param authorId id of the author
+     */
+    public void unsubscribed(long userId, long authorId) {
+        for (Connection connection : userConnections.getOrDefault(userId, Collections.emptySet())) {
+            connection.ignore(authorId);
+        }
+    }
+
+    /**
+     * Sends the event about the new tweet to the streams of the author and the subscribers
+     * @param authorId id of the author
+     * @param messageId id of the new message
+     */
+    public void publish(long authorId, long messageId) {
+        String event = "event: tweet\ndata: {\"messageId\":" + messageId + ",\"userId\":" + authorId + "}\n\n";
+        for (Connection connection : listeners.getOrDefault(authorId, Collections.emptySet())) {
+            // The index may be a moment behind an unsubscription
+            if (connection.userId == authorId || connection.subscriptions.contains(authorId)) {
+                connection.send(event);
+            }
+        }
+    }
+
+    /**
+     * Number of open streams
+     * @return number of streams
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Stops the heartbeat and the writers and closes all streams
+     */
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        writers.shutdownNow();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Service method, which closes the stalled streams and sends the heartbeat to all others
+     */
+    private void heartbeat() {
+        long stalledBefore = System.currentTimeMillis() - heartbeatMillis;
+        for (Connection connection : connections) {
+            if (connection.isStalled(stalledBefore)) {
+                log.debug("Stalled stream of the user " + connection.userId + " is closed");
+                connection.close();
+            } else {
+                connection.send(HEARTBEAT_EVENT);
+            }
+        }
+    }
+
+    private static void add(ConcurrentMap<Long, Set<Connection>> index, long key, Connection connection) {
+        index.compute(key, (k, set) -> {
+            Set<Connection> result = set == null ? ConcurrentHashMap.newKeySet() : set;
+            result.add(connection);
+            return result;
+        });
+    }
+
+    private static void remove(ConcurrentMap<Long, Set<Connection>> index, long key, Connection connection) {
+        index.computeIfPresent(key, (k, set) -> set.remove(connection) && set.isEmpty() ? null : set);
+    }
+
+    /**
+     * One open stream with its queue of events
+     */
+    private class Connection implements AsyncListener, WriteListener {
+
+        private final AsyncContext context;
+        private final ServletOutputStream out;
+        private final long userId;
+        private final LongHashSet subscriptions;
+        private final Set<Long> authors = ConcurrentHashMap.newKeySet();
+        private final ArrayBlockingQueue<String> events = new ArrayBlockingQueue<>(queueSize);
+        private final AtomicBoolean overflow = new AtomicBoolean();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // Event, which has been taken from the queue, but not written yet
+        private byte[] pending;
+
+        // Time, since which the client doesn't accept any data, 0 if it does
+        private volatile long blockedSince;
+        private boolean closed;
+
+        private Connection(AsyncContext context, ServletOutputStream out, long userId, LongHashSet subscriptions) {
+            this.context = context;
+            this.out = out;
+            this.userId = userId;
+            this.subscriptions = subscriptions;
+        }
+
+        private void listen(long authorId) {
+            authors.add(authorId);
+            add(listeners, authorId, this);
+        }
+
+        private void ignore(long authorId) {
+            if (authorId != userId && authors.remove(authorId)) {
+                remove(listeners, authorId, this);
+            }
+        }
+
+        private boolean isStalled(long stalledBefore) {
+            long since = blockedSince;
+            return since != 0 && since < stalledBefore;
+        }
+
+        /**
+         * Queues the event and starts the writing, if it is not started yet
+         */
+        private void send(String event) {
+            if (!events.offer(event)) {
+                overflow.set(true);
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this::onWritePossible);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Writes the queued events, while the client accepts data. When it doesn't, the container
+         * calls this method again as soon as it does. Closes the stream if the client has gone.
+         */
+        @Override
+        public void onWritePossible() {
+            scheduled.set(false);
+            try {
+                synchronized (this) {
+                    if (closed) {
+                        events.clear();
+                        return;
+                    }
+                    if (overflow.getAndSet(false)) {
+                        events.clear();
+                        pending = RESET_EVENT.getBytes(StandardCharsets.UTF_8);
+                    }
+                    boolean written = false;
+                    while (out.isReady()) {
+                        if (pending == null) {
+                            String event = events.poll();
+                            if (event == null) {
+                                // Flushing doesn't block either, the next write waits until it is done
+                                if (written) {
+                                    out.flush();
+                                }
+                                blockedSince = 0;
+                                return;
+                            }
+                            pending = event.getBytes(StandardCharsets.UTF_8);
+                        }
+                        out.write(pending);
+                        pending = null;
+                        written = true;
+                    }
+                    // The client is stalled, if it hasn't accepted anything since the last time
+                    if (written || blockedSince == 0) {
+                        blockedSince = System.currentTimeMillis();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        private void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            unregister();
+            try {
+                context.complete();
+            } catch (IllegalStateException e) {
+                log.debug("Stream is already completed");
+            }
+        }
+
+        private void unregister() {
+            connections.remove(this);
+            remove(userConnections, userId, this);
+            for (long authorId : authors) {
+                remove(listeners, authorId, this);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            synchronized (this) {
+                closed = true;
+            }
+            unregister();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -75,6 +75,7 @@ public class Validator {
 
         request.setAttribute("country", country.toString());
 
+        // Blank user, read on an error, doesn't prove the login free either
         if (login != null && !login.equals(user.getLogin())) {
             if (daoFactory.getUserDao().readUserByLogin(login) != null) {
                 errorFlag = true;
@@ -147,6 +148,7 @@ public class Validator {
 
         request.setAttribute("country", country.toString());
 
+        // Blank user, read on an error, doesn't prove the login free either
         if (daoFactory.getUserDao().readUserByLogin(login) != null) {
             errorFlag = true;
             request.setAttribute("loginExists", bundle.getString("loginExists"));
@@ -0,0 +1,11 @@
+-- Subscription feed of every user, filled on write by the fan-out of new messages
+CREATE TABLE IF NOT EXISTS Timelines (
+  user_id      BIGINT    NOT NULL,
+  message_id   BIGINT    NOT NULL,
+  message_date TIMESTAMP NOT NULL,
+  PRIMARY KEY (user_id, message_id),
+  FOREIGN KEY (user_id) REFERENCES Users (user_id),
+  FOREIGN KEY (message_id) REFERENCES Messages (message_id)
+);
+
+CREATE INDEX IF NOT EXISTS timelines_user_date ON Timelines (user_id, message_date DESC, message_id DESC);
@@ -0,0 +1,4 @@
+-- Denormalized like counter of every message, so feeds don't count Likes per row
+ALTER TABLE Messages ADD COLUMN IF NOT EXISTS like_count INT NOT NULL DEFAULT 0;
+
+UPDATE Messages AS m SET like_count = (SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id);
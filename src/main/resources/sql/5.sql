@@ -0,0 +1,15 @@
+CREATE INDEX IF NOT EXISTS messages_user_date ON Messages (user_id, message_date DESC, message_id DESC);
+
+CREATE INDEX IF NOT EXISTS likes_message_user ON Likes (message_id, user_id);
+
+CREATE INDEX IF NOT EXISTS likes_user_message ON Likes (user_id, message_id);
+
+CREATE INDEX IF NOT EXISTS subscriptions_user_subscripted ON Subscriptions (user_id, subscripted_user_id);
+
+CREATE INDEX IF NOT EXISTS subscriptions_subscripted_user ON Subscriptions (subscripted_user_id, user_id);
+
+CREATE INDEX IF NOT EXISTS users_instruments_user ON Users_Instruments (user_id, instrument_id);
+
+CREATE INDEX IF NOT EXISTS users_instruments_instrument ON Users_Instruments (instrument_id, user_id);
+
+CREATE INDEX IF NOT EXISTS users_country ON Users (country, user_id);
\ No newline at end of file
@@ -0,0 +1,6 @@
+-- Materialized instruments label of every user, so feeds don't aggregate instruments per row
+ALTER TABLE Users ADD COLUMN IF NOT EXISTS instruments VARCHAR(1024) NOT NULL DEFAULT '';
+
+UPDATE Users AS u SET instruments = COALESCE((SELECT GROUP_CONCAT(i.instrument_name SEPARATOR ', ')
+  FROM Instruments AS i INNER JOIN Users_Instruments AS ui ON i.instrument_id = ui.instrument_id
+  WHERE ui.user_id = u.user_id), '');
@@ -0,0 +1,8 @@
+-- One like per user and message: duplicates from concurrent clicks are removed, counters are fixed
+DELETE FROM Likes WHERE like_id NOT IN (SELECT MIN(like_id) FROM Likes GROUP BY user_id, message_id);
+
+UPDATE Messages AS m SET like_count = (SELECT COUNT(like_id) FROM Likes WHERE Likes.message_id = m.message_id);
+
+DROP INDEX IF EXISTS likes_user_message;
+
+ALTER TABLE Likes ADD CONSTRAINT IF NOT EXISTS likes_user_message_unique UNIQUE (user_id, message_id);
@@ -0,0 +1,7 @@
+-- One subscription per follower and author: duplicates from repeated clicks are removed
+DELETE FROM Subscriptions WHERE subscription_id NOT IN
+  (SELECT MIN(subscription_id) FROM Subscriptions GROUP BY user_id, subscripted_user_id);
+
+DROP INDEX IF EXISTS subscriptions_user_subscripted;
+
+ALTER TABLE Subscriptions ADD CONSTRAINT IF NOT EXISTS subscriptions_user_subscripted_unique UNIQUE (user_id, subscripted_user_id);
@@ -0,0 +1,6 @@
+-- Follower count and popularity of every author: popular authors are not fanned out into Timelines,
+-- their messages are read directly by the subscription feed
+ALTER TABLE Users ADD COLUMN IF NOT EXISTS follower_count INT NOT NULL DEFAULT 0;
+ALTER TABLE Users ADD COLUMN IF NOT EXISTS popular BOOLEAN NOT NULL DEFAULT FALSE;
+
+UPDATE Users AS u SET follower_count = (SELECT COUNT(*) FROM Subscriptions WHERE subscripted_user_id = u.user_id);
@@ -20,8 +20,13 @@ Main page
     <fmt:message bundle="${loc}" key="post" var="post"/>
     <fmt:message bundle="${loc}" key="cancel" var="cancel"/>
     <fmt:message bundle="${loc}" key="subscribe" var="subscribe"/>
+    <fmt:message bundle="${loc}" key="unsubscribe" var="unsubscribe"/>
+    <fmt:message bundle="${loc}" key="next" var="next"/>
     <fmt:message bundle="${loc}" key="subscriptions" var="subscriptions"/>
     <fmt:message bundle="${loc}" key="profileSettings" var="editProfile"/>
+    <fmt:message bundle="${loc}" key="search" var="search"/>
+    <fmt:message bundle="${loc}" key="searchPlaceholder" var="searchPlaceholder"/>
+    <fmt:message bundle="${loc}" key="trends" var="trends"/>
 
     <script src="<c:url value="/js/jquery-3.1.1.min.js"/>" type="text/javascript"></script>
     <script src="<c:url value="/js/main.js" />" type="text/javascript"></script>
@@ -83,9 +88,24 @@ Main page
             </form>
         </div>
 
+        <div id="search">
+            <form method="post" onsubmit="searchTweets(); return false;">
+                <input type="search" name="query" id="query" placeholder="${searchPlaceholder}" maxlength="100"/>
+                <button type="submit">${search}</button>
+            </form>
+        </div>
+
+        <%-- Filled by main.js, a click on a hashtag searches for it --%>
+        <div id="trends">
+            <span class="trendsTitle">${trends}</span>
+            <ul id="trendList"></ul>
+        </div>
+
     </div>
 
-    <div id="content">
+    <%-- Feeds are rendered by main.js, the labels are taken from here --%>
+    <div id="content" data-like="${like}" data-subscribe="${subscribe}" data-unsubscribe="${unsubscribe}"
+         data-next="${next}" data-user-id="${sessionScope.User.userId}">
 
     </div>
 
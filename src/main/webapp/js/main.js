@@ -3,6 +3,8 @@
  */
 $(document).ready(function () {
     getSubscriptionTweets();
+    openTweetStream();
+    loadTrends();
 });
 
 // Stores the current page
@@ -15,79 +17,94 @@ function refreshCurrentPage() {
     window[currentPage]();
 }
 
-function getNextTweets() {
-    switch (currentPage) {
-        case "getSubscriptionTweets":
-            $.post("GetSubscriptions", {
-                pageCount: pageCount
-            }, function (response) {
-                $('#next').remove();
-                $('#content').append(response);
-            });
-            break;
-        case "getMyTweets":
-            $.post("GetMyTweets", {
-                pageCount: pageCount
-            }, function (response) {
-                $('#next').remove();
-                $('#content').append(response);
-            });
-            break;
-        case "getInstrumentTweets":
-            $.post("GetInstrumentTweets", {
-                pageCount: pageCount
-            }, function (response) {
-                $('#next').remove();
-                $('#content').append(response);
-            });
-            break;
-        case "getCountryTweets":
-            $.post("GetCountryTweets", {
-                pageCount: pageCount
-            }, function (response) {
-                $('#next').remove();
-                $('#content').append(response);
-            });
-            break;
-    }
+// Feed servlets of the pages
+var feedUrls = {
+    getSubscriptionTweets: "GetSubscriptions",
+    getMyTweets: "GetMyTweets",
+    getInstrumentTweets: "GetInstrumentTweets",
+    getCountryTweets: "GetCountryTweets",
+    searchTweets: "SearchTweets"
+};
+
+// Words of the last search, they are sent with every request of the search page
+var searchQuery = '';
+
+// Cursor is the position of the last shown tweet, it comes from the "next" link
+function getNextTweets(cursor) {
+    $.post(feedUrls[currentPage], {
+        cursor: cursor,
+        query: searchQuery,
+        format: 'json'
+    }, function (feed) {
+        $('#next').remove();
+        $('#content').append(renderFeed(feed));
+        shownFeed = null;
+    });
     pageCount++;
 }
 
 function getTweetsWithoutOffset() {
-    switch (currentPage) {
-        case "getSubscriptionTweets":
-            $.post("GetSubscriptions", {
-                pageCount: pageCount,
-                resetLimit: currentPage
-            }, function (response) {
-                $('#content').html(response);
-            });
-            break;
-        case "getMyTweets":
-            $.post("GetMyTweets", {
-                pageCount: pageCount,
-                resetLimit: currentPage
-            }, function (response) {
-                $('#content').html(response);
-            });
-            break;
-        case "getInstrumentTweets":
-            $.post("GetInstrumentTweets", {
-                pageCount: pageCount,
-                resetLimit: currentPage
-            }, function (response) {
-                $('#content').html(response);
-            });
-            break;
-        case "getCountryTweets":
-            $.post("GetCountryTweets", {
-                pageCount: pageCount,
-                resetLimit: currentPage
-            }, function (response) {
-                $('#content').html(response);
-            });
-            break;
+    loadFeed(feedUrls[currentPage], {
+        pageCount: pageCount,
+        resetLimit: currentPage,
+        query: searchQuery
+    });
+}
+
+// Feed shown in the content area and its ETag, so an unchanged feed is not downloaded and rendered again
+var shownFeed = null;
+var shownETag = null;
+
+// Loads the whole feed into the content area. If the same feed is shown, the server answers
+// 304 Not Modified when nothing has changed, and the content is kept as is.
+function loadFeed(url, data) {
+    data = $.extend({format: 'json'}, data);
+    var feed = url + '?' + $.param(data);
+    $.ajax({
+        type: "POST",
+        url: url,
+        data: data,
+        headers: feed === shownFeed && shownETag ? {'If-None-Match': shownETag} : {},
+        success: function (response, status, xhr) {
+            if (xhr.status === 304) {
+                return;
+            }
+            shownFeed = feed;
+            shownETag = xhr.getResponseHeader('ETag');
+            $('#content').empty().append(renderFeed(response));
+        }
+    });
+}
+
+// Builds the elements of the feed page from its JSON, the markup is the same as the servlets' html
+function renderFeed(feed) {
+    var labels = $('#content').data();
+    var elements = [];
+    $.each(feed.tweets, function (i, tweet) {
+        elements.push(renderTweet(tweet, labels), $('<div class="clear"><hr></div>'));
+    });
+    if (feed.next) {
+        elements.push($('<span>').append($('<a id="next">').text(labels.next).click(function () {
+            getNextTweets(feed.next);
+        })));
     }
+    return elements;
+}
+
+// Builds one tweet, all texts are inserted as text, not as html
+function renderTweet(tweet, labels) {
+    var follow = tweet.subscribed ? 'unsubscribe' : 'subscribe';
+    var content = $('<div class="tweetContent">').append(
+        $('<span class="tweetUser">').attr('id', tweet.userId).text(tweet.login), ' ',
+        $('<span class="tweetInstrument">').text(tweet.instruments), ' ',
+        $('<span class="tweetDate">').text(' - ' + tweet.date), '<br>',
+        $('<span class="tweetText">').text(tweet.text), '<br>',
+        $('<span class="tweetLike">').append(
+            $('<a>').attr('href', 'javascript:likePressed(' + tweet.id + ')').text(labels.like),
+            ' (', $('<span class="likeCount">').text(tweet.likes), '), ',
+            $('<a>').attr('href', 'javascript:' + follow + '(' + tweet.userId + ')').text(labels[follow])));
+    return $('<div class="singleTweet">').attr('id', tweet.id).append(
+        '<div class="tweetPic"><img src="/img/tweet_icon.png"/></div>', content);
 }
 
 function addNextTweets(response) {
@@ -97,40 +114,53 @@ function addNextTweets(response) {
 
 function getSubscriptionTweets() {
     resetPageCount();
-    $.post("GetSubscriptions", function (response) {
-        $('#content').html(response);
-    });
+    loadFeed("GetSubscriptions");
     changeSelectedMenuItem('subscriptionMenu');
     currentPage = 'getSubscriptionTweets';
 }
 
 function getMyTweets() {
     resetPageCount();
-    $.post("GetMyTweets", function (response) {
-        $('#content').html(response);
-    });
+    loadFeed("GetMyTweets");
     changeSelectedMenuItem('myTweetsMenu');
     currentPage = 'getMyTweets';
 }
 
 function getInstrumentTweets() {
     resetPageCount();
-    $.post("GetInstrumentTweets", function (response) {
-        $('#content').html(response);
-    });
+    loadFeed("GetInstrumentTweets");
     changeSelectedMenuItem('instrumentMenu');
     currentPage = 'getInstrumentTweets';
 }
 
 function getCountryTweets() {
     resetPageCount();
-    $.post("GetCountryTweets", function (response) {
-        $('#content').html(response);
-    });
+    loadFeed("GetCountryTweets");
     changeSelectedMenuItem('countryMenu');
     currentPage = 'getCountryTweets';
 }
 
+function searchTweets() {
+    searchQuery = $('#query').val();
+    resetPageCount();
+    loadFeed("SearchTweets", {query: searchQuery});
+    changeSelectedMenuItem(null);
+    currentPage = 'searchTweets';
+}
+
+// Shows the trending hashtags of the user's country, or the global ones if the country has none
+function loadTrends() {
+    $.post("GetTrends", function (trends) {
+        var list = $('#trendList').empty();
+        $.each(trends.country.length > 0 ? trends.country : trends.global, function (i, trend) {
+            list.append($('<li>').append($('<a>').text('#' + trend.hashtag).click(function () {
+                $('#query').val(trend.hashtag);
+                searchTweets();
+            }), ' (' + trend.count + ')'));
+        });
+    });
+}
+
 function changeSelectedMenuItem(item) {
     $('a.menu').css('border', '');
     $('#' + item).css('border-bottom', 'solid 5px #22aaff');
@@ -151,8 +181,8 @@ function newTweet() {
 function likePressed(messageId) {
     $.post("LikePressed", {
         messageId: messageId
-    }, function () {
-        getTweetsWithoutOffset();
+    }, function (status) {
+        $(document.getElementById(messageId)).find('.likeCount').text(status.likeCount);
     })
 }
 
@@ -172,6 +202,37 @@ function unsubscribe(userId) {
     })
 }
 
+// Reload scheduled by the tweet events, several events in a row cause one reload
+var streamReload = null;
+
+// New tweets are pushed by the server, the shown feed is reloaded only if the tweet belongs to it
+function openTweetStream() {
+    if (!window.EventSource) {
+        return;
+    }
+    var stream = new EventSource("TweetStream");
+    stream.addEventListener('tweet', function (event) {
+        var tweet = JSON.parse(event.data);
+        if (currentPage === 'getSubscriptionTweets'
+            || (currentPage === 'getMyTweets' && tweet.userId === $('#content').data('user-id'))) {
+            scheduleStreamReload();
+        }
+    });
+
+    // Some events have been dropped, the feed may be out of date
+    stream.addEventListener('reset', scheduleStreamReload);
+}
+
+function scheduleStreamReload() {
+    if (streamReload === null) {
+        streamReload = setTimeout(function () {
+            streamReload = null;
+            getTweetsWithoutOffset();
+            loadTrends();
+        }, 500);
+    }
+}
+
 function resetPageCount() {
     pageCount = 1;
 }
\ No newline at end of file
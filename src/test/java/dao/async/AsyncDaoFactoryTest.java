@@ -0,0 +1,78 @@
+package dao.async;
+
+import dao.h2.H2DaoFactory;
+import dao.h2.H2TestDatabase;
+import model.Tweet;
+import model.TweetCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the DAO calls run on the DAO threads and are rejected when the threads are busy.
+ */
+public class AsyncDaoFactoryTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("async");
+
+    private AsyncDaoFactory asyncDaoFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        asyncDaoFactory = new AsyncDaoFactory(new H2DaoFactory(database.getDataSource()), 1, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncDaoFactory.close();
+    }
+
+    @Test
+    public void streamOnDaoThread() throws Exception {
+        List<Tweet> tweets = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        asyncDaoFactory.getMessageDao().getCountryMessages(2, 20, TweetCursor.first(), tweet -> {
+            tweets.add(tweet);
+            threads.add(Thread.currentThread().getName());
+        }).get();
+        assertTrue(tweets.size() > 0);
+        assertEquals("dao-1", threads.get(0));
+        assertEquals(tweets.size(), asyncDaoFactory.getMessageDao().getCountryMessages(2, 20, TweetCursor.first()).get().size());
+    }
+
+    @Test
+    public void rejectWhenBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = asyncDaoFactory.getMessageDao().getCountryMessages(2, 1, TweetCursor.first(), tweet -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<Integer> queued = asyncDaoFactory.getLikeDao().getLikeCount(1);
+        CompletableFuture<Integer> rejected = asyncDaoFactory.getLikeDao().getLikeCount(1);
+        try {
+            rejected.get();
+            fail("Call must be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        running.get();
+        assertTrue(queued.get() >= 0);
+    }
+}
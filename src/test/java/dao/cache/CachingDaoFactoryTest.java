@@ -0,0 +1,76 @@
+package dao.cache;
+
+import dao.h2.H2DaoFactory;
+import dao.h2.H2TestDatabase;
+import model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the caches keep neither blank users nor the uncommitted data of units of work.
+ */
+public class CachingDaoFactoryTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("cache");
+
+    private CachingDaoFactory daoFactory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp() throws Exception {
+        daoFactory = new CachingDaoFactory(new H2DaoFactory(database.getDataSource()), 100, 60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        daoFactory.close();
+    }
+
+    @Test
+    public void blankUserNotCached() throws Exception {
+        assertEquals(0, daoFactory.getUserDao().readUserById(100).getUserId());
+        database.execute("INSERT INTO Users (user_id, login, password, country) VALUES (100, 'Late', 'qwe', 'USA')");
+        assertEquals(100, daoFactory.getUserDao().readUserById(100).getUserId());
+    }
+
+    @Test
+    public void unitOfWorkBypassesCache() throws Exception {
+        String firstName = daoFactory.getUserDao().readUserById(2).getFirstName();
+        try {
+            daoFactory.inTransaction(factory -> {
+                User user = factory.getUserDao().readUserById(2);
+                user.setFirstName("Uncommitted");
+                factory.getUserDao().updateUser(user);
+                assertEquals("Uncommitted", factory.getUserDao().readUserById(2).getFirstName());
+
+                // Other threads read the committed user
+                assertEquals(firstName, readInOtherThread(2).getFirstName());
+                throw new SQLException("Rolled back");
+            });
+            fail();
+        } catch (SQLException e) {
+            assertEquals("Rolled back", e.getMessage());
+        }
+        assertEquals(firstName, daoFactory.getUserDao().readUserById(2).getFirstName());
+    }
+
+    private User readInOtherThread(long userId) {
+        try {
+            return executor.submit(() -> daoFactory.getUserDao().readUserById(userId)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
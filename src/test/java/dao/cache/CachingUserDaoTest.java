@@ -0,0 +1,85 @@
+package dao.cache;
+
+import dao.UserDao;
+import model.Countries;
+import model.User;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the user cache keeps neither the results of failed reads nor the users read before a change.
+ */
+public class CachingUserDaoTest {
+
+    private final StubUserDao stub = new StubUserDao();
+    private final CachingUserDao userDao = new CachingUserDao(stub, new CacheScope(), 100, 60000);
+
+    @Test
+    public void failedReadNotCached() {
+        stub.failing = true;
+        assertEquals(0, userDao.readUserByLogin("Free").getUserId());
+        stub.failing = false;
+        assertNull(userDao.readUserByLogin("Free"));
+
+        // Only the real miss is cached
+        assertNull(userDao.readUserByLogin("Free"));
+        assertEquals(2, stub.reads);
+    }
+
+    @Test
+    public void readBeforeChangeNotCached() {
+        stub.user = user("old");
+
+        // The password changes while the old user is being read
+        stub.beforeReturn = () -> userDao.updateUser(user("new"));
+        assertEquals("old", userDao.readUserByLogin("Login").getPassword());
+        stub.beforeReturn = null;
+
+        assertEquals("new", userDao.readUserByLogin("Login").getPassword());
+        assertEquals("new", userDao.readUserByLogin("Login").getPassword());
+        assertEquals(2, stub.reads);
+    }
+
+    private static User user(String password) {
+        return new User(7, "Login", password, "First", "Last", Countries.USA);
+    }
+
+    /**
+     * UserDao with one user, which can fail and change the user during a read
+     */
+    private static class StubUserDao implements UserDao {
+
+        private User user;
+        private boolean failing;
+        private Runnable beforeReturn;
+        private int reads;
+
+        @Override
+        public long createUser(User user) {
+            return 0;
+        }
+
+        @Override
+        public User readUserById(long userId) {
+            return new User();
+        }
+
+        @Override
+        public User readUserByLogin(String login) {
+            reads++;
+            User result = failing ? new User() : user;
+            if (beforeReturn != null) {
+                beforeReturn.run();
+            }
+            return result == null || result.getUserId() == 0 ? result : user(result.getPassword());
+        }
+
+        @Override
+        public long updateUser(User user) {
+            this.user = user;
+            return user.getUserId();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dao.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks eviction, expiration and statistics of the LRU cache.
+ */
+public class LruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        LruCache<Long, String> cache = new LruCache<>("test", 2, 60000);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.put(3L, "three");
+        assertEquals("one", cache.get(1L));
+        assertNull(cache.get(2L));
+        assertEquals("three", cache.get(3L));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void expiresEntries() throws Exception {
+        LruCache<Long, String> cache = new LruCache<>("test", 2, 10);
+        cache.put(1L, "one");
+        Thread.sleep(20);
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void removesMatchingValues() {
+        LruCache<Long, String> cache = new LruCache<>("test", 10, 60000);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.removeIf("one"::equals);
+        assertNull(cache.get(1L));
+        assertEquals("two", cache.get(2L));
+    }
+
+    @Test
+    public void rejectsStalePut() {
+        LruCache<Long, String> cache = new LruCache<>("test", 10, 60000);
+        long stamp = cache.getStamp();
+        cache.remove(1L);
+        assertFalse(cache.put(1L, "old", stamp));
+        assertNull(cache.get(1L));
+        assertTrue(cache.put(1L, "new", cache.getStamp()));
+        assertEquals("new", cache.get(1L));
+    }
+}
@@ -0,0 +1,166 @@
+package dao.cache;
+
+import dao.LikeDao;
+import dao.h2.H2DaoFactory;
+import dao.h2.H2TestDatabase;
+import model.Like;
+import model.LikeStatus;
+import model.Tweet;
+import model.TweetCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that buffered likes are visible before they are written and are written on flush and close,
+ * also when the flush is slow or fails.
+ */
+public class WriteBehindLikeDaoTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("likeBuffer");
+
+    private H2DaoFactory h2DaoFactory;
+    private LikeBufferDaoFactory daoFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        h2DaoFactory = new H2DaoFactory(database.getDataSource());
+        daoFactory = new LikeBufferDaoFactory(h2DaoFactory, 1000, 60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        daoFactory.close();
+    }
+
+    @Test
+    public void bufferedLikes() throws Exception {
+        int likes = h2DaoFactory.getLikeDao().getLikeCount(1);
+        LikeStatus status = daoFactory.getLikeDao().updateLike(new Like(0, 4, 1));
+        assertTrue(status.isLiked());
+        assertEquals(likes + 1, status.getLikeCount());
+        assertEquals(likes + 1, daoFactory.getLikeDao().getLikeCount(1));
+        assertEquals(likes, h2DaoFactory.getLikeDao().getLikeCount(1));
+        assertEquals(likes + 1, tweetLikes(1));
+
+        // Like and unlike cancel each other out
+        daoFactory.getLikeDao().updateLike(new Like(0, 3, 1));
+        status = daoFactory.getLikeDao().updateLike(new Like(0, 3, 1));
+        assertFalse(status.isLiked());
+        assertEquals(likes + 1, status.getLikeCount());
+
+        ((WriteBehindLikeDao) daoFactory.getLikeDao()).flush();
+        assertEquals(likes + 1, h2DaoFactory.getLikeDao().getLikeCount(1));
+        assertEquals(1, countLikes(4, 1));
+        assertEquals(0, countLikes(3, 1));
+
+        status = daoFactory.getLikeDao().updateLike(new Like(0, 4, 1));
+        assertFalse(status.isLiked());
+        assertEquals(likes, status.getLikeCount());
+        daoFactory.close();
+        assertEquals(0, countLikes(4, 1));
+        assertEquals(likes, h2DaoFactory.getLikeDao().getLikeCount(1));
+    }
+
+    @Test
+    public void flushDoesNotBlockOtherMessages() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch saved = new CountDownLatch(1);
+        WriteBehindLikeDao likeDao = new WriteBehindLikeDao(intercept(h2DaoFactory.getLikeDao(), () -> {
+            saving.countDown();
+            saved.await();
+        }), 1000, 60000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            likeDao.updateLike(new Like(0, 4, 1));
+            Future<?> flush = executor.submit(likeDao::flush);
+            assertTrue(saving.await(10, TimeUnit.SECONDS));
+
+            // The batch is being written, the clicks on other messages are buffered meanwhile
+            int likes = h2DaoFactory.getLikeDao().getLikeCount(2);
+            assertEquals(likes + 1, likeDao.updateLike(new Like(0, 4, 2)).getLikeCount());
+            saved.countDown();
+            flush.get(10, TimeUnit.SECONDS);
+            assertEquals(1, countLikes(4, 1));
+            assertEquals(0, countLikes(4, 2));
+            assertEquals(likes + 1, likeDao.getLikeCount(2));
+        } finally {
+            saved.countDown();
+            executor.shutdown();
+            likeDao.close();
+        }
+        assertEquals(1, countLikes(4, 2));
+    }
+
+    @Test
+    public void failedFlushKeepsLikes() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        WriteBehindLikeDao likeDao = new WriteBehindLikeDao(intercept(h2DaoFactory.getLikeDao(), () -> {
+            if (fail.get()) {
+                throw new SQLException("Database is down");
+            }
+        }), 1000, 60000);
+        int likes = h2DaoFactory.getLikeDao().getLikeCount(1);
+        likeDao.updateLike(new Like(0, 4, 1));
+        likeDao.flush();
+        assertEquals(0, countLikes(4, 1));
+        assertEquals(likes + 1, likeDao.getLikeCount(1));
+        assertTrue(likeDao.getLikeStatus(new Like(0, 4, 1)).isLiked());
+
+        fail.set(false);
+        likeDao.close();
+        assertEquals(1, countLikes(4, 1));
+        assertEquals(likes + 1, h2DaoFactory.getLikeDao().getLikeCount(1));
+    }
+
+    /**
+     * Wraps the LikeDao, so the action runs before every saveLikes call
+     */
+    private static LikeDao intercept(LikeDao likeDao, SaveAction beforeSave) {
+        return (LikeDao) Proxy.newProxyInstance(LikeDao.class.getClassLoader(), new Class<?>[] {LikeDao.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("saveLikes")) {
+                        beforeSave.run();
+                    }
+                    try {
+                        return method.invoke(likeDao, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private interface SaveAction {
+        void run() throws Exception;
+    }
+
+    private int tweetLikes(long messageId) {
+        for (Tweet tweet : daoFactory.getMessageDao().getCountryMessages(2, 100, TweetCursor.first())) {
+            if (tweet.getMessageId() == messageId) {
+                return tweet.getLikes();
+            }
+        }
+        return -1;
+    }
+
+    private long countLikes(long userId, long messageId) throws Exception {
+        return database.queryLong("SELECT COUNT(*) FROM Likes WHERE user_id = " + userId
+                + " AND message_id = " + messageId);
+    }
+}
@@ -0,0 +1,123 @@
+package dao.h2;
+
+import dao.DaoFactory;
+import model.Countries;
+import model.Message;
+import model.TweetCursor;
+import model.User;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the unit of work commits or rolls back all DAO calls together.
+ */
+public class H2DaoFactoryTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("unitOfWork");
+
+    private DaoFactory daoFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        daoFactory = new H2DaoFactory(database.getDataSource());
+    }
+
+    @Test
+    public void commit() throws Exception {
+        int instruments = daoFactory.inTransaction(factory -> {
+            factory.getSubscriptionDao().createSubscriptions(4, Arrays.asList(1L, 2L));
+            factory.getInstrumentDao().setInstrumentsToUser(4, new String[]{"guitar"});
+            return factory.getInstrumentDao().getUserInstruments(4).size();
+        });
+        assertEquals(1, instruments);
+        assertEquals(1, daoFactory.getInstrumentDao().getUserInstruments(4).size());
+    }
+
+    @Test
+    public void rollback() throws Exception {
+        int subscriptions = daoFactory.getSubscriptionDao().getUserSubscriptions(4).size();
+        int instruments = daoFactory.getInstrumentDao().getUserInstruments(4).size();
+        try {
+            daoFactory.inTransaction(factory -> {
+                factory.getSubscriptionDao().createSubscriptions(4, Arrays.asList(1L, 2L, 3L, 5L));
+                factory.getInstrumentDao().deleteAllUserInstruments(4);
+                throw new SQLException("Cancelled");
+            });
+            fail("Exception must be thrown");
+        } catch (SQLException e) {
+            assertEquals("Cancelled", e.getMessage());
+        }
+        assertEquals(subscriptions, daoFactory.getSubscriptionDao().getUserSubscriptions(4).size());
+        assertEquals(instruments, daoFactory.getInstrumentDao().getUserInstruments(4).size());
+    }
+
+    @Test
+    public void failedDaoCallRollsBackUnitOfWork() throws Exception {
+        int instruments = daoFactory.getInstrumentDao().getUserInstruments(4).size();
+        String login = daoFactory.getUserDao().readUserById(1).getLogin();
+        try {
+            daoFactory.inTransaction(factory -> {
+                factory.getInstrumentDao().deleteAllUserInstruments(4);
+                User user = new User();
+                user.setLogin(login);
+                user.setPassword("hash");
+                user.setCountry(Countries.RUSSIA);
+                // The DAO swallows the duplicate login, but the unit of work must not commit
+                assertEquals(0, factory.getUserDao().createUser(user));
+                return null;
+            });
+            fail("Exception must be thrown");
+        } catch (SQLException e) {
+            assertEquals(instruments, daoFactory.getInstrumentDao().getUserInstruments(4).size());
+        }
+    }
+
+    @Test
+    public void failedNestedUnitOfWork() throws Exception {
+        daoFactory.inTransaction(factory -> {
+            factory.getInstrumentDao().deleteAllUserInstruments(4);
+            try {
+                // Unknown instrument rolls back only the nested unit of work
+                factory.inTransaction(nested -> {
+                    nested.getInstrumentDao().setInstrumentsToUser(4, new String[]{"guitar", "no such instrument"});
+                    return null;
+                });
+                fail("Exception must be thrown");
+            } catch (SQLException e) {
+                assertEquals(0, factory.getInstrumentDao().getUserInstruments(4).size());
+            }
+            factory.getInstrumentDao().setInstrumentsToUser(4, new String[]{"guitar"});
+            return null;
+        });
+        assertEquals(1, daoFactory.getInstrumentDao().getUserInstruments(4).size());
+    }
+
+    @Test
+    public void indexesSeeOnlyCommittedMessages() throws Exception {
+        try {
+            daoFactory.inTransaction(factory -> {
+                factory.getMessageDao().createMessage(new Message(4, 0, LocalDateTime.now(), "Rolledback"));
+                throw new SQLException("Cancelled");
+            });
+            fail("Exception must be thrown");
+        } catch (SQLException e) {
+            assertEquals(0, daoFactory.getMessageDao().searchMessages("rolledback", 20, TweetCursor.first()).size());
+        }
+        long messageId = daoFactory.inTransaction(factory -> {
+            long id = factory.getMessageDao().createMessage(new Message(4, 0, LocalDateTime.now(), "Committed"));
+            assertEquals(0, factory.getMessageDao().searchMessages("committed", 20, TweetCursor.first()).size());
+            return id;
+        });
+        assertEquals(messageId, daoFactory.getMessageDao().searchMessages("committed", 20, TweetCursor.first())
+                .get(0).getMessageId());
+    }
+}
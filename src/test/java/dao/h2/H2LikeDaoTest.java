@@ -0,0 +1,79 @@
+package dao.h2;
+
+import model.Like;
+import model.LikeStatus;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the like toggle keeps one like per user and message and the counter in sync.
+ */
+public class H2LikeDaoTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("likes");
+
+    private H2LikeDao likeDao;
+
+    @Before
+    public void setUp() throws Exception {
+        likeDao = new H2LikeDao(database.getDataSource());
+    }
+
+    @Test
+    public void updateLike() throws Exception {
+        int likes = likeDao.getLikeCount(1);
+        LikeStatus status = likeDao.updateLike(new Like(0, 4, 1));
+        assertTrue(status.isLiked());
+        assertEquals(likes + 1, status.getLikeCount());
+        status = likeDao.updateLike(new Like(0, 4, 1));
+        assertFalse(status.isLiked());
+        assertEquals(likes, status.getLikeCount());
+    }
+
+    @Test
+    public void concurrentUpdateLike() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<LikeStatus>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(executor.submit(() -> likeDao.updateLike(new Like(0, 4, 2))));
+        }
+        for (Future<LikeStatus> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        assertTrue(database.queryLong("SELECT COUNT(*) FROM Likes WHERE user_id = 4 AND message_id = 2") <= 1);
+        assertEquals(0, likeDao.reconcileLikeCounts());
+    }
+
+    @Test
+    public void failedUpdateLike() throws Exception {
+        // There's no such message, so the like breaks the foreign key
+        assertNull(likeDao.updateLike(new Like(0, 4, 1000)));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Likes WHERE message_id = 1000"));
+    }
+
+    @Test
+    public void reconcileLikeCounts() throws Exception {
+        likeDao.updateLike(new Like(0, 4, 2));
+        database.execute("UPDATE Messages SET like_count = like_count + 3 WHERE message_id = 2");
+        database.execute("UPDATE Messages SET like_count = 5 WHERE message_id NOT IN (SELECT message_id FROM Likes) " +
+                "AND message_id = (SELECT MIN(message_id) FROM Messages WHERE message_id NOT IN (SELECT message_id FROM Likes))");
+        assertEquals(2, likeDao.reconcileLikeCounts());
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Messages AS m WHERE like_count <> " +
+                "(SELECT COUNT(*) FROM Likes WHERE Likes.message_id = m.message_id)"));
+        assertEquals(0, likeDao.reconcileLikeCounts());
+    }
+}
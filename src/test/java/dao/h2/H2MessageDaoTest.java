@@ -0,0 +1,79 @@
+package dao.h2;
+
+import dao.MessageDao;
+import model.Message;
+import model.Tweet;
+import model.TweetCursor;
+import model.User;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the keyset pagination of the feeds returns every tweet once, also when tweets have equal dates.
+ */
+public class H2MessageDaoTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2017, 1, 1, 12, 0);
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("messages");
+
+    private MessageDao messageDao;
+    private final List<Long> expected = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        messageDao = new H2DaoFactory(database.getDataSource()).getMessageDao();
+
+        // Newest first: two tweets a minute later, then five tweets with the same date, ordered by id
+        List<Long> sameDate = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sameDate.add(0, messageDao.createMessage(new Message(4, 0, DATE, "Same date " + i)));
+        }
+        for (int i = 0; i < 2; i++) {
+            expected.add(0, messageDao.createMessage(new Message(4, 0, DATE.plusMinutes(1), "Later " + i)));
+        }
+        expected.addAll(sameDate);
+    }
+
+    @Test
+    public void userFeedPages() {
+        User user = new User();
+        user.setUserId(4);
+        for (int limit = 1; limit <= 4; limit++) {
+            List<Long> ids = new ArrayList<>();
+            TweetCursor cursor = TweetCursor.first();
+            List<Tweet> page;
+            do {
+                page = messageDao.getUserMessages(user, limit, cursor);
+                for (Tweet tweet : page) {
+                    ids.add(tweet.getMessageId());
+                }
+                if (!page.isEmpty()) {
+                    // The cursor makes the round trip through the client
+                    cursor = TweetCursor.valueOf(new TweetCursor(page.get(page.size() - 1)).toString());
+                }
+            } while (page.size() == limit);
+            assertEquals(expected, ids.subList(0, expected.size()));
+        }
+    }
+
+    @Test
+    public void pageBoundaryInsideEqualDates() {
+        User user = new User();
+        user.setUserId(4);
+        TweetCursor cursor = new TweetCursor(DATE, expected.get(3));
+        List<Long> ids = new ArrayList<>();
+        for (Tweet tweet : messageDao.getUserMessages(user, 2, cursor)) {
+            ids.add(tweet.getMessageId());
+        }
+        assertEquals(expected.subList(4, 6), ids);
+    }
+}
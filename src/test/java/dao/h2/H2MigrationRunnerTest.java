@@ -0,0 +1,119 @@
+package dao.h2;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that migrations are applied once and the feed queries use the indexes created by them.
+ */
+public class H2MigrationRunnerTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("migrations", false);
+
+    private H2MigrationRunner migrationRunner;
+
+    @Before
+    public void setUp() throws Exception {
+        migrationRunner = new H2MigrationRunner(database.getDataSource());
+        migrationRunner.migrate();
+    }
+
+    @Test
+    public void migrate() throws Exception {
+        assertTrue(migrationRunner.getCurrentVersion() >= 3);
+        assertEquals(0, migrationRunner.migrate());
+        assertEquals(migrationRunner.getCurrentVersion(), database.queryLong("SELECT COUNT(*) FROM Schema_Versions"));
+    }
+
+    @Test
+    public void repeatAfterFailure() throws Exception {
+        int version = migrationRunner.getCurrentVersion();
+        // Schema changes of the failed migrations have been committed, their versions haven't
+        database.execute("DELETE FROM Schema_Versions WHERE version >= 3");
+        assertEquals(version - 2, migrationRunner.migrate());
+        assertEquals(version, migrationRunner.getCurrentVersion());
+    }
+
+    @Test
+    public void baselineDatabase() throws Exception {
+        int version = migrationRunner.getCurrentVersion();
+        // Database created by the baseline scripts, before the schema versions were recorded
+        database.execute("DROP ALL OBJECTS");
+        database.execute("RUNSCRIPT FROM 'classpath:sql/1.sql'");
+        database.execute("RUNSCRIPT FROM 'classpath:sql/2.sql'");
+        database.execute("INSERT INTO Likes (user_id, message_id) VALUES (1, 1)");
+        assertEquals(0, migrationRunner.getCurrentVersion());
+        database.execute("INSERT INTO Schema_Versions (version, applied_on) VALUES (1, NOW()), (2, NOW())");
+
+        assertEquals(version - 2, migrationRunner.migrate());
+        assertEquals(1, database.queryLong("SELECT like_count FROM Messages WHERE message_id = 1"));
+        assertEquals(0, database.queryLong("SELECT like_count FROM Messages WHERE message_id = 2"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Timelines"));
+    }
+
+    @Test
+    public void splitStatements() {
+        assertEquals(Arrays.asList("INSERT INTO Messages VALUES ('a; b', 'c''d;')", "SELECT 1"),
+                H2MigrationRunner.splitStatements("-- comment; with a semicolon\n" +
+                        "INSERT INTO Messages VALUES ('a; b', 'c''d;');\n\nSELECT 1; -- last\n"));
+    }
+
+    @Test
+    public void userMessagesUseIndex() throws Exception {
+        String plan = explain(H2MessageDao.GET_USER_MESSAGES_SQL, 2L, now(), now(), Long.MAX_VALUE, 20);
+        assertTrue(plan, plan.contains("MESSAGES_USER_DATE"));
+        assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    @Test
+    public void subscriptionMessagesUseIndex() throws Exception {
+        String plan = explain(H2MessageDao.GET_SUBSCRIPTION_MESSAGES_SQL, 1L, now(), now(), Long.MAX_VALUE, 20,
+                1L, now(), now(), Long.MAX_VALUE, 20, 20);
+        assertTrue(plan, plan.contains("TIMELINES_USER_DATE"));
+        assertTrue(plan, plan.contains("SUBSCRIPTIONS_USER_SUBSCRIPTED"));
+    }
+
+    @Test
+    public void instrumentMessagesUseIndex() throws Exception {
+        String plan = explain(H2MessageDao.GET_INSTRUMENT_MESSAGES_SQL, 1L, now(), now(), Long.MAX_VALUE, 20);
+        assertTrue(plan, plan.contains("USERS_INSTRUMENTS_INSTRUMENT"));
+        assertTrue(plan, plan.contains("MESSAGES_USER_DATE"));
+    }
+
+    @Test
+    public void countryMessagesUseIndex() throws Exception {
+        String plan = explain(H2MessageDao.GET_COUNTRY_MESSAGES_SQL, 1L, now(), now(), Long.MAX_VALUE, 20);
+        assertTrue(plan, plan.contains("USERS_COUNTRY"));
+        assertTrue(plan, plan.contains("MESSAGES_USER_DATE"));
+    }
+
+    private static Timestamp now() {
+        return Timestamp.valueOf(LocalDateTime.now());
+    }
+
+    private String explain(String sql, Object... parameters) throws SQLException {
+        try (Connection connection = database.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getString(1);
+            }
+        }
+    }
+}
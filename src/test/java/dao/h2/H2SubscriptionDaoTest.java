@@ -0,0 +1,140 @@
+package dao.h2;
+
+import model.Subscription;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that subscriptions stay unique, can be changed in bulk and keep the timelines up to date.
+ */
+public class H2SubscriptionDaoTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("subscriptions");
+
+    private H2SubscriptionDao subscriptionDao;
+
+    @Before
+    public void setUp() throws Exception {
+        H2TimelineDao timelineDao = new H2TimelineDao(database.getDataSource());
+        timelineDao.rebuildTimelines();
+        subscriptionDao = new H2SubscriptionDao(database.getDataSource(), timelineDao);
+    }
+
+    @Test
+    public void createSubscription() throws Exception {
+        int subscriptions = subscriptionDao.getUserSubscriptions(4).size();
+        long id = subscriptionDao.createSubscription(new Subscription(0, 4, 1));
+        assertEquals(id, subscriptionDao.createSubscription(new Subscription(0, 4, 1)));
+        assertEquals(subscriptions + 1, subscriptionDao.getUserSubscriptions(4).size());
+    }
+
+    @Test
+    public void bulkSubscriptions() throws Exception {
+        subscriptionDao.deleteSubscriptions(4, subscriptionIds(4));
+        assertEquals(0, subscriptionDao.getUserSubscriptions(4).size());
+        subscriptionDao.createSubscriptions(4, Arrays.asList(1L, 2L, 3L, 2L));
+        subscriptionDao.createSubscriptions(4, Arrays.asList(3L, 5L));
+        assertEquals(4, subscriptionDao.getUserSubscriptions(4).size());
+        assertEquals(2, subscriptionDao.deleteSubscriptions(4, Arrays.asList(1L, 5L, 5L)));
+        assertEquals(2, subscriptionDao.getUserSubscriptions(4).size());
+    }
+
+    @Test
+    public void subscriptionsChangeTimelines() throws Exception {
+        String timeline = "SELECT COUNT(*) FROM Timelines WHERE user_id = 4";
+        String messages = "SELECT COUNT(*) FROM Messages WHERE user_id IN (SELECT subscripted_user_id FROM Subscriptions " +
+                "WHERE user_id = 4)";
+        String followers = "SELECT follower_count FROM Users WHERE user_id = 2";
+        long followersBefore = database.queryLong(followers);
+
+        subscriptionDao.createSubscriptions(4, Arrays.asList(1L, 2L, 3L, 2L));
+        assertEquals(database.queryLong(messages), database.queryLong(timeline));
+        assertTrue(database.queryLong(timeline) > 0);
+        assertEquals(followersBefore + 1, database.queryLong(followers));
+
+        subscriptionDao.deleteSubscriptions(4, Arrays.asList(1L, 2L));
+        assertEquals(database.queryLong(messages), database.queryLong(timeline));
+        assertEquals(followersBefore, database.queryLong(followers));
+
+        subscriptionDao.deleteSubscription(new Subscription(0, 4, 3));
+        subscriptionDao.createSubscription(new Subscription(0, 4, 5));
+        assertEquals(database.queryLong(messages), database.queryLong(timeline));
+    }
+
+    @Test
+    public void concurrentSubscription() throws Exception {
+        subscriptionDao.deleteSubscriptions(4, subscriptionIds(4));
+        AtomicBoolean raced = new AtomicBoolean();
+        H2SubscriptionDao racingDao = new H2SubscriptionDao(racingDataSource(raced),
+                new H2TimelineDao(database.getDataSource()));
+
+        // The subscription to the user 2 is created by another request after the NOT EXISTS check
+        assertEquals(2, racingDao.createSubscriptions(4, Arrays.asList(1L, 2L, 3L)));
+        assertTrue(raced.get());
+        assertEquals(3, subscriptionDao.getUserSubscriptions(4).size());
+    }
+
+    /**
+     * DataSource, whose first subscription batch fails with a duplicate key of the concurrent subscription
+     */
+    private DataSource racingDataSource(AtomicBoolean raced) {
+        DataSource dataSource = database.getDataSource();
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(method, dataSource, args);
+                    if (!method.getName().equals("getConnection")) {
+                        return result;
+                    }
+                    Connection connection = (Connection) result;
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                            (connectionProxy, connectionMethod, connectionArgs) -> {
+                                Object statement = invoke(connectionMethod, connection, connectionArgs);
+                                if (!connectionMethod.getName().equals("prepareStatement")
+                                        || !((String) connectionArgs[0]).startsWith("INSERT INTO Subscriptions")) {
+                                    return statement;
+                                }
+                                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                        new Class<?>[]{PreparedStatement.class}, (statementProxy, statementMethod, statementArgs) -> {
+                                            if (statementMethod.getName().equals("executeBatch") && raced.compareAndSet(false, true)) {
+                                                database.execute("INSERT INTO Subscriptions (user_id, subscripted_user_id) VALUES (4, 2)");
+                                                throw new SQLException("Unique index violation", "23505");
+                                            }
+                                            return invoke(statementMethod, statement, statementArgs);
+                                        });
+                            });
+                });
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private List<Long> subscriptionIds(long userId) {
+        List<Long> ids = new ArrayList<>();
+        for (Subscription subscription : subscriptionDao.getUserSubscriptions(userId)) {
+            ids.add(subscription.getSubscriptedUserId());
+        }
+        return ids;
+    }
+}
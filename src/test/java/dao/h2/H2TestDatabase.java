@@ -0,0 +1,95 @@
+package dao.h2;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.rules.ExternalResource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JUnit rule with a named in-memory H2 database for one test: the schema is migrated before the test
+ * and all objects are dropped after it, so every test starts with the sample data of the migrations.
+ */
+public class H2TestDatabase extends ExternalResource {
+
+    private final String name;
+    private final boolean migrate;
+    private JdbcDataSource dataSource;
+
+    /**
+     * Creates the database with the application schema
+     * @param name name of the in-memory database
+     */
+    public H2TestDatabase(String name) {
+        this(name, true);
+    }
+
+    /**
+     * Creates the database
+     * @param name name of the in-memory database
+     * @param migrate whether the migrations are applied before the test
+     */
+    public H2TestDatabase(String name, boolean migrate) {
+        this.name = name;
+        this.migrate = migrate;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        if (migrate) {
+            new H2MigrationRunner(dataSource).migrate();
+        }
+    }
+
+    @Override
+    protected void after() {
+        try {
+            execute("DROP ALL OBJECTS");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public JdbcDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Drops all objects and applies the migrations again
+     * @throws Exception if the schema can't be created
+     */
+    public void reset() throws Exception {
+        execute("DROP ALL OBJECTS");
+        new H2MigrationRunner(dataSource).migrate();
+    }
+
+    /**
+     * Executes the statement on a new connection
+     * @param sql any statement
+     * @throws SQLException if the statement fails
+     */
+    public void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Reads the first column of the first row
+     * @param sql query returning a number
+     * @return the number, 0 if the query returns no rows
+     * @throws SQLException if the query fails
+     */
+    public long queryLong(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package dao.h2;
+
+import dao.MessageDao;
+import model.Message;
+import model.Subscription;
+import model.TweetCursor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the subscription feed is complete on both sides of the fan-out limit:
+ * author 2 of the sample data has two followers (users 1 and 5), which is exactly the limit of this test.
+ */
+public class H2TimelineDaoTest {
+
+    private static final int FAN_OUT_LIMIT = 2;
+    private static final long AUTHOR = 2;
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("timelines");
+
+    private H2TimelineDao timelineDao;
+    private H2SubscriptionDao subscriptionDao;
+    private MessageDao messageDao;
+
+    @Before
+    public void setUp() throws Exception {
+        timelineDao = new H2TimelineDao(database.getDataSource(), FAN_OUT_LIMIT);
+        subscriptionDao = new H2SubscriptionDao(database.getDataSource(), timelineDao);
+        messageDao = new H2DaoFactory(database.getDataSource()).getMessageDao();
+        timelineDao.rebuildTimelines();
+    }
+
+    @Test
+    public void fanOut() throws Exception {
+        assertEquals(2, timelineDao.fanOutMessage(post("Fanned out")));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Users WHERE popular = TRUE"));
+        assertFeeds(1, 5);
+    }
+
+    @Test
+    public void subscribedBeforeFanOut() throws Exception {
+        // The author's messages are copied to the new subscriber between the creation and the fan-out
+        Message message = post("Copied by the subscription");
+        timelineDao.addAuthorMessages(1, AUTHOR);
+        assertEquals(2, timelineDao.fanOutMessage(message));
+        assertEquals(2, database.queryLong("SELECT COUNT(*) FROM Timelines WHERE message_id = " + message.getMessageId()));
+        assertFeeds(1, 5);
+    }
+
+    @Test
+    public void popularAuthor() throws Exception {
+        subscribe(3);
+        assertEquals(1, database.queryLong("SELECT COUNT(*) FROM Users WHERE user_id = 2 AND popular = TRUE"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Timelines AS t INNER JOIN Messages AS m " +
+                "ON (m.message_id = t.message_id) WHERE t.user_id = 3 AND m.user_id = 2"));
+
+        // Messages of the popular author are merged into the feed on read
+        assertEquals(0, timelineDao.fanOutMessage(post("Read directly")));
+        assertFeeds(1, 3, 5);
+
+        // Rebuild follows the same rule
+        timelineDao.rebuildTimelines();
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Timelines AS t INNER JOIN Messages AS m " +
+                "ON (m.message_id = t.message_id) WHERE m.user_id = 2"));
+        assertFeeds(1, 3, 5);
+    }
+
+    @Test
+    public void backToLimit() throws Exception {
+        subscribe(3);
+        Message message = post("Posted while popular");
+        timelineDao.fanOutMessage(message);
+
+        subscriptionDao.deleteSubscription(new Subscription(0, 3, AUTHOR));
+
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Users WHERE popular = TRUE"));
+        assertEquals(2, database.queryLong("SELECT COUNT(*) FROM Timelines WHERE message_id = " + message.getMessageId()));
+        assertFeeds(1, 3, 5);
+    }
+
+    private void subscribe(long userId) {
+        assertTrue(subscriptionDao.createSubscription(new Subscription(0, userId, AUTHOR)) > 0);
+    }
+
+    private Message post(String text) {
+        Message message = new Message(AUTHOR, 0, LocalDateTime.now().withNano(0), text);
+        message.setMessageId(messageDao.createMessage(message));
+        return message;
+    }
+
+    /**
+     * Compares the subscription feeds of the users with their subscriptions joined with all messages
+     */
+    private void assertFeeds(long... userIds) throws Exception {
+        for (long userId : userIds) {
+            List<Long> feed = new ArrayList<>();
+            messageDao.getSubscriptionMessages(userId, 1000, TweetCursor.first(), tweet -> feed.add(tweet.getMessageId()));
+            assertEquals("Feed of user " + userId, expectedFeed(userId), feed);
+        }
+    }
+
+    private List<Long> expectedFeed(long userId) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        try (Connection connection = database.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT m.message_id FROM Messages AS m INNER JOIN Subscriptions AS s " +
+                             "ON (s.subscripted_user_id = m.user_id) WHERE s.user_id = ? " +
+                             "ORDER BY m.message_date DESC, m.message_id DESC")) {
+            statement.setLong(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+}
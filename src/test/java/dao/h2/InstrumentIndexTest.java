@@ -0,0 +1,123 @@
+package dao.h2;
+
+import dao.DaoFactory;
+import dao.MessageDao;
+import model.Message;
+import model.Tweet;
+import model.TweetCursor;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the merge of the instrument lists and that the instrument feed served from the index equals the query,
+ * also after a rolled back unit of work.
+ */
+public class InstrumentIndexTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2017, 1, 1, 12, 0);
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("instrumentIndex");
+
+    @Test
+    public void merge() {
+        InstrumentIndex index = new InstrumentIndex(3);
+        assertNull(index.getMessageIds(new long[]{1}, TweetCursor.first(), 10));
+
+        Map<Long, List<InstrumentIndex.Entry>> messages = new HashMap<>();
+        messages.put(1L, new ArrayList<>(Arrays.asList(entry(5, 10), entry(3, 10), entry(1, 11))));
+        messages.put(2L, new ArrayList<>(Arrays.asList(entry(5, 10), entry(4, 12))));
+        index.load(messages);
+
+        // Message 5 is in both lists, but is taken once
+        assertArrayEquals(new long[]{5, 4}, index.getMessageIds(new long[]{1, 2}, TweetCursor.first(), 2));
+
+        // The first list is full, its older messages are unknown
+        assertNull(index.getMessageIds(new long[]{1, 2}, TweetCursor.first(), 5));
+        assertArrayEquals(new long[]{4}, index.getMessageIds(new long[]{2}, cursor(5), 5));
+
+        // Author 10 stops playing instrument 1 and starts playing instrument 2
+        index.updateAuthor(10, new long[]{1}, new long[]{2},
+                Arrays.asList(new TweetCursor(DATE.plusMinutes(5), 5), new TweetCursor(DATE.plusMinutes(3), 3)));
+        assertArrayEquals(new long[]{5, 4, 3}, index.getMessageIds(new long[]{2}, TweetCursor.first(), 5));
+        index.addMessage(new long[]{1, 2}, 6, DATE.plusMinutes(6), 11);
+        assertArrayEquals(new long[]{6}, index.getMessageIds(new long[]{1}, TweetCursor.first(), 1));
+
+        // Message 1 is the floor of the first list, older pages are read from the database
+        assertNull(index.getMessageIds(new long[]{1}, TweetCursor.first(), 2));
+    }
+
+    @Test
+    public void instrumentFeed() throws Exception {
+        MessageDao query = new H2DaoFactory(database.getDataSource()).getMessageDao();
+        DaoFactory daoFactory = new H2DaoFactory(database.getDataSource());
+        daoFactory.getMessageDao().rebuildRecentMessages();
+        for (int i = 0; i < 6; i++) {
+            daoFactory.getMessageDao().createMessage(new Message(1 + i % 5, 0, LocalDateTime.now(), "Tweet " + i));
+        }
+        assertFeedsEqual(query, daoFactory.getMessageDao());
+
+        daoFactory.getInstrumentDao().setInstrumentsToUser(5, new String[]{"vocals"});
+        assertFeedsEqual(query, daoFactory.getMessageDao());
+        daoFactory.getInstrumentDao().deleteAllUserInstruments(3);
+        assertFeedsEqual(query, daoFactory.getMessageDao());
+
+        // Changes of a rolled back unit of work never reach the index
+        try {
+            daoFactory.inTransaction(factory -> {
+                factory.getInstrumentDao().setInstrumentsToUser(2, new String[]{"drums", "bass"});
+                throw new SQLException("Cancelled");
+            });
+            fail("Exception must be thrown");
+        } catch (SQLException e) {
+            assertFeedsEqual(query, daoFactory.getMessageDao());
+        }
+        daoFactory.inTransaction(factory -> factory.getInstrumentDao().setInstrumentsToUser(2, new String[]{"drums"}));
+        assertFeedsEqual(query, daoFactory.getMessageDao());
+    }
+
+    private static void assertFeedsEqual(MessageDao query, MessageDao index) {
+        for (long userId = 1; userId <= 5; userId++) {
+            for (int limit = 1; limit <= 3; limit++) {
+                List<Long> expected = ids(query.getInstrumentMessages(userId, limit, TweetCursor.first()));
+                assertEquals(expected, ids(index.getInstrumentMessages(userId, limit, TweetCursor.first())));
+                if (!expected.isEmpty()) {
+                    Tweet last = query.getInstrumentMessages(userId, limit, TweetCursor.first()).get(expected.size() - 1);
+                    TweetCursor next = new TweetCursor(last.getMessageDate(), last.getMessageId());
+                    assertEquals(ids(query.getInstrumentMessages(userId, 20, next)),
+                            ids(index.getInstrumentMessages(userId, 20, next)));
+                }
+            }
+        }
+    }
+
+    private static InstrumentIndex.Entry entry(long messageId, long userId) {
+        return new InstrumentIndex.Entry(messageId, DATE.plusMinutes(messageId), userId);
+    }
+
+    private static TweetCursor cursor(long messageId) {
+        return new TweetCursor(DATE.plusMinutes(messageId), messageId);
+    }
+
+    private static List<Long> ids(List<Tweet> tweets) {
+        List<Long> ids = new ArrayList<>();
+        for (Tweet tweet : tweets) {
+            ids.add(tweet.getMessageId());
+        }
+        return Collections.unmodifiableList(ids);
+    }
+}
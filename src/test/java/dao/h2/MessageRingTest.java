@@ -0,0 +1,132 @@
+package dao.h2;
+
+import dao.DaoFactory;
+import dao.MessageDao;
+import model.Countries;
+import model.Message;
+import model.Tweet;
+import model.TweetCursor;
+import model.User;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks paging in the ring buffer and that the country feed served from it equals the country query,
+ * also after an author has moved to another country.
+ */
+public class MessageRingTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2017, 1, 1, 12, 0);
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("messageRing");
+
+    @Test
+    public void pages() {
+        MessageRing ring = new MessageRing(4);
+        for (int id = 1; id <= 3; id++) {
+            ring.add(id, DATE.plusMinutes(id));
+        }
+        assertNull(ring.getMessageIds(TweetCursor.first(), 1));
+
+        // Unknown messages older than the oldest loaded one
+        ring.setLoaded(false);
+        assertNull(ring.getMessageIds(TweetCursor.first(), 3));
+        assertArrayEquals(new long[]{3, 2}, ring.getMessageIds(TweetCursor.first(), 2));
+        assertNull(ring.getMessageIds(new TweetCursor(DATE.plusMinutes(2), 2), 1));
+
+        ring.setLoaded(true);
+        assertArrayEquals(new long[]{3, 2, 1}, ring.getMessageIds(TweetCursor.first(), 4));
+        assertArrayEquals(new long[]{1}, ring.getMessageIds(new TweetCursor(DATE.plusMinutes(2), 2), 1));
+
+        // Overflow drops the oldest messages
+        ring.add(4, DATE.plusMinutes(4));
+        ring.add(5, DATE.plusMinutes(5));
+        assertArrayEquals(new long[]{5, 4, 3, 2}, ring.getMessageIds(TweetCursor.first(), 4));
+        assertNull(ring.getMessageIds(new TweetCursor(DATE.plusMinutes(3), 3), 2));
+    }
+
+    @Test
+    public void feedOrder() {
+        MessageRing ring = new MessageRing(8);
+        ring.setLoaded(true);
+        ring.add(1, DATE.plusMinutes(2));
+        ring.add(2, DATE.plusMinutes(3));
+        ring.add(3, DATE);
+        ring.add(5, DATE.plusMinutes(2));
+        ring.add(4, DATE.plusMinutes(2));
+
+        // By date, then by id, whatever the order of adding was
+        assertArrayEquals(new long[]{2, 5, 4, 1, 3}, ring.getMessageIds(TweetCursor.first(), 10));
+        assertArrayEquals(new long[]{2, 5}, ring.getMessageIds(TweetCursor.first(), 2));
+        assertArrayEquals(new long[]{4, 1}, ring.getMessageIds(new TweetCursor(DATE.plusMinutes(2), 5), 2));
+
+        // The overflow drops the message 2, which is newer than the messages 5, 4 and 3 left in the ring
+        for (int id = 6; id <= 9; id++) {
+            ring.add(id, DATE.plusMinutes(id));
+        }
+        ring.add(10, DATE.plusMinutes(10));
+        assertArrayEquals(new long[]{10, 9, 8}, ring.getMessageIds(TweetCursor.first(), 3));
+        assertNull(ring.getMessageIds(new TweetCursor(DATE.plusMinutes(6), 6), 1));
+
+        // After the invalidation only the pages of newer messages are answered
+        ring.invalidate(DATE.plusMinutes(9));
+        assertArrayEquals(new long[]{10}, ring.getMessageIds(TweetCursor.first(), 1));
+        assertNull(ring.getMessageIds(TweetCursor.first(), 2));
+    }
+
+    @Test
+    public void countryFeed() throws Exception {
+        MessageDao messageDao = new H2DaoFactory(database.getDataSource()).getMessageDao();
+        MessageDao fromRing = new H2DaoFactory(database.getDataSource()).getMessageDao();
+        fromRing.rebuildRecentMessages();
+        for (int i = 0; i < 5; i++) {
+            fromRing.createMessage(new Message(2 + i % 3, 0, LocalDateTime.now(), "Tweet " + i));
+        }
+
+        // Messages of the user 2 are created with 2010 and 2011 dates, the page cursor goes between them
+        TweetCursor[] cursors = {TweetCursor.first(), new TweetCursor(LocalDateTime.of(2011, 1, 1, 0, 0), 1)};
+        for (TweetCursor cursor : cursors) {
+            assertEquals(ids(messageDao.getCountryMessages(2, 20, cursor)),
+                    ids(fromRing.getCountryMessages(2, 20, cursor)));
+        }
+    }
+
+    @Test
+    public void movedAuthor() throws Exception {
+        MessageDao messageDao = new H2DaoFactory(database.getDataSource()).getMessageDao();
+        DaoFactory daoFactory = new H2DaoFactory(database.getDataSource());
+        daoFactory.getMessageDao().rebuildRecentMessages();
+        for (int i = 0; i < 6; i++) {
+            daoFactory.getMessageDao().createMessage(new Message(1 + i % 3, 0, LocalDateTime.now(), "Tweet " + i));
+        }
+
+        // The user 2 moves from the USA to Russia, the user 1 stays in Russia, the user 3 in the USA
+        User user = daoFactory.getUserDao().readUserById(2);
+        user.setCountry(Countries.RUSSIA);
+        daoFactory.getUserDao().updateUser(user);
+        daoFactory.getMessageDao().createMessage(new Message(2, 0, LocalDateTime.now().plusSeconds(1), "Moved"));
+        for (long userId = 1; userId <= 3; userId++) {
+            for (int limit = 1; limit <= 3; limit++) {
+                assertEquals(ids(messageDao.getCountryMessages(userId, limit, TweetCursor.first())),
+                        ids(daoFactory.getMessageDao().getCountryMessages(userId, limit, TweetCursor.first())));
+            }
+        }
+    }
+
+    private static List<Long> ids(List<Tweet> tweets) {
+        List<Long> ids = new ArrayList<>();
+        for (Tweet tweet : tweets) {
+            ids.add(tweet.getMessageId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,129 @@
+package dao.pool;
+
+import dao.h2.H2TestDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks reuse of connections and statements, timeouts, transaction cleanup and stale handles of the pool.
+ */
+public class ConnectionPoolTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("pool", false);
+
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ConnectionPool(database.getDataSource(), 2, 100, 0, 10);
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE Test (id INT PRIMARY KEY)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void reuseStatements() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement("INSERT INTO Test (id) VALUES (?)")) {
+                statement.setInt(1, i);
+                statement.executeUpdate();
+            }
+        }
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM Test");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            assertEquals(3, resultSet.getInt(1));
+        }
+        assertTrue(pool.getStatistics(), pool.getStatistics().contains("hits=2"));
+        assertEquals(5, pool.getWaitMicros().getCount());
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        try (Connection first = pool.getConnection();
+             Connection second = pool.getConnection()) {
+            assertNotSame(first, second);
+            try {
+                pool.getConnection();
+                fail("Pool must be exhausted");
+            } catch (SQLTimeoutException e) {
+                assertEquals(2, pool.getBusyConnections().getMax());
+            }
+        }
+        pool.getConnection().close();
+    }
+
+    @Test
+    public void rollbackOnRelease() throws Exception {
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO Test (id) VALUES (1)")) {
+            statement.executeUpdate();
+        }
+        connection.close();
+        assertTrue(connection.isClosed());
+        try (Connection next = pool.getConnection();
+             Statement statement = next.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM Test")) {
+            assertTrue(next.getAutoCommit());
+            resultSet.next();
+            assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    public void staleHandle() throws Exception {
+        Connection stale = pool.getConnection();
+        PreparedStatement staleStatement = stale.prepareStatement("SELECT COUNT(*) FROM Test");
+        stale.close();
+
+        // The same physical connection is borrowed again, the old handle can't touch it
+        try (Connection current = pool.getConnection();
+             Connection other = pool.getConnection()) {
+            stale.close();
+            assertTrue(stale.isClosed());
+            assertFalse(current.isClosed());
+            try {
+                staleStatement.executeQuery();
+                fail("Statement of the returned connection must be closed");
+            } catch (SQLException e) {
+                assertTrue(staleStatement.isClosed());
+            }
+            try {
+                pool.getConnection();
+                fail("Both connections must still be borrowed");
+            } catch (SQLTimeoutException e) {
+                assertEquals(2, pool.getBusyConnections().getMax());
+            }
+            try (Statement statement = current.createStatement()) {
+                statement.execute("SELECT 1");
+            }
+            assertNotSame(stale, current);
+            assertNotSame(other, current);
+        }
+    }
+}
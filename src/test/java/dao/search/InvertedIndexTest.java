@@ -0,0 +1,54 @@
+package dao.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks term, prefix and multi-term queries, paging and loading of the index from parts.
+ */
+public class InvertedIndexTest {
+
+    @Test
+    public void tokenize() {
+        assertEquals(Arrays.asList("what", "s", "up", "jazz"),
+                InvertedIndex.tokenize("What's up? #Jazz, what's UP"));
+    }
+
+    @Test
+    public void search() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(1, "Blues guitar solo");
+        index.add(2, "Jazz guitar");
+        index.add(5, "jazz piano");
+        index.add(3, "Guitarist wanted for a jazz band");
+
+        assertArrayEquals(new long[]{3, 2, 1}, index.search("guitar*", Long.MAX_VALUE, 10));
+        assertArrayEquals(new long[]{2, 1}, index.search("GUITAR", Long.MAX_VALUE, 10));
+        assertArrayEquals(new long[]{3, 2}, index.search("jazz guit*", Long.MAX_VALUE, 10));
+        assertArrayEquals(new long[]{5}, index.search("jazz", Long.MAX_VALUE, 1));
+        assertArrayEquals(new long[]{3, 2}, index.search("jazz", 5, 10));
+        assertArrayEquals(new long[0], index.search("drums", Long.MAX_VALUE, 10));
+        assertArrayEquals(new long[0], index.search("  ", Long.MAX_VALUE, 10));
+    }
+
+    @Test
+    public void load() {
+        InvertedIndex first = new InvertedIndex();
+        first.add(1, "rock");
+        first.add(2, "rock and roll");
+        InvertedIndex second = new InvertedIndex();
+        second.add(3, "roll");
+
+        InvertedIndex index = new InvertedIndex();
+        index.add(10, "lost during the rebuild");
+        index.load(Arrays.asList(first, second));
+
+        assertArrayEquals(new long[]{3, 2}, index.search("roll", Long.MAX_VALUE, 10));
+        assertArrayEquals(new long[0], index.search("lost", Long.MAX_VALUE, 10));
+        assertEquals(3, index.getTermCount());
+    }
+}
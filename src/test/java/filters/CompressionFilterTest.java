@@ -0,0 +1,148 @@
+package filters;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the negotiation of the response encoding, the finishing of compressed responses
+ * and the precompressed static files.
+ */
+public class CompressionFilterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MockResponse mock = new MockResponse();
+
+    @Test
+    public void accepts() {
+        assertTrue(CompressionFilter.accepts("gzip, deflate, br", "gzip"));
+        assertTrue(CompressionFilter.accepts("deflate, GZIP;q=0.5", "gzip"));
+        assertTrue(CompressionFilter.accepts("*", "br"));
+        assertFalse(CompressionFilter.accepts(null, "gzip"));
+        assertFalse(CompressionFilter.accepts("identity", "gzip"));
+        assertFalse(CompressionFilter.accepts("gzip;q=0, br", "gzip"));
+        assertFalse(CompressionFilter.accepts("gzip;q=0.0", "gzip"));
+    }
+
+    @Test
+    public void finishSync() throws Exception {
+        filter(null).doFilter(request("/GetMyTweets", "gzip", false, -1), mock.proxy(), (request, response) -> {
+            response.setContentType("text/html");
+            response.getWriter().write("<div>tweet</div>");
+        });
+        assertEquals("gzip", mock.getHeader("Content-Encoding"));
+        assertTrue(mock.isFinished());
+        assertEquals("<div>tweet</div>", mock.inflate());
+    }
+
+    @Test
+    public void finishAsync() throws Exception {
+        AtomicReference<PrintWriter> writer = new AtomicReference<>();
+        filter(null).doFilter(request("/GetMyTweets", "gzip", true, -1), mock.proxy(), (request, response) -> {
+            response.setContentType("text/html");
+            writer.set(response.getWriter());
+        });
+
+        // The asynchronous handler writes and finishes the response after the filter has returned
+        writer.get().write("<div>tweet</div>");
+        writer.get().flush();
+        assertFalse(mock.isFinished());
+        writer.get().close();
+        assertTrue(mock.isFinished());
+        assertEquals("<div>tweet</div>", mock.inflate());
+    }
+
+    @Test
+    public void notAccepted() throws Exception {
+        filter(null).doFilter(request("/GetMyTweets", "br;q=0", false, -1), mock.proxy(), (request, response) -> {
+            response.setContentType("text/html");
+            response.getWriter().write("<div>tweet</div>");
+            response.getWriter().flush();
+        });
+        assertNull(mock.getHeader("Content-Encoding"));
+        assertEquals("<div>tweet</div>", new String(mock.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void precompressed() throws Exception {
+        File file = folder.newFile("main.js.gz");
+        byte[] content = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+        Files.write(file.toPath(), content);
+        long lastModified = file.lastModified() / 1000 * 1000;
+        FilterChain chain = (request, response) -> {
+            throw new AssertionError("Static file must be served by the filter");
+        };
+
+        filter(file).doFilter(request("/js/main.js", "gzip", false, lastModified - 1000), mock.proxy(), chain);
+        assertEquals(HttpServletResponse.SC_OK, mock.getStatus());
+        assertEquals("gzip", mock.getHeader("Content-Encoding"));
+        assertEquals("application/javascript", mock.getContentType());
+        assertEquals(Integer.toString(content.length), mock.getHeader("Content-Length"));
+        assertEquals(Long.toString(lastModified), mock.getHeader("Last-Modified"));
+        assertArrayEquals(content, mock.getBody());
+
+        MockResponse cached = new MockResponse();
+        filter(file).doFilter(request("/js/main.js", "gzip", false, lastModified), cached.proxy(), chain);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, cached.getStatus());
+        assertEquals(0, cached.getBody().length);
+        assertNull(cached.getHeader("Content-Encoding"));
+    }
+
+    private static CompressionFilter filter(File gzipCopy) throws Exception {
+        ServletContext context = (ServletContext) Proxy.newProxyInstance(CompressionFilterTest.class.getClassLoader(),
+                new Class<?>[]{ServletContext.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getResource":
+                            return gzipCopy != null && args[0].equals("/js/main.js.gz") ? gzipCopy.toURI().toURL() : null;
+                        case "getMimeType":
+                            return "application/javascript";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        FilterConfig config = (FilterConfig) Proxy.newProxyInstance(CompressionFilterTest.class.getClassLoader(),
+                new Class<?>[]{FilterConfig.class}, (proxy, method, args) -> context);
+        CompressionFilter filter = new CompressionFilter();
+        filter.init(config);
+        return filter;
+    }
+
+    private static HttpServletRequest request(String path, String acceptEncoding, boolean async, long ifModifiedSince) {
+        return (HttpServletRequest) Proxy.newProxyInstance(CompressionFilterTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getHeader":
+                            return "Accept-Encoding".equals(args[0]) ? acceptEncoding : null;
+                        case "getDateHeader":
+                            return "If-Modified-Since".equals(args[0]) ? ifModifiedSince : -1L;
+                        case "getServletPath":
+                            return path;
+                        case "getPathInfo":
+                            return null;
+                        case "isAsyncStarted":
+                            return async;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
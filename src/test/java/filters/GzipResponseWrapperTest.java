@@ -0,0 +1,123 @@
+package filters;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks when the body is compressed and that the compressed body is streamed.
+ */
+public class GzipResponseWrapperTest {
+
+    private static final String[] TYPES = {"text/html", "application/json"};
+
+    private final MockResponse mock = new MockResponse();
+    private final GzipResponseWrapper wrapper = new GzipResponseWrapper(mock.proxy(), TYPES);
+
+    @Test
+    public void syncFlush() throws Exception {
+        wrapper.setContentType("text/html; charset=UTF-8");
+        PrintWriter out = wrapper.getWriter();
+        assertEquals("gzip", mock.getHeader("Content-Encoding"));
+
+        // Everything written before the flush can be decompressed at once
+        out.write("<div>first</div>");
+        wrapper.flushBuffer();
+        assertEquals("<div>first</div>", mock.inflate());
+        assertFalse(mock.isFinished());
+
+        out.write("<div>second</div>");
+        out.flush();
+        assertEquals("<div>first</div><div>second</div>", mock.inflate());
+        assertFalse(mock.isFinished());
+
+        wrapper.finish();
+        assertTrue(mock.isFinished());
+        assertEquals("<div>first</div><div>second</div>", mock.inflate());
+        assertFalse(mock.isClosed());
+    }
+
+    @Test
+    public void closeFinishes() throws Exception {
+        wrapper.setContentType("application/json");
+        PrintWriter out = wrapper.getWriter();
+        out.write("{\"tweets\":[]}");
+        out.close();
+        assertTrue(mock.isFinished());
+        assertTrue(mock.isClosed());
+        assertEquals("{\"tweets\":[]}", mock.inflate());
+
+        // The filter finishes the response once more after a synchronous servlet
+        wrapper.finish();
+        assertEquals("{\"tweets\":[]}", mock.inflate());
+    }
+
+    @Test
+    public void contentLengthSuppressed() throws Exception {
+        wrapper.setContentType("text/html");
+        wrapper.setContentLength(1000);
+        assertEquals("1000", mock.getHeader("Content-Length"));
+        wrapper.getOutputStream().write("<p>".getBytes(StandardCharsets.UTF_8));
+
+        // The compressed length differs from the length of the body
+        assertNull(mock.getHeader("Content-Length"));
+        wrapper.setContentLength(3);
+        wrapper.setHeader("Content-Length", "3");
+        wrapper.addHeader("content-length", "3");
+        assertNull(mock.getHeader("Content-Length"));
+        wrapper.finish();
+        assertEquals("<p>", mock.inflate());
+    }
+
+    @Test
+    public void noContent() throws Exception {
+        wrapper.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        wrapper.setContentType("text/html");
+        assertPassedThrough();
+    }
+
+    @Test
+    public void notModified() throws Exception {
+        wrapper.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        wrapper.setContentType("application/json");
+        assertPassedThrough();
+    }
+
+    @Test
+    public void smallContentLength() throws Exception {
+        wrapper.setContentType("text/html");
+        wrapper.setContentLengthLong(100);
+        assertPassedThrough();
+        assertEquals("100", mock.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void alreadyEncoded() throws Exception {
+        wrapper.setContentType("text/html");
+        wrapper.setHeader("Content-Encoding", "br");
+        assertPassedThrough();
+        assertEquals("br", mock.getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void notCompressibleType() throws Exception {
+        wrapper.setContentType("image/png");
+        assertPassedThrough();
+    }
+
+    private void assertPassedThrough() throws Exception {
+        byte[] body = "<p>plain</p>".getBytes(StandardCharsets.UTF_8);
+        wrapper.getOutputStream().write(body);
+        wrapper.finish();
+        assertArrayEquals(body, mock.getBody());
+        assertFalse("gzip".equals(mock.getHeader("Content-Encoding")));
+    }
+}
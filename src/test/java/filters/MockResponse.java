@@ -0,0 +1,172 @@
+package filters;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Response of the container for the filter tests: keeps the status, the headers and the body in memory
+ * and decompresses the gzip body written so far.
+ */
+class MockResponse {
+
+    // GZIPOutputStream writes the fixed header without a file name
+    private static final int GZIP_HEADER_LENGTH = 10;
+
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int status = HttpServletResponse.SC_OK;
+    private String contentType;
+    private PrintWriter writer;
+    private boolean closed;
+
+    /**
+     * Container's response, which writes to this object
+     * @return HttpServletResponse
+     */
+    HttpServletResponse proxy() {
+        return (HttpServletResponse) Proxy.newProxyInstance(MockResponse.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getStatus":
+                            return status;
+                        case "setStatus":
+                            status = (Integer) args[0];
+                            return null;
+                        case "getContentType":
+                            return contentType;
+                        case "setContentType":
+                            contentType = (String) args[0];
+                            return null;
+                        case "getCharacterEncoding":
+                            return "UTF-8";
+                        case "setHeader":
+                        case "addHeader":
+                            headers.put((String) args[0], (String) args[1]);
+                            return null;
+                        case "setDateHeader":
+                            headers.put((String) args[0], Long.toString((Long) args[1]));
+                            return null;
+                        case "getHeader":
+                            return headers.get(args[0]);
+                        case "containsHeader":
+                            return headers.containsKey(args[0]);
+                        case "setContentLength":
+                        case "setContentLengthLong":
+                            long length = ((Number) args[0]).longValue();
+                            if (length < 0) {
+                                headers.remove("Content-Length");
+                            } else {
+                                headers.put("Content-Length", Long.toString(length));
+                            }
+                            return null;
+                        case "getOutputStream":
+                            return outputStream();
+                        case "getWriter":
+                            if (writer == null) {
+                                writer = new PrintWriter(new OutputStreamWriter(outputStream(), StandardCharsets.UTF_8));
+                            }
+                            return writer;
+                        case "flushBuffer":
+                            if (writer != null) {
+                                writer.flush();
+                            }
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    byte[] getBody() {
+        return body.toByteArray();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Decompresses the gzip body written so far
+     * @return text of the body
+     * @throws DataFormatException if the body is not compressed
+     */
+    String inflate() throws DataFormatException {
+        return new String(inflate(inflater()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks that the gzip body has been finished, so it ends with the trailer
+     * @return true if the deflate stream is complete
+     * @throws DataFormatException if the body is not compressed
+     */
+    boolean isFinished() throws DataFormatException {
+        Inflater inflater = inflater();
+        inflate(inflater);
+        return inflater.finished();
+    }
+
+    private static byte[] inflate(Inflater inflater) throws DataFormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inflater.inflate(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private Inflater inflater() {
+        byte[] bytes = body.toByteArray();
+        if (bytes.length < GZIP_HEADER_LENGTH || bytes[0] != (byte) 0x1f || bytes[1] != (byte) 0x8b) {
+            throw new IllegalStateException("Body is not gzip");
+        }
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(bytes, GZIP_HEADER_LENGTH, bytes.length - GZIP_HEADER_LENGTH);
+        return inflater;
+    }
+
+    private ServletOutputStream outputStream() {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+    }
+}
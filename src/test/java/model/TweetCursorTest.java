@@ -0,0 +1,32 @@
+package model;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the string form of the cursor, which comes back from the client.
+ */
+public class TweetCursorTest {
+
+    @Test
+    public void roundTrip() {
+        TweetCursor cursor = new TweetCursor(LocalDateTime.of(2017, 1, 2, 3, 4, 5, 6000000), 42);
+        TweetCursor parsed = TweetCursor.valueOf(cursor.toString());
+        assertEquals(cursor.getMessageDate(), parsed.getMessageDate());
+        assertEquals(42, parsed.getMessageId());
+        assertEquals(TweetCursor.first().getMessageId(), TweetCursor.valueOf(TweetCursor.first().toString()).getMessageId());
+        assertEquals(TweetCursor.first().getMessageId(), TweetCursor.valueOf("").getMessageId());
+    }
+
+    @Test
+    public void malformed() {
+        assertNull(TweetCursor.valueOf("42"));
+        assertNull(TweetCursor.valueOf("yesterday_42"));
+        assertNull(TweetCursor.valueOf("2017-01-02T03:04_last"));
+        assertNull(TweetCursor.valueOf("_"));
+    }
+}
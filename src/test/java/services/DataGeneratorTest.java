@@ -0,0 +1,55 @@
+package services;
+
+import dao.h2.H2DaoFactory;
+import dao.h2.H2TestDatabase;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the generated content is consistent and repeatable with the same seed.
+ */
+public class DataGeneratorTest {
+
+    @Rule
+    public final H2TestDatabase database = new H2TestDatabase("generator");
+
+    @Test
+    public void generate() throws Exception {
+        DataGenerator generator = new DataGenerator(database.getDataSource(), 3, 42);
+        generator.generate(200, 10, 5, 5, "hash");
+
+        assertEquals(6, generator.getFirstUserId());
+        assertEquals(205, database.queryLong("SELECT COUNT(*) FROM Users"));
+        assertEquals(400, database.queryLong("SELECT COUNT(*) FROM Users_Instruments WHERE user_id > 5"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Users WHERE user_id > 5 AND login <> CONCAT('User', user_id)"));
+        assertTrue(database.queryLong("SELECT COUNT(*) FROM Messages") > 1000);
+        assertTrue(database.queryLong("SELECT COUNT(*) FROM Likes") > 500);
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Subscriptions WHERE user_id > 5 AND user_id = subscripted_user_id"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Messages WHERE message_date > CURRENT_TIMESTAMP()"));
+
+        // Ids of the generated messages grow with the dates across all users
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM Messages AS a INNER JOIN Messages AS b " +
+                "ON (b.message_id = a.message_id + 1) WHERE a.user_id > 5 AND a.message_date > b.message_date"));
+
+        // Counters are final, the new ids continue after the generated ones
+        assertEquals(0, new H2DaoFactory(database.getDataSource()).getLikeDao().reconcileLikeCounts());
+        long maxMessageId = database.queryLong("SELECT MAX(message_id) FROM Messages");
+        assertEquals(maxMessageId, generator.getLastMessageId());
+        database.execute("INSERT INTO Messages (user_id, message_date, message_text) VALUES (1, CURRENT_TIMESTAMP(), 'new')");
+        assertEquals(maxMessageId + 1, database.queryLong("SELECT MAX(message_id) FROM Messages"));
+    }
+
+    @Test
+    public void sameSeed() throws Exception {
+        String checksum = "SELECT SUM(message_id * like_count) + SUM(LENGTH(message_text)) FROM Messages";
+        new DataGenerator(database.getDataSource(), 1, 7).generate(100, 5, 5, 5, "hash");
+        long expected = database.queryLong(checksum);
+        database.reset();
+
+        new DataGenerator(database.getDataSource(), 4, 7).generate(100, 5, 5, 5, "hash");
+        assertEquals(expected, database.queryLong(checksum));
+    }
+}
@@ -0,0 +1,122 @@
+package services;
+
+import model.Countries;
+import model.Instrument;
+import model.User;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that only the changes seen in a feed change its version and the answers to conditional requests.
+ */
+public class FeedVersionTest {
+
+    private final FeedVersion feedVersion = new FeedVersion();
+
+    @Test
+    public void changesOfOtherUsers() {
+        User viewer = user(1, Countries.RUSSIA);
+        List<String> myTweets = FeedVersion.scopes(viewer, FeedVersion.author(1));
+        List<String> country = FeedVersion.scopes(viewer, FeedVersion.country(Countries.RUSSIA));
+        List<String> subscriptions = FeedVersion.subscriptionScopes(viewer, new LongHashSet(2));
+        List<String> instruments = FeedVersion.instrumentScopes(viewer,
+                Collections.singletonList(new Instrument(7, "guitar")));
+
+        feedVersion.tweeted(user(3, Countries.USA), Collections.singletonList(new Instrument(8, "drums")));
+        feedVersion.changed(FeedVersion.subscriber(3));
+        assertEquals(0, feedVersion.getVersion(myTweets));
+        assertEquals(0, feedVersion.getVersion(country));
+        assertEquals(0, feedVersion.getVersion(subscriptions));
+        assertEquals(0, feedVersion.getVersion(instruments));
+
+        feedVersion.tweeted(user(2, Countries.RUSSIA), Collections.singletonList(new Instrument(7, "guitar")));
+        assertEquals(0, feedVersion.getVersion(myTweets));
+        assertEquals(3, feedVersion.getVersion(country));
+        assertEquals(3, feedVersion.getVersion(subscriptions));
+        assertEquals(3, feedVersion.getVersion(instruments));
+
+        // Likes and subscriptions of the viewer are shown in every feed
+        feedVersion.changed(FeedVersion.LIKES);
+        assertEquals(4, feedVersion.getVersion(myTweets));
+        feedVersion.changed(FeedVersion.subscriber(1));
+        assertEquals(5, feedVersion.getVersion(country));
+        assertEquals(5, feedVersion.getVersion(FeedVersion.scopes(viewer, FeedVersion.TWEETS)));
+    }
+
+    @Test
+    public void notModified() {
+        User viewer = user(1, Countries.RUSSIA);
+        List<String> scopes = FeedVersion.scopes(viewer, FeedVersion.author(1));
+        Map<String, Object> headers = new HashMap<>();
+        HttpServletResponse response = response(headers);
+
+        assertFalse(feedVersion.notModified(request(null, -1), response, scopes, "GetMyTweets", 1));
+        String eTag = (String) headers.get("ETag");
+        long lastModified = (Long) headers.get("Last-Modified");
+        assertEquals(null, headers.get("status"));
+
+        // Tweets of other users don't change the feed
+        feedVersion.tweeted(user(2, Countries.RUSSIA), null);
+        assertTrue(feedVersion.notModified(request("\"x\", " + eTag, -1), response, scopes, "GetMyTweets", 1));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, headers.remove("status"));
+        assertTrue(feedVersion.notModified(request(null, lastModified), response, scopes, "GetMyTweets", 1));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, headers.remove("status"));
+        assertFalse(feedVersion.notModified(request(eTag, -1), response, scopes, "GetMyTweets", 2));
+
+        // If-None-Match takes precedence over If-Modified-Since
+        feedVersion.tweeted(viewer, null);
+        assertFalse(feedVersion.notModified(request(eTag, lastModified + 60000), response, scopes, "GetMyTweets", 1));
+        assertNotEquals(eTag, headers.get("ETag"));
+        assertEquals(null, headers.get("status"));
+    }
+
+    private static User user(long userId, Countries country) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setCountry(country);
+        return user;
+    }
+
+    private static HttpServletRequest request(String ifNoneMatch, long ifModifiedSince) {
+        return (HttpServletRequest) Proxy.newProxyInstance(FeedVersionTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getHeader":
+                            return "If-None-Match".equals(args[0]) ? ifNoneMatch : null;
+                        case "getDateHeader":
+                            return "If-Modified-Since".equals(args[0]) ? ifModifiedSince : -1L;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static HttpServletResponse response(Map<String, Object> headers) {
+        return (HttpServletResponse) Proxy.newProxyInstance(FeedVersionTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setHeader":
+                        case "setDateHeader":
+                            headers.put((String) args[0], args[1]);
+                            return null;
+                        case "setStatus":
+                            headers.put("status", args[0]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,64 @@
+package services;
+
+import model.Tweet;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the JSON of the feed pages.
+ */
+public class JsonFeedWriterTest {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    @Test
+    public void escaping() {
+        LongHashSet subscriptions = new LongHashSet();
+        subscriptions.add(7);
+        StringWriter out = new StringWriter();
+        JsonFeedWriter writer = new JsonFeedWriter(out, subscriptions, FORMATTER);
+        writer.accept(tweet(12, 7, "Say \"hi\"\\\n<script>\u0001"));
+        writer.accept(tweet(-3, 8, ""));
+        writer.finish();
+        assertEquals("{\"tweets\":["
+                + "{\"id\":12,\"userId\":7,\"login\":\"user7\",\"instruments\":\"guitar, drums\","
+                + "\"date\":\"2017-01-01 12:22\",\"text\":\"Say \\\"hi\\\"\\\\\\n\\u003cscript>\\u0001\","
+                + "\"likes\":5,\"subscribed\":true},"
+                + "{\"id\":-3,\"userId\":8,\"login\":\"user8\",\"instruments\":\"guitar, drums\","
+                + "\"date\":\"2017-01-01 12:22\",\"text\":\"\",\"likes\":5,\"subscribed\":false}"
+                + "],\"next\":null}", out.toString());
+    }
+
+    @Test
+    public void pages() {
+        StringWriter empty = new StringWriter();
+        new JsonFeedWriter(empty, new LongHashSet(), FORMATTER).finish();
+        assertEquals("{\"tweets\":[],\"next\":null}", empty.toString());
+
+        StringWriter full = new StringWriter();
+        JsonFeedWriter writer = new JsonFeedWriter(full, new LongHashSet(), FORMATTER);
+        for (int i = 20; i > 0; i--) {
+            writer.accept(tweet(i, 1, "text"));
+        }
+        writer.finish();
+        assertTrue(full.toString(), full.toString().endsWith("],\"next\":\"2017-01-01T12:22_1\"}"));
+    }
+
+    private static Tweet tweet(long messageId, long userId, String text) {
+        Tweet tweet = new Tweet();
+        tweet.setMessageId(messageId);
+        tweet.setUserId(userId);
+        tweet.setMessageDate(LocalDateTime.of(2017, 1, 1, 12, 22));
+        tweet.setMessageText(text);
+        tweet.setLogin("user" + userId);
+        tweet.setInstruments("guitar, drums");
+        tweet.setLikes(5);
+        return tweet;
+    }
+}
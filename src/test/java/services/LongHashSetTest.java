@@ -0,0 +1,78 @@
+package services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void addAndRemove() throws Exception {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(1));
+        for (long i = 0; i < 1000; i++) {
+            assertTrue(set.add(i * 31));
+        }
+        assertFalse(set.add(31));
+        assertEquals(1000, set.size());
+        for (long i = 0; i < 1000; i += 2) {
+            assertTrue(set.remove(i * 31));
+        }
+        assertFalse(set.remove(0));
+        assertEquals(500, set.size());
+        for (long i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 1, set.contains(i * 31));
+        }
+        assertFalse(set.contains(-31));
+    }
+
+    @Test
+    public void addAll() throws Exception {
+        LongHashSet set = new LongHashSet(5, 0, 7, 5);
+        assertEquals(3, set.size());
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 31;
+        }
+        assertEquals(999, set.addAll(values));
+        assertEquals(1002, set.size());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(7));
+        assertTrue(set.contains(999 * 31));
+        assertFalse(set.contains(32));
+        assertTrue(set.remove(0));
+        assertEquals(0, set.addAll());
+        assertEquals(1001, set.size());
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception {
+        LongHashSet set = new LongHashSet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long offset = t * 1000;
+            results.add(executor.submit(() -> {
+                for (long i = 1; i <= 200; i++) {
+                    set.add(offset + i);
+                    set.contains(offset + i - 1);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        assertEquals(1600, set.size());
+        assertTrue(set.contains(7200));
+    }
+}
@@ -2,6 +2,17 @@ package services;
 
 import org.junit.Test;
 
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Created by iMac on 18/03/17.
  */
@@ -14,4 +25,52 @@ public class SecurityTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void verify() throws Exception {
+        HashGenerator security = new HashGenerator(1000);
+        String hash = security.getHash("password");
+        assertNotEquals(hash, security.getHash("password"));
+        assertTrue(security.verify("password", hash));
+        assertFalse(security.verify("Password", hash));
+        assertFalse(security.needsUpgrade(hash));
+        assertTrue(new HashGenerator(2000).needsUpgrade(hash));
+    }
+
+    @Test
+    public void verifyLegacyHash() throws Exception {
+        String legacyHash = new String(MessageDigest.getInstance("MD5").digest("password".getBytes("UTF-8")));
+        HashGenerator security = new HashGenerator(1000);
+        assertTrue(security.verify("password", legacyHash));
+        assertFalse(security.verify("password1", legacyHash));
+        assertTrue(security.needsUpgrade(legacyHash));
+    }
+
+    @Test
+    public void malformedHash() throws Exception {
+        HashGenerator security = new HashGenerator(1000);
+        String[] parts = security.getHash("password").split("\\$");
+        for (String hash : new String[] {
+                "pbkdf2$many$" + parts[2] + "$" + parts[3],
+                "pbkdf2$-1$" + parts[2] + "$" + parts[3],
+                "pbkdf2$1000$not base64$" + parts[3],
+                "pbkdf2$$$"}) {
+            assertFalse(hash, security.verify("password", hash));
+        }
+        assertTrue(security.needsUpgrade("pbkdf2$many$" + parts[2] + "$" + parts[3]));
+    }
+
+    @Test
+    public void concurrentHashing() throws Exception {
+        HashGenerator security = new HashGenerator(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String password = "password" + i;
+            results.add(executor.submit(() -> security.verify(password, security.getHash(password))));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+    }
+}
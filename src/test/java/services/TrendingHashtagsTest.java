@@ -0,0 +1,61 @@
+package services;
+
+import model.Countries;
+import model.Trend;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks hashtag extraction, per country top and expiration of old buckets.
+ */
+public class TrendingHashtagsTest {
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final TrendingHashtags trends = new TrendingHashtags(2, 3, 1000, now::get);
+
+    @Test
+    public void extractHashtags() {
+        assertEquals(Arrays.asList("jazz", "blues_rock", "1"),
+                TrendingHashtags.extractHashtags("#Jazz and #blues_rock! #jazz # tweet about music #1"));
+    }
+
+    @Test
+    public void top() {
+        trends.addTweet(Countries.USA, "#jazz #blues");
+        trends.addTweet(Countries.USA, "#jazz");
+        trends.addTweet(Countries.SPAIN, "#flamenco #guitar");
+        trends.addTweet(Countries.SPAIN, "#flamenco");
+        trends.addTweet(Countries.SPAIN, "#flamenco");
+
+        List<Trend> global = trends.getTrends(null);
+        assertEquals(2, global.size());
+        assertEquals("flamenco", global.get(0).getHashtag());
+        assertEquals(3, global.get(0).getCount());
+        assertEquals("jazz", global.get(1).getHashtag());
+
+        List<Trend> usa = trends.getTrends(Countries.USA);
+        assertEquals("jazz", usa.get(0).getHashtag());
+        assertEquals("blues", usa.get(1).getHashtag());
+        assertTrue(trends.getTrends(Countries.FRANCE).isEmpty());
+    }
+
+    @Test
+    public void slidingWindow() {
+        trends.addTweet(Countries.USA, "#jazz");
+        now.addAndGet(1000);
+        trends.addTweet(Countries.USA, "#jazz #rock");
+        now.addAndGet(2000);
+
+        // The first bucket has expired
+        assertEquals(1, trends.getTrends(null).get(0).getCount());
+
+        now.addAndGet(1000);
+        assertTrue(trends.getTrends(null).isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+package services;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the events reach only the streams of the subscribers and that stalled streams are closed.
+ */
+public class TweetEventsTest {
+
+    private final TweetEvents tweetEvents = new TweetEvents(10, 4, 2, 300);
+
+    @After
+    public void tearDown() {
+        tweetEvents.close();
+    }
+
+    @Test
+    public void publishToSubscribers() throws Exception {
+        LongHashSet stranger = new LongHashSet();
+        Stream author = open(1, new LongHashSet());
+        Stream subscriber = open(2, new LongHashSet(1));
+        Stream other = open(3, stranger);
+
+        tweetEvents.publish(1, 10);
+        await(() -> author.contains("\"messageId\":10") && subscriber.contains("\"messageId\":10"));
+
+        stranger.add(1);
+        tweetEvents.subscribed(3, 1);
+        tweetEvents.publish(1, 11);
+        await(() -> other.contains("\"messageId\":11"));
+        assertFalse(other.contains("\"messageId\":10"));
+
+        stranger.remove(1);
+        tweetEvents.unsubscribed(3, 1);
+        tweetEvents.publish(1, 12);
+        await(() -> subscriber.contains("\"messageId\":12"));
+        assertFalse(other.contains("\"messageId\":12"));
+        assertEquals(3, tweetEvents.getConnectionCount());
+    }
+
+    @Test
+    public void stalledStream() throws Exception {
+        Stream slow = open(1, new LongHashSet());
+        slow.ready = false;
+        Stream stalled = open(2, new LongHashSet(1));
+        stalled.ready = false;
+        for (long messageId = 1; messageId <= 10; messageId++) {
+            tweetEvents.publish(1, messageId);
+        }
+
+        // The client, which accepts data again, gets the reset instead of the lost events
+        slow.ready = true;
+        slow.listener.onWritePossible();
+        assertTrue(slow.contains("event: reset"));
+
+        await(() -> stalled.completed);
+        assertEquals(1, tweetEvents.getConnectionCount());
+        assertFalse(slow.completed);
+    }
+
+    private Stream open(long userId, LongHashSet subscriptions) {
+        Stream stream = new Stream();
+        ServletResponse response = (ServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ServletResponse.class}, (proxy, method, args) -> stream);
+        AsyncContext context = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{AsyncContext.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getResponse":
+                            return response;
+                        case "complete":
+                            stream.completed = true;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        assertTrue(tweetEvents.open(context, userId, subscriptions));
+        return stream;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Non-blocking output stream of the client, which accepts data only when it is ready
+     */
+    private static class Stream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private volatile boolean ready = true;
+        private volatile boolean completed;
+        private WriteListener listener;
+
+        private synchronized boolean contains(String text) {
+            return new String(body.toByteArray(), StandardCharsets.UTF_8).contains(text);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (!ready) {
+                throw new IllegalStateException("Stream is not ready");
+            }
+            body.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            listener = writeListener;
+        }
+    }
+}